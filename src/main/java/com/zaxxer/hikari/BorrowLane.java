@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari;
+
+/**
+ * A named borrow lane (quality-of-service class).  Under saturation, connections are
+ * handed to waiters in higher priority lanes before waiters in lower priority lanes.
+ * Borrowers that do not specify a lane use the implicit default lane of priority 0.
+ *
+ * @author Brett Wooldridge
+ */
+public final class BorrowLane
+{
+   public static final String DEFAULT_LANE = "default";
+
+   private final String name;
+   private final int priority;
+   private final int reservedCapacity;
+   private final long connectionTimeout;
+
+   /**
+    * Construct a borrow lane.
+    *
+    * @param name the unique name of the lane
+    * @param priority the priority of the lane, higher values are served first
+    * @param reservedCapacity the number of connections reserved for this lane, that
+    *        borrowers from other lanes cannot use
+    * @param connectionTimeoutMs the connection timeout for this lane in milliseconds,
+    *        or 0 to use the pool <code>connectionTimeout</code>
+    */
+   public BorrowLane(String name, int priority, int reservedCapacity, long connectionTimeoutMs)
+   {
+      if (name == null || name.isEmpty()) {
+         throw new IllegalArgumentException("lane name cannot be empty");
+      }
+      if (reservedCapacity < 0) {
+         throw new IllegalArgumentException("reservedCapacity cannot be negative");
+      }
+      if (connectionTimeoutMs != 0 && connectionTimeoutMs < 250) {
+         throw new IllegalArgumentException("lane connectionTimeout cannot be less than 250ms");
+      }
+
+      this.name = name;
+      this.priority = priority;
+      this.reservedCapacity = reservedCapacity;
+      this.connectionTimeout = connectionTimeoutMs;
+   }
+
+   public String getName()
+   {
+      return name;
+   }
+
+   public int getPriority()
+   {
+      return priority;
+   }
+
+   public int getReservedCapacity()
+   {
+      return reservedCapacity;
+   }
+
+   public long getConnectionTimeout()
+   {
+      return connectionTimeout;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public String toString()
+   {
+      return "BorrowLane(" + name + ", priority=" + priority + ", reserved=" + reservedCapacity + ", timeout=" + connectionTimeout + ")";
+   }
+}
@@ -0,0 +1,402 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari;
+
+import java.io.Closeable;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.zaxxer.hikari.pool.HikariPool;
+import com.zaxxer.hikari.util.DefaultThreadFactory;
+import com.zaxxer.hikari.util.UtilityElf;
+
+/**
+ * A DataSource over a primary and a standby pool.  Connections are borrowed from the primary until
+ * its consecutive connection creation failures, including borrows that timed out because no
+ * connection could be created, reach a threshold.  Borrows that time out on an exhausted pool are
+ * not counted as failures.  The standby is then warmed up in the background, new borrows are routed
+ * to it, and the connections of the primary are soft-evicted.  While failed over, the primary is
+ * probed periodically, and borrows return to it only after a number of consecutive successful
+ * probes, so that a flapping primary does not cause the route to flap with it.
+ *
+ * <p>The standby pool keeps no idle connections while the primary is healthy.</p>
+ *
+ * @author Brett Wooldridge
+ */
+public class FailoverDataSource implements DataSource, Closeable
+{
+   private static final Logger LOGGER = LoggerFactory.getLogger(FailoverDataSource.class);
+
+   static final int DEFAULT_FAILOVER_THRESHOLD = 3;
+   static final int DEFAULT_FAILBACK_PROBES = 5;
+   static final long DEFAULT_CHECK_INTERVAL_MS = TimeUnit.SECONDS.toMillis(1);
+
+   private final HikariPool primary;
+   private final HikariPool standby;
+   private final int standbyWarmSize;
+   private final long standbyWarmTimeoutMs;
+   private final int failoverThreshold;
+   private final int failbackProbes;
+   private final long probeTimeoutMs;
+   private final ScheduledThreadPoolExecutor monitorExecutor;
+   private final ThreadPoolExecutor warmupExecutor;
+   private final AtomicInteger borrowFailures;
+   private final AtomicLong failoverCount;
+
+   private volatile boolean isFailedOver;
+   private volatile boolean isClosed;
+   private int healthyProbes;
+
+   /**
+    * Construct a failover DataSource with the default failover threshold of 3 failures, failback
+    * after 5 consecutive healthy probes of the primary, and a check interval of one second.
+    *
+    * @param primaryConfig the configuration of the primary pool
+    * @param standbyConfig the configuration of the standby pool
+    */
+   public FailoverDataSource(final HikariConfig primaryConfig, final HikariConfig standbyConfig)
+   {
+      this(primaryConfig, standbyConfig, DEFAULT_FAILOVER_THRESHOLD, DEFAULT_FAILBACK_PROBES, DEFAULT_CHECK_INTERVAL_MS);
+   }
+
+   /**
+    * Construct a failover DataSource.
+    *
+    * @param primaryConfig the configuration of the primary pool
+    * @param standbyConfig the configuration of the standby pool
+    * @param failoverThreshold the number of consecutive primary failures that triggers failover
+    * @param failbackProbes the number of consecutive healthy probes of the primary before failback
+    * @param checkIntervalMs the interval between health checks of the primary in milliseconds
+    */
+   public FailoverDataSource(final HikariConfig primaryConfig, final HikariConfig standbyConfig, final int failoverThreshold, final int failbackProbes, final long checkIntervalMs)
+   {
+      if (failoverThreshold < 1) {
+         throw new IllegalArgumentException("failoverThreshold cannot be less than 1");
+      }
+      if (failbackProbes < 1) {
+         throw new IllegalArgumentException("failbackProbes cannot be less than 1");
+      }
+      if (checkIntervalMs < 10) {
+         throw new IllegalArgumentException("checkIntervalMs cannot be less than 10ms");
+      }
+
+      primaryConfig.validate();
+      standbyConfig.validate();
+
+      // A primary that is down at startup must not prevent start, as the standby can take over
+      final HikariConfig lenientPrimaryConfig = new HikariConfig();
+      primaryConfig.copyState(lenientPrimaryConfig);
+      lenientPrimaryConfig.setInitializationFailFast(false);
+
+      // The standby stays cold until failover, when it is warmed to its configured minimumIdle
+      final HikariConfig coldStandbyConfig = new HikariConfig();
+      standbyConfig.copyState(coldStandbyConfig);
+      coldStandbyConfig.setMinimumIdle(0);
+
+      this.failoverThreshold = failoverThreshold;
+      this.failbackProbes = failbackProbes;
+      this.probeTimeoutMs = primaryConfig.getValidationTimeout();
+      this.standbyWarmSize = Math.max(1, standbyConfig.getMinimumIdle());
+      this.standbyWarmTimeoutMs = standbyConfig.getConnectionTimeout();
+      this.borrowFailures = new AtomicInteger();
+      this.failoverCount = new AtomicLong();
+
+      LOGGER.info("{} - is starting with standby {}.", primaryConfig.getPoolName(), standbyConfig.getPoolName());
+      this.primary = new HikariPool(lenientPrimaryConfig);
+      this.standby = new HikariPool(coldStandbyConfig);
+
+      this.monitorExecutor = new ScheduledThreadPoolExecutor(1, new DefaultThreadFactory("Hikari failover monitor (pool " + primaryConfig.getPoolName() + ")", true), new ThreadPoolExecutor.DiscardPolicy());
+      this.monitorExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+      // Warm-up blocks for up to the connection timeout of the standby, so it must not hold up health checks
+      this.warmupExecutor = UtilityElf.createThreadPoolExecutor(1, "Hikari failover warm-up (pool " + primaryConfig.getPoolName() + ")", null, new ThreadPoolExecutor.DiscardPolicy());
+      this.monitorExecutor.scheduleWithFixedDelay(new Runnable() {
+         @Override
+         public void run()
+         {
+            checkPrimary();
+         }
+      }, checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public Connection getConnection() throws SQLException
+   {
+      if (isClosed) {
+         throw new SQLException("FailoverDataSource " + primary + " has been closed.");
+      }
+
+      if (isFailedOver) {
+         return standby.getConnection();
+      }
+
+      try {
+         final Connection connection = primary.getConnection();
+         borrowFailures.set(0);
+         return connection;
+      }
+      catch (SQLException e) {
+         if (isConnectionFailure(e)) {
+            borrowFailures.incrementAndGet();
+         }
+         throw e;
+      }
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public Connection getConnection(String username, String password) throws SQLException
+   {
+      throw new SQLFeatureNotSupportedException();
+   }
+
+   /**
+    * Determine whether borrows are currently routed to the standby pool.
+    *
+    * @return true if failed over to the standby
+    */
+   public boolean isFailedOver()
+   {
+      return isFailedOver;
+   }
+
+   /**
+    * Get the number of failovers to the standby since the DataSource was created.
+    *
+    * @return the number of failovers
+    */
+   public long getFailoverCount()
+   {
+      return failoverCount.get();
+   }
+
+   /**
+    * Get the primary pool.
+    *
+    * @return the primary HikariPool
+    */
+   public HikariPool getPrimaryPool()
+   {
+      return primary;
+   }
+
+   /**
+    * Get the standby pool.
+    *
+    * @return the standby HikariPool
+    */
+   public HikariPool getStandbyPool()
+   {
+      return standby;
+   }
+
+   /**
+    * Shutdown the monitor and both pools.
+    */
+   @Override
+   public void close()
+   {
+      if (isClosed) {
+         return;
+      }
+      isClosed = true;
+
+      monitorExecutor.shutdownNow();
+      warmupExecutor.shutdownNow();
+      try {
+         primary.shutdown();
+         standby.shutdown();
+      }
+      catch (InterruptedException e) {
+         LOGGER.warn("{} - Interrupted during closing", primary, e);
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public PrintWriter getLogWriter() throws SQLException
+   {
+      return primary.getUnwrappedDataSource() != null ? primary.getUnwrappedDataSource().getLogWriter() : null;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setLogWriter(PrintWriter out) throws SQLException
+   {
+      if (primary.getUnwrappedDataSource() != null) {
+         primary.getUnwrappedDataSource().setLogWriter(out);
+      }
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setLoginTimeout(int seconds) throws SQLException
+   {
+      if (primary.getUnwrappedDataSource() != null) {
+         primary.getUnwrappedDataSource().setLoginTimeout(seconds);
+      }
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public int getLoginTimeout() throws SQLException
+   {
+      return primary.getUnwrappedDataSource() != null ? primary.getUnwrappedDataSource().getLoginTimeout() : 0;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException
+   {
+      throw new SQLFeatureNotSupportedException();
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   @SuppressWarnings("unchecked")
+   public <T> T unwrap(Class<T> iface) throws SQLException
+   {
+      if (iface.isInstance(this)) {
+         return (T) this;
+      }
+
+      throw new SQLException("Wrapped DataSource is not an instance of " + iface);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public boolean isWrapperFor(Class<?> iface) throws SQLException
+   {
+      return iface.isInstance(this);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public String toString()
+   {
+      return "FailoverDataSource (" + primary + " -> " + standby + ")";
+   }
+
+   /**
+    * Determine whether a failed borrow was caused by the failure to create a connection.  The pool
+    * reports the last connection failure as the cause of its timeout; a timeout without a cause
+    * merely means that the pool was exhausted.
+    */
+   private static boolean isConnectionFailure(final SQLException e)
+   {
+      return e instanceof SQLTransientConnectionException && e.getCause() != null;
+   }
+
+   /**
+    * Check the health of the primary, failing over or back as needed.  Runs on the monitor thread.
+    */
+   private void checkPrimary()
+   {
+      try {
+         if (!isFailedOver) {
+            final int failures = primary.getConsecutiveConnectionFailures() + borrowFailures.get();
+            if (failures >= failoverThreshold) {
+               failover(failures);
+            }
+         }
+         else if (probePrimary()) {
+            if (++healthyProbes >= failbackProbes) {
+               failback();
+            }
+         }
+         else {
+            healthyProbes = 0;
+         }
+      }
+      catch (RuntimeException e) {
+         LOGGER.warn("{} - Unexpected exception checking primary health", primary, e);
+      }
+   }
+
+   private void failover(final int failures)
+   {
+      LOGGER.warn("{} - Failing over to {} after {} consecutive connection failures", primary, standby, failures);
+
+      healthyProbes = 0;
+      isFailedOver = true;
+      failoverCount.incrementAndGet();
+      warmupExecutor.execute(new Runnable() {
+         @Override
+         public void run()
+         {
+            warmStandby();
+         }
+      });
+      primary.softEvictConnections();
+   }
+
+   private void failback()
+   {
+      LOGGER.info("{} - Failing back from {} after {} healthy probes", primary, standby, healthyProbes);
+
+      healthyProbes = 0;
+      borrowFailures.set(0);
+      isFailedOver = false;
+      standby.softEvictConnections();
+   }
+
+   /**
+    * Borrow the warm size of the standby at once and return the connections, leaving them idle
+    * for the borrowers routed to the standby.  Runs on the warm-up thread.
+    */
+   private void warmStandby()
+   {
+      try {
+         final List<Connection> connections = standby.getConnections(standbyWarmSize, standbyWarmTimeoutMs);
+         for (Connection connection : connections) {
+            connection.close();
+         }
+         LOGGER.debug("{} - Warmed up {} standby connections", standby, connections.size());
+      }
+      catch (SQLException e) {
+         LOGGER.warn("{} - Unable to warm up standby", standby, e);
+      }
+   }
+
+   /**
+    * Borrow a connection from the primary and return it, validating it if it was idle.
+    */
+   private boolean probePrimary()
+   {
+      try (Connection connection = primary.getConnection(probeTimeoutMs)) {
+         return connection.isValid((int) Math.max(1L, TimeUnit.MILLISECONDS.toSeconds(probeTimeoutMs)));
+      }
+      catch (SQLException e) {
+         return false;
+      }
+   }
+}
@@ -22,6 +22,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
@@ -51,6 +55,13 @@ public class HikariConfig implements HikariConfigMXBean
    private static final long VALIDATION_TIMEOUT = TimeUnit.SECONDS.toMillis(5);
    private static final long IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(10);
    private static final long MAX_LIFETIME = TimeUnit.MINUTES.toMillis(30);
+   private static final long OVERFLOW_THRESHOLD = TimeUnit.SECONDS.toMillis(1);
+   private static final long OVERFLOW_IDLE_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+   private static final long RESULT_CACHE_TTL = TimeUnit.SECONDS.toMillis(60);
+   private static final long RESULT_CACHE_MAX_BYTES = 16L * 1024 * 1024;
+   private static final int ADAPTIVE_FETCH_SIZE_MIN = 10;
+   private static final int ASYNC_QUEUE_SIZE = 1000;
+   private static final long HEALTH_SWEEP_WINDOW = TimeUnit.SECONDS.toMillis(10);
 
    private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
    private static boolean unitTest;
@@ -82,16 +93,39 @@ public class HikariConfig implements HikariConfigMXBean
    private boolean isReadOnly;
    private boolean isInitializationFailFast;
    private boolean isIsolateInternalQueries;
+   private boolean isTrackStatements;
+   private boolean isLazyConnection;
    private boolean isRegisterMbeans;
    private boolean isAllowPoolSuspension;
+   private int warmupParallelism;
+   private double warmupFraction;
+   private boolean isRollingRefresh;
+   private int maxConcurrentRefreshes;
+   private int overflowPoolSize;
+   private long overflowThreshold;
+   private long overflowIdleTimeout;
+   private int batchCoalescingSize;
+   private boolean isBatchCoalescingStrict;
+   private int resultCacheSize;
+   private long resultCacheTtl;
+   private long resultCacheMaxBytes;
+   private int adaptiveFetchSizeMin;
+   private int adaptiveFetchSizeMax;
+   private long queryTimeout;
+   private int asyncQueueSize;
+   private String exceptionProfile;
+   private long healthSweepWindow;
    private DataSource dataSource;
    private Properties dataSourceProperties;
    private ThreadFactory threadFactory;
    private ScheduledThreadPoolExecutor scheduledExecutor;
    private MetricsTrackerFactory metricsTrackerFactory;
+   private SQLExceptionClassifier exceptionClassifier;
    private Object metricRegistry;
    private Object healthCheckRegistry;
    private Properties healthCheckProperties;
+   private List<BorrowLane> borrowLanes;
+   private Set<String> cacheableQueries;
 
    /**
     * Default constructor
@@ -100,6 +134,8 @@ public class HikariConfig implements HikariConfigMXBean
    {
       dataSourceProperties = new Properties();
       healthCheckProperties = new Properties();
+      borrowLanes = new ArrayList<>();
+      cacheableQueries = new HashSet<>();
 
       connectionTimeout = CONNECTION_TIMEOUT;
       validationTimeout = VALIDATION_TIMEOUT;
@@ -108,6 +144,16 @@ public class HikariConfig implements HikariConfigMXBean
       isInitializationFailFast = true;
       minIdle = -1;
       maxPoolSize = 10;
+      warmupParallelism = 1;
+      maxConcurrentRefreshes = 1;
+      overflowThreshold = OVERFLOW_THRESHOLD;
+      overflowIdleTimeout = OVERFLOW_IDLE_TIMEOUT;
+      resultCacheTtl = RESULT_CACHE_TTL;
+      resultCacheMaxBytes = RESULT_CACHE_MAX_BYTES;
+      adaptiveFetchSizeMin = ADAPTIVE_FETCH_SIZE_MIN;
+      asyncQueueSize = ASYNC_QUEUE_SIZE;
+      healthSweepWindow = HEALTH_SWEEP_WINDOW;
+      isTrackStatements = true;
       maxLifetime = MAX_LIFETIME;
 
       String systemProp = System.getProperty("hikaricp.configurationFile");
@@ -421,6 +467,545 @@ public class HikariConfig implements HikariConfigMXBean
       isInitializationFailFast = failFast;
    }
 
+   /**
+    * Get the number of connections that are established concurrently while the pool is
+    * being filled to <code>minimumIdle</code> at startup.
+    *
+    * @return the warm-up parallelism
+    */
+   public int getWarmupParallelism()
+   {
+      return warmupParallelism;
+   }
+
+   /**
+    * Set the number of connections that are established concurrently while the pool is
+    * being filled to <code>minimumIdle</code> at startup.  The default of 1 fills the
+    * pool one connection at a time.  Raising this is useful when <code>minimumIdle</code>
+    * is large and connection establishment is slow (TLS, remote authentication, etc.).
+    *
+    * @param warmupParallelism the number of connections to establish concurrently at startup
+    */
+   public void setWarmupParallelism(int warmupParallelism)
+   {
+      if (warmupParallelism < 1) {
+         throw new IllegalArgumentException("warmupParallelism cannot be less than 1");
+      }
+      this.warmupParallelism = warmupParallelism;
+   }
+
+   /**
+    * Get the fraction of <code>minimumIdle</code> connections that must be established
+    * before construction of the pool returns.
+    *
+    * @return the warm fraction, between 0.0 and 1.0
+    */
+   public double getWarmupFraction()
+   {
+      return warmupFraction;
+   }
+
+   /**
+    * Set the fraction of <code>minimumIdle</code> connections that must be established
+    * before construction of the pool returns.  A value of 0.0 (the default) does not block
+    * beyond the single connection created when <code>initializationFailFast</code> is
+    * enabled.  Construction will wait at most <code>connectionTimeout</code> milliseconds
+    * for the pool to become warm.
+    *
+    * @param warmupFraction the warm fraction, between 0.0 and 1.0
+    */
+   public void setWarmupFraction(double warmupFraction)
+   {
+      if (warmupFraction < 0.0 || warmupFraction > 1.0) {
+         throw new IllegalArgumentException("warmupFraction must be between 0.0 and 1.0");
+      }
+      this.warmupFraction = warmupFraction;
+   }
+
+   /**
+    * Get whether connections retired by <code>maxLifetime</code> or soft-eviction are replaced
+    * before they are closed.
+    *
+    * @return true if rolling refresh is enabled
+    */
+   public boolean isRollingRefresh()
+   {
+      return isRollingRefresh;
+   }
+
+   /**
+    * Set whether connections retired by <code>maxLifetime</code> or soft-eviction are replaced
+    * before they are closed.  When enabled, a replacement for an idle connection is established
+    * and added to the pool before the retired connection is removed, so that pool capacity does
+    * not dip during a bulk eviction (credential rotation, fail-over, clock changes, etc.).  A
+    * connection in use is retired and replaced when it is returned to the pool.  The number of
+    * refreshes in flight is bounded by <code>maxConcurrentRefreshes</code>.
+    *
+    * @param isRollingRefresh true to enable rolling refresh
+    */
+   public void setRollingRefresh(boolean isRollingRefresh)
+   {
+      this.isRollingRefresh = isRollingRefresh;
+   }
+
+   /**
+    * Get the maximum number of connections that may be refreshed concurrently when
+    * <code>rollingRefresh</code> is enabled.
+    *
+    * @return the maximum number of concurrent refreshes
+    */
+   public int getMaxConcurrentRefreshes()
+   {
+      return maxConcurrentRefreshes;
+   }
+
+   /**
+    * Set the maximum number of connections that may be refreshed concurrently when
+    * <code>rollingRefresh</code> is enabled.  This is also the maximum number of connections
+    * by which the pool may temporarily exceed <code>maximumPoolSize</code> during a refresh.
+    *
+    * @param maxConcurrentRefreshes the maximum number of concurrent refreshes
+    */
+   public void setMaxConcurrentRefreshes(int maxConcurrentRefreshes)
+   {
+      if (maxConcurrentRefreshes < 1) {
+         throw new IllegalArgumentException("maxConcurrentRefreshes cannot be less than 1");
+      }
+      this.maxConcurrentRefreshes = maxConcurrentRefreshes;
+   }
+
+   /**
+    * Get the maximum number of overflow connections the pool may open beyond
+    * <code>maximumPoolSize</code>.
+    *
+    * @return the size of the overflow band
+    */
+   public int getOverflowPoolSize()
+   {
+      return overflowPoolSize;
+   }
+
+   /**
+    * Set the maximum number of overflow connections the pool may open beyond
+    * <code>maximumPoolSize</code> when borrowers have waited longer than
+    * <code>overflowThreshold</code>.  Overflow connections are retired once they have
+    * been idle for <code>overflowIdleTimeout</code>.  The default of 0 disables overflow.
+    *
+    * @param overflowPoolSize the size of the overflow band
+    */
+   public void setOverflowPoolSize(int overflowPoolSize)
+   {
+      if (overflowPoolSize < 0) {
+         throw new IllegalArgumentException("overflowPoolSize cannot be negative");
+      }
+      this.overflowPoolSize = overflowPoolSize;
+   }
+
+   /**
+    * Get the number of milliseconds a borrower must wait before an overflow connection
+    * may be opened.
+    *
+    * @return the overflow threshold in milliseconds
+    */
+   public long getOverflowThreshold()
+   {
+      return overflowThreshold;
+   }
+
+   /**
+    * Set the number of milliseconds a borrower must wait before an overflow connection
+    * may be opened.
+    *
+    * @param overflowThresholdMs the overflow threshold in milliseconds
+    */
+   public void setOverflowThreshold(long overflowThresholdMs)
+   {
+      if (overflowThresholdMs < 0) {
+         throw new IllegalArgumentException("overflowThreshold cannot be negative");
+      }
+      this.overflowThreshold = overflowThresholdMs;
+   }
+
+   /**
+    * Get the number of milliseconds an overflow connection may sit idle before it is retired.
+    *
+    * @return the overflow idle timeout in milliseconds
+    */
+   public long getOverflowIdleTimeout()
+   {
+      return overflowIdleTimeout;
+   }
+
+   /**
+    * Set the number of milliseconds an overflow connection may sit idle before it is retired.
+    * This is typically much shorter than <code>idleTimeout</code>.
+    *
+    * @param overflowIdleTimeoutMs the overflow idle timeout in milliseconds
+    */
+   public void setOverflowIdleTimeout(long overflowIdleTimeoutMs)
+   {
+      if (overflowIdleTimeoutMs < 1) {
+         throw new IllegalArgumentException("overflowIdleTimeout cannot be less than 1ms");
+      }
+      this.overflowIdleTimeout = overflowIdleTimeoutMs;
+   }
+
+   /**
+    * Get the minimum time between pool-wide health sweeps triggered by broken connections.
+    *
+    * @return the health sweep window in milliseconds, 0 if health sweeps are disabled
+    */
+   public long getHealthSweepWindow()
+   {
+      return healthSweepWindow;
+   }
+
+   /**
+    * Set the minimum time between pool-wide health sweeps.  When a connection is found broken, for
+    * example after a database restart, all idle connections are validated in parallel in the background
+    * and the dead ones replaced, unless a sweep already started within this window.  Default: 10000
+    *
+    * @param healthSweepWindowMs the health sweep window in milliseconds, or 0 to disable health sweeps
+    */
+   public void setHealthSweepWindow(long healthSweepWindowMs)
+   {
+      if (healthSweepWindowMs < 0) {
+         throw new IllegalArgumentException("healthSweepWindow cannot be negative");
+      }
+      this.healthSweepWindow = healthSweepWindowMs;
+   }
+
+   /**
+    * Get the maximum number of <code>PreparedStatement.executeUpdate()</code> calls that are coalesced
+    * into a single JDBC batch.
+    *
+    * @return the batch coalescing size, 0 if coalescing is disabled
+    */
+   public int getBatchCoalescingSize()
+   {
+      return batchCoalescingSize;
+   }
+
+   /**
+    * Set the maximum number of <code>PreparedStatement.executeUpdate()</code> calls that are coalesced
+    * into a single JDBC batch.  When greater than 0, repeated <code>executeUpdate()</code> calls on the
+    * same statement within a non-autocommit transaction are buffered via <code>addBatch()</code> and
+    * return <code>Statement.SUCCESS_NO_INFO</code>.  The batch is flushed when this size is reached, on
+    * commit, on a savepoint, on close of the statement, or on execution of any other statement of the
+    * connection.  Coalescing must stay disabled for applications that depend on the update count
+    * returned by <code>executeUpdate()</code>, unless strict mode is enabled.  A statement to which the
+    * application adds its own batch is no longer coalesced.  The default of 0 disables coalescing.
+    *
+    * @param batchCoalescingSize the batch coalescing size
+    */
+   public void setBatchCoalescingSize(int batchCoalescingSize)
+   {
+      if (batchCoalescingSize < 0) {
+         throw new IllegalArgumentException("batchCoalescingSize cannot be negative");
+      }
+      this.batchCoalescingSize = batchCoalescingSize;
+   }
+
+   /**
+    * Get whether batch coalescing is strict.
+    *
+    * @return true if strict batch coalescing is enabled
+    */
+   public boolean isBatchCoalescingStrict()
+   {
+      return isBatchCoalescingStrict;
+   }
+
+   /**
+    * Set whether batch coalescing is strict.  In strict mode, <code>executeUpdate()</code> flushes any
+    * pending coalesced batch of the connection and returns the real update count, so updates are not
+    * coalesced.  Otherwise <code>executeUpdate()</code> returns <code>Statement.SUCCESS_NO_INFO</code>,
+    * and reading the update count or generated keys of a statement flushes it and reports the last
+    * coalesced update count.
+    *
+    * @param isStrict true to enable strict batch coalescing
+    */
+   public void setBatchCoalescingStrict(boolean isStrict)
+   {
+      this.isBatchCoalescingStrict = isStrict;
+   }
+
+   /**
+    * Add a named borrow lane (quality-of-service class) to the pool.  Connections may then be
+    * acquired in that lane via {@link HikariDataSource#getConnection(String)}.
+    *
+    * @param borrowLane the lane to add
+    */
+   public void addBorrowLane(BorrowLane borrowLane)
+   {
+      if (BorrowLane.DEFAULT_LANE.equals(borrowLane.getName())) {
+         throw new IllegalArgumentException("lane name '" + BorrowLane.DEFAULT_LANE + "' is reserved");
+      }
+      for (BorrowLane lane : borrowLanes) {
+         if (lane.getName().equals(borrowLane.getName())) {
+            throw new IllegalArgumentException("lane '" + borrowLane.getName() + "' is already defined");
+         }
+      }
+      borrowLanes.add(borrowLane);
+   }
+
+   /**
+    * Get the borrow lanes that have been added to this configuration.
+    *
+    * @return an unmodifiable list of borrow lanes, possibly empty
+    */
+   public List<BorrowLane> getBorrowLanes()
+   {
+      return Collections.unmodifiableList(borrowLanes);
+   }
+
+   /**
+    * Get the maximum number of query results held by the result cache.
+    *
+    * @return the result cache size, 0 if the result cache is disabled
+    */
+   public int getResultCacheSize()
+   {
+      return resultCacheSize;
+   }
+
+   /**
+    * Set the maximum number of query results held by the result cache.  When greater than 0,
+    * <code>PreparedStatement.executeQuery()</code> of cacheable queries is served from a cache of
+    * disconnected result sets keyed by SQL and bound parameters, outside of write transactions.
+    * Queries are cacheable if added via {@link #addCacheableQuery(String)}, or if their SQL contains
+    * the comment hint <code>/*hikari.cache*&#47;</code>.  Only parameters bound with the scalar,
+    * string, byte array, date/time and <code>setObject</code> setters form part of the cache key,
+    * so cacheable queries must not bind parameters with stream or LOB setters.  The default of 0
+    * disables the cache.
+    *
+    * @param resultCacheSize the result cache size
+    */
+   public void setResultCacheSize(int resultCacheSize)
+   {
+      if (resultCacheSize < 0) {
+         throw new IllegalArgumentException("resultCacheSize cannot be negative");
+      }
+      this.resultCacheSize = resultCacheSize;
+   }
+
+   /**
+    * Get the number of milliseconds a cached query result remains valid.
+    *
+    * @return the result cache time-to-live in milliseconds
+    */
+   public long getResultCacheTtl()
+   {
+      return resultCacheTtl;
+   }
+
+   /**
+    * Set the number of milliseconds a cached query result remains valid.
+    *
+    * @param resultCacheTtlMs the result cache time-to-live in milliseconds
+    */
+   public void setResultCacheTtl(long resultCacheTtlMs)
+   {
+      if (resultCacheTtlMs < 1) {
+         throw new IllegalArgumentException("resultCacheTtl cannot be less than 1ms");
+      }
+      this.resultCacheTtl = resultCacheTtlMs;
+   }
+
+   /**
+    * Get the approximate maximum number of bytes of row data held by the result cache.
+    *
+    * @return the result cache memory cap in bytes
+    */
+   public long getResultCacheMaxBytes()
+   {
+      return resultCacheMaxBytes;
+   }
+
+   /**
+    * Set the approximate maximum number of bytes of row data held by the result cache.  Results
+    * larger than this are never cached, and least recently used results are evicted to stay below it.
+    *
+    * @param resultCacheMaxBytes the result cache memory cap in bytes
+    */
+   public void setResultCacheMaxBytes(long resultCacheMaxBytes)
+   {
+      if (resultCacheMaxBytes < 1) {
+         throw new IllegalArgumentException("resultCacheMaxBytes cannot be less than 1");
+      }
+      this.resultCacheMaxBytes = resultCacheMaxBytes;
+   }
+
+   /**
+    * Register the exact SQL text of an idempotent query whose results may be cached.
+    *
+    * @param sql the SQL of the query, as passed to <code>prepareStatement()</code>
+    */
+   public void addCacheableQuery(String sql)
+   {
+      if (sql == null || sql.isEmpty()) {
+         throw new IllegalArgumentException("cacheable query cannot be empty");
+      }
+      cacheableQueries.add(sql);
+   }
+
+   /**
+    * Get the queries registered as cacheable.
+    *
+    * @return an unmodifiable set of SQL texts, possibly empty
+    */
+   public Set<String> getCacheableQueries()
+   {
+      return Collections.unmodifiableSet(cacheableQueries);
+   }
+
+   /**
+    * Get the default query timeout of statements created through pool connections.
+    *
+    * @return the query timeout in milliseconds, 0 if statements have no default timeout
+    */
+   public long getQueryTimeout()
+   {
+      return queryTimeout;
+   }
+
+   /**
+    * Set the default query timeout of statements created through pool connections, applied via
+    * <code>Statement.setQueryTimeout()</code> (rounded up to whole seconds) unless the application sets
+    * its own.  The default of 0 applies no timeout.
+    *
+    * @param queryTimeoutMs the query timeout in milliseconds
+    */
+   public void setQueryTimeout(long queryTimeoutMs)
+   {
+      if (queryTimeoutMs < 0) {
+         throw new IllegalArgumentException("queryTimeout cannot be negative");
+      }
+      this.queryTimeout = queryTimeoutMs;
+   }
+
+   /**
+    * Get the maximum number of asynchronous queries that may wait for an execution thread.
+    *
+    * @return the asynchronous execution queue size
+    */
+   public int getAsyncQueueSize()
+   {
+      return asyncQueueSize;
+   }
+
+   /**
+    * Set the maximum number of asynchronous queries that may wait for an execution thread.  Queries
+    * submitted via {@link HikariDataSource#executeQueryAsync(String, Object[], RowMapper)} run on at most
+    * <code>maximumPoolSize</code> threads; once this many are queued behind them, further submissions
+    * fail fast.  Default: 1000
+    *
+    * @param asyncQueueSize the asynchronous execution queue size
+    */
+   public void setAsyncQueueSize(int asyncQueueSize)
+   {
+      if (asyncQueueSize < 1) {
+         throw new IllegalArgumentException("asyncQueueSize cannot be less than 1");
+      }
+      this.asyncQueueSize = asyncQueueSize;
+   }
+
+   /**
+    * Get the name of the {@link SQLExceptionProfile} used to decide whether exceptions mean a connection is broken.
+    *
+    * @return the profile name, or null if the profile is detected from the jdbcUrl or DataSource class
+    */
+   public String getExceptionProfile()
+   {
+      return exceptionProfile;
+   }
+
+   /**
+    * Set the name of the {@link SQLExceptionProfile} used to decide whether exceptions mean a connection
+    * is broken: generic, postgresql, mysql, oracle, sqlserver, db2 or h2.  By default the profile is
+    * detected from the jdbcUrl or the DataSource or Driver class name, falling back to generic.
+    *
+    * @param exceptionProfile the profile name
+    */
+   public void setExceptionProfile(String exceptionProfile)
+   {
+      if (exceptionProfile != null) {
+         SQLExceptionProfile.forName(exceptionProfile);
+      }
+      this.exceptionProfile = exceptionProfile;
+   }
+
+   /**
+    * Get the application classifier of exceptions thrown through pool connections.
+    *
+    * @return the exception classifier, or null
+    */
+   public SQLExceptionClassifier getExceptionClassifier()
+   {
+      return exceptionClassifier;
+   }
+
+   /**
+    * Set an application classifier of exceptions thrown through pool connections, consulted before the
+    * exception profile.  Exceptions it classifies as <code>UNKNOWN</code> are left to the profile.
+    *
+    * @param exceptionClassifier the exception classifier, or null
+    */
+   public void setExceptionClassifier(SQLExceptionClassifier exceptionClassifier)
+   {
+      this.exceptionClassifier = exceptionClassifier;
+   }
+
+   /**
+    * Get the lower bound of adaptively tuned statement fetch sizes.
+    *
+    * @return the minimum adaptive fetch size
+    */
+   public int getAdaptiveFetchSizeMin()
+   {
+      return adaptiveFetchSizeMin;
+   }
+
+   /**
+    * Set the lower bound of adaptively tuned statement fetch sizes.  Default: 10
+    *
+    * @param adaptiveFetchSizeMin the minimum adaptive fetch size
+    */
+   public void setAdaptiveFetchSizeMin(int adaptiveFetchSizeMin)
+   {
+      if (adaptiveFetchSizeMin < 1) {
+         throw new IllegalArgumentException("adaptiveFetchSizeMin cannot be less than 1");
+      }
+      this.adaptiveFetchSizeMin = adaptiveFetchSizeMin;
+   }
+
+   /**
+    * Get the upper bound of adaptively tuned statement fetch sizes.
+    *
+    * @return the maximum adaptive fetch size, 0 if adaptive fetch sizing is disabled
+    */
+   public int getAdaptiveFetchSizeMax()
+   {
+      return adaptiveFetchSizeMax;
+   }
+
+   /**
+    * Set the upper bound of adaptively tuned statement fetch sizes.  When greater than 0, the pool
+    * records the number of rows consumed from the results of each normalized SQL statement, and sets
+    * the fetch size of later executions of <code>executeQuery()</code> so that a typical result is
+    * fetched in one round trip, within the configured bounds.  Statements on which the application
+    * calls <code>setFetchSize()</code> are left alone.  The default of 0 disables adaptive fetch sizing.
+    *
+    * @param adaptiveFetchSizeMax the maximum adaptive fetch size
+    */
+   public void setAdaptiveFetchSizeMax(int adaptiveFetchSizeMax)
+   {
+      if (adaptiveFetchSizeMax < 0) {
+         throw new IllegalArgumentException("adaptiveFetchSizeMax cannot be negative");
+      }
+      this.adaptiveFetchSizeMax = adaptiveFetchSizeMax;
+   }
+
    public boolean isIsolateInternalQueries()
    {
       return isIsolateInternalQueries;
@@ -431,6 +1016,55 @@ public class HikariConfig implements HikariConfigMXBean
       this.isIsolateInternalQueries = isolate;
    }
 
+   /**
+    * Determine whether statements created through pool connections are tracked, so that statements
+    * left open are closed when the connection is returned to the pool.
+    *
+    * @return true if statements are tracked
+    */
+   public boolean isTrackStatements()
+   {
+      return isTrackStatements;
+   }
+
+   /**
+    * Set whether statements created through pool connections are tracked, so that statements left
+    * open are closed when the connection is returned to the pool.  Applications that always close
+    * their statements, for example with try-with-resources, can disable tracking to save its cost
+    * on every statement.  Default: true
+    *
+    * @param isTrackStatements false to disable statement tracking
+    */
+   public void setTrackStatements(boolean isTrackStatements)
+   {
+      this.isTrackStatements = isTrackStatements;
+   }
+
+   /**
+    * Determine whether {@link HikariDataSource#getConnection()} defers borrowing a connection
+    * from the pool until it is first used.
+    *
+    * @return true if connections are bound lazily
+    */
+   public boolean isLazyConnection()
+   {
+      return isLazyConnection;
+   }
+
+   /**
+    * Set whether {@link HikariDataSource#getConnection()} defers borrowing a connection from the
+    * pool until it is first used.  The returned connection records state set through it, such as
+    * auto-commit, read-only and transaction isolation, and only borrows a pool connection when a
+    * statement, metadata or other database call needs one, replaying the recorded state on it.
+    * A connection that is closed without being used never holds a pool connection.  Default: false
+    *
+    * @param isLazyConnection true to bind connections lazily
+    */
+   public void setLazyConnection(boolean isLazyConnection)
+   {
+      this.isLazyConnection = isLazyConnection;
+   }
+
    @Deprecated
    public boolean isJdbc4ConnectionTest()
    {
@@ -819,6 +1453,20 @@ public class HikariConfig implements HikariConfigMXBean
          LOGGER.warn("leakDetectionThreshold is less than 2000ms, setting to minimum 2000ms.");
          leakDetectionThreshold = 2000L;
       }
+
+      int reservedCapacity = 0;
+      for (BorrowLane lane : borrowLanes) {
+         reservedCapacity += lane.getReservedCapacity();
+      }
+      if (reservedCapacity > maxPoolSize) {
+         LOGGER.error("total reservedCapacity of borrow lanes cannot exceed maximumPoolSize.");
+         throw new IllegalArgumentException("total reservedCapacity of borrow lanes cannot exceed maximumPoolSize.");
+      }
+
+      if (adaptiveFetchSizeMax > 0 && adaptiveFetchSizeMin > adaptiveFetchSizeMax) {
+         LOGGER.warn("adaptiveFetchSizeMin is greater than adaptiveFetchSizeMax, setting to {}.", adaptiveFetchSizeMax);
+         adaptiveFetchSizeMin = adaptiveFetchSizeMax;
+      }
    }
 
    private void logConfiguration()
@@ -873,5 +1521,9 @@ public class HikariConfig implements HikariConfigMXBean
             }
          }
       }
+
+      // Lanes and cacheable queries are added to, so the copy must not share them
+      other.borrowLanes = new ArrayList<>(borrowLanes);
+      other.cacheableQueries = new HashSet<>(cacheableQueries);
    }
 }
@@ -21,6 +21,8 @@ import java.io.PrintWriter;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
+import java.util.List;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.sql.DataSource;
@@ -29,7 +31,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.pool.BulkLoader;
+import com.zaxxer.hikari.pool.ConnectionScope;
 import com.zaxxer.hikari.pool.HikariPool;
+import com.zaxxer.hikari.pool.RowPublisher;
+import com.zaxxer.hikari.pool.ScatterGather;
+import com.zaxxer.hikari.pool.StatementPipeline;
 
 /**
  * The HikariCP pooled DataSource.
@@ -79,24 +86,236 @@ public class HikariDataSource extends HikariConfig implements DataSource, Closea
          throw new SQLException("HikariDataSource " + this + " has been closed.");
       }
 
+      final HikariPool p = (fastPathPool != null ? fastPathPool : getLazyPool());
+      return (isLazyConnection() ? p.getLazyConnection() : p.getConnection());
+   }
+
+   /**
+    * Get a connection from the pool in the specified borrow lane.  Under saturation, connections
+    * are handed to waiters in higher priority lanes first.
+    *
+    * @param borrowLane the name of a borrow lane added via {@link HikariConfig#addBorrowLane(BorrowLane)}
+    * @return a java.sql.Connection instance
+    * @throws SQLException thrown if a timeout occurs trying to obtain a connection
+    */
+   public Connection getConnection(String borrowLane) throws SQLException
+   {
+      if (isClosed()) {
+         throw new SQLException("HikariDataSource " + this + " has been closed.");
+      }
+
       if (fastPathPool != null) {
-         return fastPathPool.getConnection();
+         return fastPathPool.getConnection(borrowLane);
       }
 
-      // See http://en.wikipedia.org/wiki/Double-checked_locking#Usage_in_Java
-      HikariPool result = pool;
-      if (result == null) {
-         synchronized (this) {
-            result = pool;
-            if (result == null) {
-               validate();
-               LOGGER.info("{} - is starting.", getPoolName());
-               pool = result = new HikariPool(this);
-            }
-         }
+      return getLazyPool().getConnection(borrowLane);
+   }
+
+   /**
+    * Get a connection, preferring an idle connection last borrowed with the same affinity key, such
+    * as a tenant whose catalog is set on the connection.  The catalog is not reset when such a
+    * connection is returned, so a borrower with the same key that sets the same catalog again does
+    * not cost a round trip.  The reset is deferred until the connection is borrowed without the key.
+    *
+    * @param affinityKey the affinity key of the borrower, for example a tenant or shard identifier
+    * @return a java.sql.Connection instance
+    * @throws SQLException thrown if a timeout occurs trying to obtain a connection
+    */
+   public Connection getConnectionWithAffinity(String affinityKey) throws SQLException
+   {
+      if (isClosed()) {
+         throw new SQLException("HikariDataSource " + this + " has been closed.");
+      }
+
+      return (fastPathPool != null ? fastPathPool : getLazyPool()).getConnectionWithAffinity(affinityKey);
+   }
+
+   /**
+    * Get a connection for a request that must complete within the specified number of milliseconds.
+    * The query timeout of every statement executed on the connection is clamped to the time that
+    * remains, so that queries do not outlive the request that issued them.
+    *
+    * @param deadlineMs the time remaining on the request in milliseconds
+    * @return a java.sql.Connection instance
+    * @throws SQLException thrown if a timeout occurs trying to obtain a connection
+    */
+   public Connection getConnectionWithDeadline(long deadlineMs) throws SQLException
+   {
+      if (isClosed()) {
+         throw new SQLException("HikariDataSource " + this + " has been closed.");
+      }
+
+      if (fastPathPool != null) {
+         return fastPathPool.getConnectionWithDeadline(deadlineMs);
+      }
+
+      return getLazyPool().getConnectionWithDeadline(deadlineMs);
+   }
+
+   /**
+    * Get the specified number of connections from the pool, all-or-nothing.  Either all
+    * connections are acquired within <code>connectionTimeout</code>, or none are held when
+    * the exception is thrown.
+    *
+    * @param count the number of connections to acquire, at most maximumPoolSize
+    * @return a list of <code>count</code> java.sql.Connection instances
+    * @throws SQLException thrown if a timeout occurs trying to obtain the connections
+    */
+   public List<Connection> getConnections(int count) throws SQLException
+   {
+      if (isClosed()) {
+         throw new SQLException("HikariDataSource " + this + " has been closed.");
+      }
+
+      if (fastPathPool != null) {
+         return fastPathPool.getConnections(count, getConnectionTimeout());
+      }
+
+      return getLazyPool().getConnections(count, getConnectionTimeout());
+   }
+
+   /**
+    * Execute the callback in a transaction on a connection from the pool, committing if it returns
+    * and rolling back if it throws.  Transactions failing with serialization failures, deadlocks or
+    * broken connections are retried on a fresh connection according to the retry policy; a failed
+    * commit is retried only if the policy marks the work as idempotent.
+    *
+    * @param callback the work to execute in the transaction
+    * @param retryPolicy the retry policy, for example {@link RetryPolicy#DEFAULT}
+    * @param <T> the type of the result
+    * @return the result of the callback
+    * @throws SQLException the exception of the last attempt, or a timeout acquiring a connection
+    */
+   public <T> T inTransaction(TransactionCallback<T> callback, RetryPolicy retryPolicy) throws SQLException
+   {
+      if (isClosed()) {
+         throw new SQLException("HikariDataSource " + this + " has been closed.");
+      }
+
+      return (fastPathPool != null ? fastPathPool : getLazyPool()).inTransaction(callback, retryPolicy);
+   }
+
+   /**
+    * Execute a query asynchronously on a connection from the pool.  At most <code>maximumPoolSize</code>
+    * queries run at once, and up to <code>asyncQueueSize</code> more wait for an execution thread.
+    *
+    * @param sql the SQL of the query
+    * @param parameters the parameters to bind via <code>setObject()</code>, or null
+    * @param rowMapper the mapper of each row of the result
+    * @param <T> the type of the mapped rows
+    * @return a future of the list of mapped rows
+    * @throws SQLException thrown if too many queries are already queued
+    */
+   public <T> Future<List<T>> executeQueryAsync(String sql, Object[] parameters, RowMapper<T> rowMapper) throws SQLException
+   {
+      if (isClosed()) {
+         throw new SQLException("HikariDataSource " + this + " has been closed.");
+      }
+
+      return (fastPathPool != null ? fastPathPool : getLazyPool()).executeQueryAsync(sql, parameters, rowMapper);
+   }
+
+   /**
+    * Open a scope in which every {@link #getConnection()} call on this thread shares one pool
+    * connection, so that nested layers of a unit of work do not each borrow their own.  Closing a
+    * connection obtained within the scope only releases that reference; the connection is reset and
+    * returned to the pool when the outermost scope and every such connection have been closed.
+    *
+    * @return the scope, which must be closed by the thread that opened it
+    * @throws SQLException thrown if the data source has been closed
+    */
+   public ConnectionScope openScope() throws SQLException
+   {
+      if (isClosed()) {
+         throw new SQLException("HikariDataSource " + this + " has been closed.");
+      }
+
+      return (fastPathPool != null ? fastPathPool : getLazyPool()).openScope();
+   }
+
+   /**
+    * Create a pipeline of independent statements that execute back to back on a single connection
+    * from the pool.  Each statement added to the pipeline yields a future of its result.
+    *
+    * @return a new, empty statement pipeline
+    * @throws SQLException thrown if the data source has been closed
+    */
+   public StatementPipeline pipeline() throws SQLException
+   {
+      if (isClosed()) {
+         throw new SQLException("HikariDataSource " + this + " has been closed.");
+      }
+
+      return (fastPathPool != null ? fastPathPool : getLazyPool()).pipeline();
+   }
+
+   /**
+    * Execute a query template once per partition (for example, per key range) concurrently on up to
+    * <code>parallelism</code> pooled connections, and merge the rows.  Each partition borrows its
+    * connection like any other borrower, so a saturated pool slows the query down rather than
+    * growing beyond its limits.  Outstanding partitions are cancelled on the first failure, when
+    * <code>timeoutMs</code> elapses, or when the result is closed.
+    *
+    * @param sql the SQL of the query template
+    * @param partitions the parameters of each partition, bound via <code>setObject()</code>
+    * @param rowMapper the mapper of each row of the results
+    * @param parallelism the maximum number of partitions to run at once
+    * @param isOrdered true to deliver rows in partition order, false in order of completion
+    * @param timeoutMs the overall timeout in milliseconds
+    * @param <T> the type of the mapped rows
+    * @return the merged rows, which should be closed if not fully consumed
+    * @throws SQLException thrown if the data source has been closed
+    */
+   public <T> ScatterGather<T> scatterGather(String sql, List<Object[]> partitions, RowMapper<T> rowMapper, int parallelism, boolean isOrdered, long timeoutMs) throws SQLException
+   {
+      if (isClosed()) {
+         throw new SQLException("HikariDataSource " + this + " has been closed.");
+      }
+
+      return (fastPathPool != null ? fastPathPool : getLazyPool()).scatterGather(sql, partitions, rowMapper, parallelism, isOrdered, timeoutMs);
+   }
+
+   /**
+    * Create a backpressure-aware publisher of the rows of a query.  Nothing is executed until the
+    * subscriber requests rows; rows are then read from the driver only as they are requested, with
+    * the fetch size following the outstanding demand, and the pooled connection is released on
+    * completion, error or cancellation.
+    *
+    * @param sql the SQL of the query
+    * @param parameters the parameters to bind via <code>setObject()</code>, or null
+    * @param rowMapper the mapper of each row of the result
+    * @param <T> the type of the mapped rows
+    * @return a publisher for a single subscriber
+    * @throws SQLException thrown if the data source has been closed
+    */
+   public <T> RowPublisher<T> publish(String sql, Object[] parameters, RowMapper<T> rowMapper) throws SQLException
+   {
+      if (isClosed()) {
+         throw new SQLException("HikariDataSource " + this + " has been closed.");
+      }
+
+      return (fastPathPool != null ? fastPathPool : getLazyPool()).publish(sql, parameters, rowMapper);
+   }
+
+   /**
+    * Create a loader that writes rows through a parameterized <code>INSERT</code> using JDBC batches
+    * on up to <code>parallelism</code> pooled connections at once.  Each connection commits its own
+    * batches, the batch size adapts to the observed batch latency, and batches failing with a
+    * transient error before their commit are retried on a fresh connection.
+    *
+    * @param sql the SQL of the parameterized insert
+    * @param columnCount the number of parameters of each row
+    * @param parallelism the number of connections to write on
+    * @return the bulk loader, which must be finished or closed to write the last rows
+    * @throws SQLException thrown if the data source has been closed or the writers cannot be started
+    */
+   public BulkLoader bulkLoader(String sql, int columnCount, int parallelism) throws SQLException
+   {
+      if (isClosed()) {
+         throw new SQLException("HikariDataSource " + this + " has been closed.");
       }
 
-      return result.getConnection();
+      return (fastPathPool != null ? fastPathPool : getLazyPool()).bulkLoader(sql, columnCount, parallelism);
    }
 
    /** {@inheritDoc} */
@@ -246,11 +465,34 @@ public class HikariDataSource extends HikariConfig implements DataSource, Closea
     */
    public void evictConnection(Connection connection)
    {
-      if (!isClosed() && pool != null && connection.getClass().getName().startsWith("com.zaxxer.hikari")) {
+      if (!isClosed() && pool != null) {
          pool.evictConnection(connection);
       }
    }
 
+   /**
+    * Remove all cached results of the specified query from the result cache, for example after
+    * the underlying reference data has been modified.
+    *
+    * @param sql the SQL of the query, as passed to <code>prepareStatement()</code>
+    */
+   public void invalidateResultCache(String sql)
+   {
+      if (!isClosed() && pool != null) {
+         pool.invalidateResultCache(sql);
+      }
+   }
+
+   /**
+    * Remove all cached results from the result cache.
+    */
+   public void invalidateResultCache()
+   {
+      if (!isClosed() && pool != null) {
+         pool.invalidateResultCache();
+      }
+   }
+
    /**
     * Suspend allocation of connections from the pool.  All callers to <code>getConnection()</code>
     * will block indefinitely until <code>resumePool()</code> is called.
@@ -320,4 +562,28 @@ public class HikariDataSource extends HikariConfig implements DataSource, Closea
    {
       return "HikariDataSource (" + pool + ")";
    }
+
+   /**
+    * Get the pool, creating it on first use when this HikariDataSource was constructed
+    * via the default constructor.
+    *
+    * @return the HikariPool instance
+    */
+   private HikariPool getLazyPool()
+   {
+      // See http://en.wikipedia.org/wiki/Double-checked_locking#Usage_in_Java
+      HikariPool result = pool;
+      if (result == null) {
+         synchronized (this) {
+            result = pool;
+            if (result == null) {
+               validate();
+               LOGGER.info("{} - is starting.", getPoolName());
+               pool = result = new HikariPool(this);
+            }
+         }
+      }
+
+      return result;
+   }
 }
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari;
+
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The retry policy of {@link HikariDataSource#inTransaction(TransactionCallback, RetryPolicy)}.
+ * Transactions failing with serialization failures, deadlocks or broken connections are retried
+ * up to <code>maxAttempts</code> times with jittered exponential backoff, as long as the
+ * <code>deadline</code> measured from the first attempt has not passed.  Broken connections are
+ * recognized by the exception classifier and profile of the pool; subclasses may override
+ * {@link #isRetryable(SQLException)} to recognize further vendor-specific conditions.
+ *
+ * <p>A transaction whose commit failed may have been committed, so it is retried only if the
+ * policy marks the work as idempotent.</p>
+ *
+ * @author Brett Wooldridge
+ */
+public class RetryPolicy
+{
+   public static final RetryPolicy DEFAULT = new RetryPolicy(3, 50L, TimeUnit.SECONDS.toMillis(1), TimeUnit.SECONDS.toMillis(30));
+
+   private final int maxAttempts;
+   private final long initialBackoff;
+   private final long maxBackoff;
+   private final long deadline;
+   private final boolean isIdempotent;
+
+   /**
+    * Construct a retry policy.
+    *
+    * @param maxAttempts the maximum number of attempts, including the first
+    * @param initialBackoffMs the upper bound of the backoff before the first retry in milliseconds
+    * @param maxBackoffMs the upper bound of the backoff between any two attempts in milliseconds
+    * @param deadlineMs the time in milliseconds, measured from the first attempt, after which no
+    *        further attempts are made
+    */
+   public RetryPolicy(int maxAttempts, long initialBackoffMs, long maxBackoffMs, long deadlineMs)
+   {
+      this(maxAttempts, initialBackoffMs, maxBackoffMs, deadlineMs, false);
+   }
+
+   /**
+    * Construct a retry policy.
+    *
+    * @param maxAttempts the maximum number of attempts, including the first
+    * @param initialBackoffMs the upper bound of the backoff before the first retry in milliseconds
+    * @param maxBackoffMs the upper bound of the backoff between any two attempts in milliseconds
+    * @param deadlineMs the time in milliseconds, measured from the first attempt, after which no
+    *        further attempts are made
+    * @param isIdempotent true if the work may safely be applied twice, so that a transaction whose
+    *        commit failed may be retried
+    */
+   public RetryPolicy(int maxAttempts, long initialBackoffMs, long maxBackoffMs, long deadlineMs, boolean isIdempotent)
+   {
+      if (maxAttempts < 1) {
+         throw new IllegalArgumentException("maxAttempts cannot be less than 1");
+      }
+      if (initialBackoffMs < 0 || maxBackoffMs < initialBackoffMs) {
+         throw new IllegalArgumentException("backoff must satisfy 0 <= initialBackoff <= maxBackoff");
+      }
+      if (deadlineMs < 1) {
+         throw new IllegalArgumentException("deadline cannot be less than 1ms");
+      }
+
+      this.maxAttempts = maxAttempts;
+      this.initialBackoff = initialBackoffMs;
+      this.maxBackoff = maxBackoffMs;
+      this.deadline = deadlineMs;
+      this.isIdempotent = isIdempotent;
+   }
+
+   public int getMaxAttempts()
+   {
+      return maxAttempts;
+   }
+
+   public long getDeadline()
+   {
+      return deadline;
+   }
+
+   public boolean isIdempotent()
+   {
+      return isIdempotent;
+   }
+
+   /**
+    * Get the backoff before the next attempt, chosen uniformly at random between 0 and
+    * the exponentially growing bound for the specified attempt ("full jitter").
+    *
+    * @param attempt the number of the attempt that just failed, starting at 1
+    * @return the backoff in milliseconds
+    */
+   public long getBackoff(int attempt)
+   {
+      final long bound = Math.min(maxBackoff, initialBackoff << Math.min(attempt - 1, 30));
+      return bound > 0 ? ThreadLocalRandom.current().nextLong(bound + 1) : 0L;
+   }
+
+   /**
+    * Determine whether the transaction that failed with the specified exception may be retried,
+    * in addition to failures the pool classifies as broken connections.  By default serialization
+    * failures (40001) and deadlocks (40P01 and SQLTransactionRollbackException) are retryable.
+    *
+    * @param sqle the exception the transaction failed with
+    * @return true if the transaction may be retried
+    */
+   public boolean isRetryable(SQLException sqle)
+   {
+      for (SQLException e = sqle; e != null; e = (e.getNextException() != e ? e.getNextException() : null)) {
+         if (e instanceof SQLTransactionRollbackException) {
+            return true;
+         }
+
+         final String sqlState = e.getSQLState();
+         if ("40001".equals(sqlState) || "40P01".equals(sqlState)) {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public String toString()
+   {
+      return "RetryPolicy(maxAttempts=" + maxAttempts + ", backoff=" + initialBackoff + ".." + maxBackoff + "ms, deadline=" + deadline + "ms" + (isIdempotent ? ", idempotent)" : ")");
+   }
+}
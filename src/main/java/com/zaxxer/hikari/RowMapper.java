@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps the current row of a <code>ResultSet</code> to an object, for
+ * {@link HikariDataSource#executeQueryAsync(String, Object[], RowMapper)}.
+ *
+ * @param <T> the type of the mapped rows
+ * @author Brett Wooldridge
+ */
+public interface RowMapper<T>
+{
+   /**
+    * Map the current row of the result set.  Implementations must not move the cursor.
+    *
+    * @param resultSet the result set, positioned on the row to map
+    * @param rowNum the zero-based number of the row
+    * @return the mapped object
+    * @throws SQLException thrown if a column cannot be read
+    */
+   T mapRow(ResultSet resultSet, int rowNum) throws SQLException;
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari;
+
+/**
+ * Receives the rows of a query as they are requested, see
+ * {@link HikariDataSource#publish(String, Object[], RowMapper)}.  Mirrors
+ * <code>org.reactivestreams.Subscriber</code>; signals are delivered serially, on a thread of the
+ * asynchronous executor of the pool.
+ *
+ * @param <T> the type of the mapped rows
+ * @author Brett Wooldridge
+ */
+public interface RowSubscriber<T>
+{
+   /**
+    * Called once, before any other signal.  No rows are read until the subscription is requested.
+    *
+    * @param subscription the subscription through which to request rows or cancel
+    */
+   void onSubscribe(RowSubscription subscription);
+
+   /**
+    * Called with the next mapped row, at most as many times as rows were requested.
+    *
+    * @param row the mapped row
+    */
+   void onNext(T row);
+
+   /**
+    * Called once if the query or the mapping of a row failed; the connection has been released.
+    *
+    * @param t the failure
+    */
+   void onError(Throwable t);
+
+   /**
+    * Called once after the last row; the connection has been released.
+    */
+   void onComplete();
+}
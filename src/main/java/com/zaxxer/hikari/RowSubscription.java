@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari;
+
+/**
+ * The link between a {@link RowSubscriber} and the query publishing rows to it, through which
+ * the subscriber signals its demand.  Mirrors <code>org.reactivestreams.Subscription</code>.
+ *
+ * @author Brett Wooldridge
+ */
+public interface RowSubscription
+{
+   /**
+    * Request more rows.  Rows are read from the database only as they are requested.
+    *
+    * @param n the number of additional rows, greater than zero; <code>Long.MAX_VALUE</code> for unbounded
+    */
+   void request(long n);
+
+   /**
+    * Stop publishing rows and release the connection.  No further signals are sent.
+    */
+   void cancel();
+}
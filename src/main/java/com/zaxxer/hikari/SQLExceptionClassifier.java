@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari;
+
+import java.sql.SQLException;
+
+/**
+ * Decides whether a <code>SQLException</code> thrown through a pool connection means that the
+ * connection is broken, in which case it is evicted from the pool immediately.  A classifier set
+ * via {@link HikariConfig#setExceptionClassifier(SQLExceptionClassifier)} is consulted first; when
+ * it returns {@link Classification#UNKNOWN}, or throws a <code>RuntimeException</code>, which is
+ * logged, the {@link SQLExceptionProfile} of the database decides.
+ *
+ * @author Brett Wooldridge
+ */
+public interface SQLExceptionClassifier
+{
+   /**
+    * The state of the connection an exception was thrown from.
+    */
+   enum Classification
+   {
+      /** The connection is broken and must be evicted. */
+      BROKEN,
+      /** The connection is usable, whatever the SQLState suggests. */
+      HEALTHY,
+      /** No opinion; the next exception of the chain, or the next classifier, decides. */
+      UNKNOWN
+   }
+
+   /**
+    * Classify a single exception; chained exceptions are classified separately.
+    *
+    * @param e the exception
+    * @return the classification, never null
+    */
+   Classification classify(SQLException e);
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Precompiled tables of the SQLStates and vendor error codes that do, or explicitly do not,
+ * indicate a broken connection on a particular database.  Error codes are looked up first, by
+ * binary search, then the exact SQLState, then its two character class.
+ *
+ * <p>The {@link #GENERIC} profile evicts on SQLState class 08 and a few well known disconnect
+ * states; the vendor profiles add the vendor specific codes of dead connections, and mark lock and
+ * statement timeouts as healthy so they never cause eviction.</p>
+ *
+ * @author Brett Wooldridge
+ */
+public final class SQLExceptionProfile implements SQLExceptionClassifier
+{
+   public static final SQLExceptionProfile GENERIC;
+   public static final SQLExceptionProfile POSTGRESQL;
+   public static final SQLExceptionProfile MYSQL;
+   public static final SQLExceptionProfile ORACLE;
+   public static final SQLExceptionProfile SQLSERVER;
+   public static final SQLExceptionProfile DB2;
+   public static final SQLExceptionProfile H2;
+
+   private static final SQLExceptionProfile[] PROFILES;
+
+   private final String name;
+   private final Map<String, Classification> sqlStates;
+   private final Map<String, Classification> sqlStateClasses;
+   private int[] brokenCodes;
+   private int[] healthyCodes;
+
+   // static initializer
+   static {
+      GENERIC = new SQLExceptionProfile("generic", null)
+         .brokenStateClasses("08")
+         .brokenStates("57P01",  // ADMIN SHUTDOWN
+                       "57P02",  // CRASH SHUTDOWN
+                       "57P03",  // CANNOT CONNECT NOW
+                       "01002",  // SQL92 disconnect error
+                       "JZ0C0",  // Sybase disconnect error
+                       "JZ0C1"); // Sybase disconnect error
+
+      POSTGRESQL = new SQLExceptionProfile("postgresql", GENERIC)
+         .brokenStates("57P04"); // DATABASE DROPPED
+
+      MYSQL = new SQLExceptionProfile("mysql", GENERIC)
+         .brokenCodes(1053,  // ER_SERVER_SHUTDOWN
+                      1077,  // ER_NORMAL_SHUTDOWN
+                      1152,  // ER_ABORTING_CONNECTION
+                      1927,  // ER_CONNECTION_KILLED
+                      2006,  // CR_SERVER_GONE_ERROR
+                      2013,  // CR_SERVER_LOST
+                      2055,  // CR_SERVER_LOST_EXTENDED
+                      4031)  // ER_CLIENT_INTERACTION_TIMEOUT
+         .healthyCodes(1205, // ER_LOCK_WAIT_TIMEOUT
+                       1213, // ER_LOCK_DEADLOCK
+                       1317, // ER_QUERY_INTERRUPTED
+                       3024) // ER_QUERY_TIMEOUT
+         .healthyStates("70100"); // query interrupted (MariaDB)
+
+      ORACLE = new SQLExceptionProfile("oracle", GENERIC)
+         .brokenCodes(28,     // ORA-00028 session killed
+                      1012,   // ORA-01012 not logged on
+                      1033,   // ORA-01033 initialization or shutdown in progress
+                      1034,   // ORA-01034 ORACLE not available
+                      1089,   // ORA-01089 immediate shutdown in progress
+                      1090,   // ORA-01090 shutdown in progress
+                      1092,   // ORA-01092 instance terminated
+                      2396,   // ORA-02396 exceeded maximum idle time
+                      3113,   // ORA-03113 end-of-file on communication channel
+                      3114,   // ORA-03114 not connected to ORACLE
+                      3135,   // ORA-03135 connection lost contact
+                      17002,  // IO exception
+                      17008,  // closed connection
+                      17410,  // no more data to read from socket
+                      17447,  // OALL8 is in an inconsistent state
+                      25408)  // ORA-25408 can not safely replay call
+         .healthyCodes(51,    // ORA-00051 timeout waiting for a resource
+                       54,    // ORA-00054 resource busy
+                       60,    // ORA-00060 deadlock detected
+                       1013,  // ORA-01013 user requested cancel
+                       30006); // ORA-30006 resource busy, WAIT timeout expired
+
+      SQLSERVER = new SQLExceptionProfile("sqlserver", GENERIC)
+         .brokenCodes(233,    // no process is on the other end of the pipe
+                      10053,  // connection aborted
+                      10054,  // connection reset by peer
+                      40197,  // service error, typically failover
+                      40613)  // database not currently available
+         .healthyCodes(1205,  // deadlock victim
+                       1222)  // lock request timeout
+         .healthyStates("HYT00"); // query timeout
+
+      DB2 = new SQLExceptionProfile("db2", GENERIC)
+         .brokenCodes(-30081, // communication error
+                      -4499,  // fatal error, connection terminated
+                      -4470,  // connection closed
+                      -1224)  // database agent terminated
+         .healthyCodes(-30108, // connection re-established by client reroute
+                       -952,  // processing cancelled by interrupt
+                       -913,  // deadlock or timeout, statement rolled back
+                       -911)  // deadlock or timeout, transaction rolled back
+         .brokenStates("40003"); // statement completion unknown
+
+      H2 = new SQLExceptionProfile("h2", GENERIC)
+         .brokenCodes(90067,  // connection broken
+                      90098,  // database closed
+                      90121)  // database called at VM shutdown
+         .healthyCodes(50200, // lock timeout
+                       57014); // statement cancelled
+
+      PROFILES = new SQLExceptionProfile[] { GENERIC, POSTGRESQL, MYSQL, ORACLE, SQLSERVER, DB2, H2 };
+   }
+
+   private SQLExceptionProfile(final String name, final SQLExceptionProfile base)
+   {
+      this.name = name;
+      this.sqlStates = new HashMap<>();
+      this.sqlStateClasses = new HashMap<>();
+      this.brokenCodes = new int[0];
+      this.healthyCodes = new int[0];
+      if (base != null) {
+         sqlStates.putAll(base.sqlStates);
+         sqlStateClasses.putAll(base.sqlStateClasses);
+         brokenCodes = base.brokenCodes.clone();
+         healthyCodes = base.healthyCodes.clone();
+      }
+   }
+
+   /**
+    * Get a profile by name.
+    *
+    * @param name one of generic, postgresql, mysql, oracle, sqlserver, db2 or h2 (case insensitive)
+    * @return the profile
+    * @throws IllegalArgumentException if there is no profile of that name
+    */
+   public static SQLExceptionProfile forName(final String name)
+   {
+      for (SQLExceptionProfile profile : PROFILES) {
+         if (profile.name.equalsIgnoreCase(name)) {
+            return profile;
+         }
+      }
+      throw new IllegalArgumentException("Unknown exception profile " + name);
+   }
+
+   /**
+    * Detect the profile of the database from the connection settings of a pool.
+    *
+    * @param jdbcUrl the JDBC URL, or null
+    * @param className the DataSource or Driver class name, or null
+    * @return the vendor profile, or {@link #GENERIC} if the database is not recognized
+    */
+   public static SQLExceptionProfile detect(final String jdbcUrl, final String className)
+   {
+      final String hint = ((jdbcUrl != null ? jdbcUrl : "") + ' ' + (className != null ? className : "")).toLowerCase(Locale.ENGLISH);
+      if (hint.contains("postgresql") || hint.contains("pgjdbc")) {
+         return POSTGRESQL;
+      }
+      else if (hint.contains("mysql") || hint.contains("mariadb")) {
+         return MYSQL;
+      }
+      else if (hint.contains("oracle")) {
+         return ORACLE;
+      }
+      else if (hint.contains("sqlserver") || hint.contains("jtds")) {
+         return SQLSERVER;
+      }
+      else if (hint.contains("db2")) {
+         return DB2;
+      }
+      else if (hint.contains("jdbc:h2:") || hint.contains("org.h2.")) {
+         return H2;
+      }
+      return GENERIC;
+   }
+
+   /**
+    * Get the name of the profile.
+    *
+    * @return the profile name
+    */
+   public String getName()
+   {
+      return name;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public Classification classify(final SQLException e)
+   {
+      final int errorCode = e.getErrorCode();
+      if (errorCode != 0) {
+         if (Arrays.binarySearch(healthyCodes, errorCode) >= 0) {
+            return Classification.HEALTHY;
+         }
+         if (Arrays.binarySearch(brokenCodes, errorCode) >= 0) {
+            return Classification.BROKEN;
+         }
+      }
+
+      final String sqlState = e.getSQLState();
+      if (sqlState != null) {
+         Classification classification = sqlStates.get(sqlState);
+         if (classification == null && sqlState.length() >= 2) {
+            classification = sqlStateClasses.get(sqlState.substring(0, 2));
+         }
+         if (classification != null) {
+            return classification;
+         }
+      }
+
+      return Classification.UNKNOWN;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public String toString()
+   {
+      return "SQLExceptionProfile(" + name + ")";
+   }
+
+   private SQLExceptionProfile brokenStateClasses(final String... classes)
+   {
+      for (String stateClass : classes) {
+         sqlStateClasses.put(stateClass, Classification.BROKEN);
+      }
+      return this;
+   }
+
+   private SQLExceptionProfile brokenStates(final String... states)
+   {
+      for (String state : states) {
+         sqlStates.put(state, Classification.BROKEN);
+      }
+      return this;
+   }
+
+   private SQLExceptionProfile healthyStates(final String... states)
+   {
+      for (String state : states) {
+         sqlStates.put(state, Classification.HEALTHY);
+      }
+      return this;
+   }
+
+   private SQLExceptionProfile brokenCodes(final int... codes)
+   {
+      brokenCodes = merge(brokenCodes, codes);
+      return this;
+   }
+
+   private SQLExceptionProfile healthyCodes(final int... codes)
+   {
+      healthyCodes = merge(healthyCodes, codes);
+      return this;
+   }
+
+   private static int[] merge(final int[] codes, final int[] more)
+   {
+      final int[] merged = Arrays.copyOf(codes, codes.length + more.length);
+      System.arraycopy(more, 0, merged, codes.length, more.length);
+      Arrays.sort(merged);
+      return merged;
+   }
+}
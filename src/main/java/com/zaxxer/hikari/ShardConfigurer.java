@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zaxxer.hikari;
+
+/**
+ * Customizes the configuration of the pool of one shard of a {@link ShardRouter}, typically by
+ * setting its <code>jdbcUrl</code> or data source properties, before the pool is created.
+ *
+ * @author Brett Wooldridge
+ */
+public interface ShardConfigurer
+{
+   /**
+    * Configure the pool of a shard.
+    *
+    * @param shardId the identifier of the shard
+    * @param config a copy of the template configuration of the router
+    */
+   void configure(String shardId, HikariConfig config);
+}
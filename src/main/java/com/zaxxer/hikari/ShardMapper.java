@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zaxxer.hikari;
+
+/**
+ * Maps a shard key, such as a customer or tenant identifier, to the identifier of the shard that
+ * holds its data, for {@link ShardRouter}.  Without a mapper, keys are placed on shards by
+ * consistent hashing.
+ *
+ * @author Brett Wooldridge
+ */
+public interface ShardMapper
+{
+   /**
+    * Get the shard of a key.
+    *
+    * @param shardKey the shard key
+    * @return the identifier of one of the shards of the router
+    */
+   String getShardId(Object shardKey);
+}
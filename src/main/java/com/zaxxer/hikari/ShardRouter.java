@@ -0,0 +1,534 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.zaxxer.hikari.pool.HikariPool;
+import com.zaxxer.hikari.util.ClockSource;
+import com.zaxxer.hikari.util.DefaultThreadFactory;
+
+/**
+ * Routes connections to the pools of many database shards.  The pool of a shard is created from
+ * a template configuration when the shard is first used, and is sized down to zero connections
+ * when the shard is idle, so that a process can reach every shard without holding connections
+ * and threads for all of them.  The pools share one housekeeping executor, and their statistics
+ * are exposed through a single {@link ShardRouterMXBean}.
+ *
+ * <p>Pools of different shards are created independently of each other.  When the pool of a shard
+ * cannot be created, the failure is remembered for the <code>connectionTimeout</code> of the
+ * template, during which requests for the shard fail at once instead of attempting it again.</p>
+ *
+ * @author Brett Wooldridge
+ */
+public final class ShardRouter implements ShardRouterMXBean, Closeable
+{
+   private static final Logger LOGGER = LoggerFactory.getLogger(ShardRouter.class);
+   private static final AtomicInteger ROUTER_NUMBER = new AtomicInteger();
+   private static final ClockSource clockSource = ClockSource.INSTANCE;
+
+   static final int VIRTUAL_NODES_PER_SHARD = 64;
+
+   private final String routerName;
+   private final HikariConfig template;
+   private final Set<String> shardIds;
+   private final ShardConfigurer configurer;
+   private final ShardMapper shardMapper;
+   private final ConcurrentHashMap<String, HikariPool> pools;
+   private final ConcurrentHashMap<String, PoolCreation> creations;
+   private final ScheduledThreadPoolExecutor houseKeepingExecutorService;
+   private final boolean isOwnHouseKeepingExecutor;
+
+   private volatile boolean isClosed;
+
+   /**
+    * Create a router placing shard keys on the shards by consistent hashing, so that adding or
+    * removing a shard only moves the keys of about one shard.
+    *
+    * @param template the configuration from which the pool of every shard is copied
+    * @param shardIds the identifiers of the shards
+    * @param configurer the customizer of the pool configuration of each shard
+    */
+   public ShardRouter(final HikariConfig template, final Collection<String> shardIds, final ShardConfigurer configurer)
+   {
+      this(template, shardIds, configurer, null);
+   }
+
+   /**
+    * Create a router placing shard keys on the shards with the specified mapper.
+    *
+    * @param template the configuration from which the pool of every shard is copied
+    * @param shardIds the identifiers of the shards
+    * @param configurer the customizer of the pool configuration of each shard
+    * @param shardMapper the mapper of shard keys to shard identifiers, or null for consistent hashing
+    */
+   public ShardRouter(final HikariConfig template, final Collection<String> shardIds, final ShardConfigurer configurer, final ShardMapper shardMapper)
+   {
+      if (shardIds == null || shardIds.isEmpty()) {
+         throw new IllegalArgumentException("shardIds cannot be empty");
+      }
+      if (configurer == null) {
+         throw new IllegalArgumentException("configurer cannot be null");
+      }
+
+      this.routerName = (template.getPoolName() != null ? template.getPoolName() : "HikariShardRouter-" + ROUTER_NUMBER.incrementAndGet());
+      this.template = new HikariConfig();
+      template.copyState(this.template);
+      this.shardIds = Collections.unmodifiableSet(new LinkedHashSet<>(shardIds));
+      this.configurer = configurer;
+      this.shardMapper = (shardMapper != null ? shardMapper : new ConsistentHashShardMapper(this.shardIds));
+      this.pools = new ConcurrentHashMap<>();
+      this.creations = new ConcurrentHashMap<>();
+
+      if (template.getScheduledExecutorService() == null) {
+         final ThreadFactory threadFactory = (template.getThreadFactory() != null ? template.getThreadFactory() : new DefaultThreadFactory("Hikari housekeeper (router " + routerName + ")", true));
+         this.houseKeepingExecutorService = new ScheduledThreadPoolExecutor(1, threadFactory, new ThreadPoolExecutor.DiscardPolicy());
+         this.houseKeepingExecutorService.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+         this.houseKeepingExecutorService.setRemoveOnCancelPolicy(true);
+         this.isOwnHouseKeepingExecutor = true;
+      }
+      else {
+         this.houseKeepingExecutorService = template.getScheduledExecutorService();
+         this.isOwnHouseKeepingExecutor = false;
+      }
+
+      if (template.isRegisterMbeans()) {
+         registerMBean();
+      }
+   }
+
+   /**
+    * Get a connection from the pool of the shard of a key.
+    *
+    * @param shardKey the shard key
+    * @return a java.sql.Connection instance
+    * @throws SQLException thrown if a timeout occurs trying to obtain a connection
+    */
+   public Connection getConnection(final Object shardKey) throws SQLException
+   {
+      return getShardConnection(getShardId(shardKey));
+   }
+
+   /**
+    * Get a connection from the pool of a shard.
+    *
+    * @param shardId the identifier of the shard
+    * @return a java.sql.Connection instance
+    * @throws SQLException thrown if a timeout occurs trying to obtain a connection
+    */
+   public Connection getShardConnection(final String shardId) throws SQLException
+   {
+      return getPool(shardId).getConnection();
+   }
+
+   /**
+    * Get the shard of a key.
+    *
+    * @param shardKey the shard key
+    * @return the identifier of the shard
+    */
+   public String getShardId(final Object shardKey)
+   {
+      if (shardKey == null) {
+         throw new IllegalArgumentException("shardKey cannot be null");
+      }
+
+      return shardMapper.getShardId(shardKey);
+   }
+
+   /**
+    * Get the identifiers of the shards.
+    *
+    * @return the shard identifiers
+    */
+   public Set<String> getShardIds()
+   {
+      return shardIds;
+   }
+
+   /**
+    * Get the pool of a shard, creating it on first use.
+    *
+    * @param shardId the identifier of the shard
+    * @return the pool of the shard
+    * @throws SQLException thrown if the router has been closed or the pool cannot be created
+    */
+   public HikariPool getPool(final String shardId) throws SQLException
+   {
+      final HikariPool pool = pools.get(shardId);
+      if (pool != null) {
+         return pool;
+      }
+
+      if (!shardIds.contains(shardId)) {
+         throw new IllegalArgumentException("Unknown shard '" + shardId + "'");
+      }
+
+      while (true) {
+         if (isClosed) {
+            throw new SQLException("ShardRouter " + routerName + " has been closed.");
+         }
+
+         PoolCreation creation = creations.get(shardId);
+         if (creation == null) {
+            final PoolCreation created = new PoolCreation(shardId);
+            creation = creations.putIfAbsent(shardId, created);
+            if (creation == null) {
+               creation = created;
+               created.run();
+            }
+         }
+
+         try {
+            return creation.get();
+         }
+         catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(routerName + " - Interrupted waiting for the pool of shard " + shardId, e);
+         }
+         catch (ExecutionException e) {
+            if (clockSource.elapsedMillis(creation.failureTime) < template.getConnectionTimeout()) {
+               throw unwrapCreationFailure(e.getCause());
+            }
+            creations.remove(shardId, creation);
+         }
+      }
+   }
+
+   /**
+    * Shutdown the pools of all shards.
+    */
+   @Override
+   public void close()
+   {
+      synchronized (this) {
+         if (isClosed) {
+            return;
+         }
+         isClosed = true;
+      }
+
+      LOGGER.info("{} - is closing down {} shard pools.", routerName, pools.size());
+      for (String shardId : pools.keySet()) {
+         shutdownPool(shardId);
+      }
+      creations.clear();
+
+      if (isOwnHouseKeepingExecutor) {
+         houseKeepingExecutorService.shutdown();
+      }
+
+      if (template.isRegisterMbeans()) {
+         unregisterMBean();
+      }
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public String toString()
+   {
+      return routerName;
+   }
+
+   // ***********************************************************************
+   //                        ShardRouterMXBean methods
+   // ***********************************************************************
+
+   /** {@inheritDoc} */
+   @Override
+   public int getShardCount()
+   {
+      return shardIds.size();
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public int getOpenShardCount()
+   {
+      return pools.size();
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public int getIdleConnections()
+   {
+      int idle = 0;
+      for (HikariPool pool : pools.values()) {
+         idle += pool.getIdleConnections();
+      }
+      return idle;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public int getActiveConnections()
+   {
+      int active = 0;
+      for (HikariPool pool : pools.values()) {
+         active += pool.getActiveConnections();
+      }
+      return active;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public int getTotalConnections()
+   {
+      int total = 0;
+      for (HikariPool pool : pools.values()) {
+         total += pool.getTotalConnections();
+      }
+      return total;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public int getThreadsAwaitingConnection()
+   {
+      int waiting = 0;
+      for (HikariPool pool : pools.values()) {
+         waiting += pool.getThreadsAwaitingConnection();
+      }
+      return waiting;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public Map<String, Integer> getActiveConnectionsByShard()
+   {
+      final Map<String, Integer> active = new HashMap<>();
+      for (Map.Entry<String, HikariPool> entry : pools.entrySet()) {
+         active.put(entry.getKey(), entry.getValue().getActiveConnections());
+      }
+      return active;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public Map<String, Integer> getTotalConnectionsByShard()
+   {
+      final Map<String, Integer> total = new HashMap<>();
+      for (Map.Entry<String, HikariPool> entry : pools.entrySet()) {
+         total.put(entry.getKey(), entry.getValue().getTotalConnections());
+      }
+      return total;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void softEvictConnections()
+   {
+      for (HikariPool pool : pools.values()) {
+         pool.softEvictConnections();
+      }
+   }
+
+   // ***********************************************************************
+   //                          Private methods
+   // ***********************************************************************
+
+   /**
+    * Create the pool of a shard, outside of any lock shared with other shards.
+    */
+   private HikariPool createPool(final String shardId) throws SQLException
+   {
+      final HikariPool pool = new HikariPool(createShardConfig(shardId));
+      pools.put(shardId, pool);
+      if (isClosed) {
+         // the router was closed while the pool was created, so it may have missed the pool
+         shutdownPool(shardId);
+         throw new SQLException("ShardRouter " + routerName + " has been closed.");
+      }
+      return pool;
+   }
+
+   /**
+    * Shutdown the pool of a shard, if it is still registered.  The caller that removes the pool
+    * from the registry shuts it down, so that it is shut down only once.
+    */
+   private void shutdownPool(final String shardId)
+   {
+      final HikariPool pool = pools.remove(shardId);
+      if (pool != null) {
+         try {
+            pool.shutdown();
+         }
+         catch (InterruptedException e) {
+            LOGGER.warn("{} - Interrupted during closing", routerName, e);
+            Thread.currentThread().interrupt();
+         }
+      }
+   }
+
+   private static SQLException unwrapCreationFailure(final Throwable cause)
+   {
+      if (cause instanceof SQLException) {
+         return (SQLException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+         throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+         throw (Error) cause;
+      }
+      return new SQLException(cause);
+   }
+
+   /**
+    * Copy the template configuration for a shard.  Shard pools keep no minimum of idle
+    * connections, share the housekeeping executor, and are registered with JMX only through
+    * the router.
+    */
+   private HikariConfig createShardConfig(final String shardId)
+   {
+      final HikariConfig config = new HikariConfig();
+      template.copyState(config);
+      config.setPoolName(routerName + "-" + shardId);
+      config.setScheduledExecutorService(houseKeepingExecutorService);
+      configurer.configure(shardId, config);
+
+      config.setMinimumIdle(0);
+      config.setRegisterMbeans(false);
+      config.validate();
+
+      LOGGER.debug("{} - Creating pool for shard {}", routerName, shardId);
+      return config;
+   }
+
+   private void registerMBean()
+   {
+      try {
+         final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+         final ObjectName beanRouterName = new ObjectName("com.zaxxer.hikari:type=ShardRouter (" + routerName + ")");
+         if (!mBeanServer.isRegistered(beanRouterName)) {
+            mBeanServer.registerMBean(this, beanRouterName);
+         }
+         else {
+            LOGGER.error("{} - You cannot use the same pool name for separate shard routers.", routerName);
+         }
+      }
+      catch (Exception e) {
+         LOGGER.warn("{} - Unable to register management beans.", routerName, e);
+      }
+   }
+
+   private void unregisterMBean()
+   {
+      try {
+         final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+         final ObjectName beanRouterName = new ObjectName("com.zaxxer.hikari:type=ShardRouter (" + routerName + ")");
+         if (mBeanServer.isRegistered(beanRouterName)) {
+            mBeanServer.unregisterMBean(beanRouterName);
+         }
+      }
+      catch (Exception e) {
+         LOGGER.warn("{} - Unable to unregister management beans.", routerName, e);
+      }
+   }
+
+   /**
+    * The creation of the pool of a shard.  Threads requesting the shard while it is created wait
+    * for its outcome, and a failure is kept with the time it occurred.
+    */
+   private final class PoolCreation extends FutureTask<HikariPool>
+   {
+      private volatile long failureTime;
+
+      PoolCreation(final String shardId)
+      {
+         super(new Callable<HikariPool>() {
+            @Override
+            public HikariPool call() throws SQLException
+            {
+               return createPool(shardId);
+            }
+         });
+      }
+
+      /** {@inheritDoc} */
+      @Override
+      protected void setException(final Throwable t)
+      {
+         failureTime = clockSource.currentTime();
+         super.setException(t);
+      }
+   }
+
+   /**
+    * Places keys on a hash ring with {@link #VIRTUAL_NODES_PER_SHARD} points per shard, so keys
+    * spread evenly and a change in the set of shards only moves the keys nearest the change.
+    */
+   static final class ConsistentHashShardMapper implements ShardMapper
+   {
+      private final TreeMap<Long, String> ring;
+
+      ConsistentHashShardMapper(final Collection<String> shardIds)
+      {
+         this.ring = new TreeMap<>();
+         for (String shardId : shardIds) {
+            for (int node = 0; node < VIRTUAL_NODES_PER_SHARD; node++) {
+               ring.put(mix((shardId + '#' + node).hashCode() * 0x9E3779B97F4A7C15L + node), shardId);
+            }
+         }
+      }
+
+      /** {@inheritDoc} */
+      @Override
+      public String getShardId(final Object shardKey)
+      {
+         final Map.Entry<Long, String> point = ring.ceilingEntry(mix(shardKey.hashCode()));
+         return (point != null ? point : ring.firstEntry()).getValue();
+      }
+
+      /**
+       * The 64-bit finalizer of MurmurHash3, spreading the bits of weak hash codes over the ring.
+       */
+      private static long mix(long h)
+      {
+         h ^= h >>> 33;
+         h *= 0xff51afd7ed558ccdL;
+         h ^= h >>> 33;
+         h *= 0xc4ceb93fe53a87e5L;
+         h ^= h >>> 33;
+         return h;
+      }
+   }
+}
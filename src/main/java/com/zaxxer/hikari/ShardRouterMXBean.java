@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zaxxer.hikari;
+
+import java.util.Map;
+
+/**
+ * The javax.management MBean for a shard router, aggregating the pools of all of its shards.
+ *
+ * @author Brett Wooldridge
+ */
+public interface ShardRouterMXBean
+{
+   int getShardCount();
+
+   int getOpenShardCount();
+
+   int getIdleConnections();
+
+   int getActiveConnections();
+
+   int getTotalConnections();
+
+   int getThreadsAwaitingConnection();
+
+   Map<String, Integer> getActiveConnectionsByShard();
+
+   Map<String, Integer> getTotalConnectionsByShard();
+
+   void softEvictConnections();
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * A unit of work executed within a transaction by {@link HikariDataSource#inTransaction(TransactionCallback, RetryPolicy)}.
+ * Because the work may be retried on a different connection, it should not have side-effects
+ * outside of the database other than those it is safe to repeat.
+ *
+ * @param <T> the type of the result
+ * @author Brett Wooldridge
+ */
+public interface TransactionCallback<T>
+{
+   /**
+    * Perform the work of the transaction.  The connection is in manual-commit mode, and is
+    * committed after this method returns or rolled back if it throws.
+    *
+    * @param connection the connection to perform the work on
+    * @return the result of the work
+    * @throws SQLException thrown if the work fails
+    */
+   T doInTransaction(Connection connection) throws SQLException;
+}
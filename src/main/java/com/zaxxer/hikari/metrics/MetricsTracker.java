@@ -35,6 +35,34 @@ public class MetricsTracker implements AutoCloseable
    {
    }
 
+   public void recordPoolWarmupMillis(final long elapsedWarmupMillis)
+   {
+   }
+
+   public void recordLaneAcquiredNanos(final String laneName, final long elapsedAcquiredNanos)
+   {
+   }
+
+   public void recordLaneTimeout(final String laneName)
+   {
+   }
+
+   public void recordTransactionRetry()
+   {
+   }
+
+   public void recordTransactionRetriesExhausted()
+   {
+   }
+
+   public void recordBulkLoadBatch(final int rows, final long elapsedBatchNanos)
+   {
+   }
+
+   public void recordBulkLoadRetry()
+   {
+   }
+
    @Override
    public void close()
    {
@@ -16,10 +16,12 @@
 
 package com.zaxxer.hikari.metrics.dropwizard;
 
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.zaxxer.hikari.metrics.MetricsTracker;
@@ -30,7 +32,15 @@ public final class CodaHaleMetricsTracker extends MetricsTracker
    private final String poolName;
    private final Timer connectionObtainTimer;
    private final Histogram connectionUsage;
+   private final Meter transactionRetries;
+   private final Meter transactionRetriesExhausted;
+   private final Timer bulkLoadBatches;
+   private final Meter bulkLoadRows;
+   private final Meter bulkLoadRetries;
    private final MetricRegistry registry;
+   private final ConcurrentHashMap<String, Timer> laneObtainTimers;
+   private final ConcurrentHashMap<String, Meter> laneTimeoutMeters;
+   private volatile long warmupMillis;
 
    public CodaHaleMetricsTracker(final String poolName, final PoolStats poolStats, final MetricRegistry registry)
    {
@@ -38,6 +48,13 @@ public final class CodaHaleMetricsTracker extends MetricsTracker
       this.registry = registry;
       this.connectionObtainTimer = registry.timer(MetricRegistry.name(poolName, "pool", "Wait"));
       this.connectionUsage = registry.histogram(MetricRegistry.name(poolName, "pool", "Usage"));
+      this.transactionRetries = registry.meter(MetricRegistry.name(poolName, "pool", "TransactionRetries"));
+      this.transactionRetriesExhausted = registry.meter(MetricRegistry.name(poolName, "pool", "TransactionRetriesExhausted"));
+      this.bulkLoadBatches = registry.timer(MetricRegistry.name(poolName, "pool", "BulkLoadBatches"));
+      this.bulkLoadRows = registry.meter(MetricRegistry.name(poolName, "pool", "BulkLoadRows"));
+      this.bulkLoadRetries = registry.meter(MetricRegistry.name(poolName, "pool", "BulkLoadRetries"));
+      this.laneObtainTimers = new ConcurrentHashMap<>();
+      this.laneTimeoutMeters = new ConcurrentHashMap<>();
 
       registry.register(MetricRegistry.name(poolName, "pool", "TotalConnections"),
                         new Gauge<Integer>() {
@@ -70,6 +87,14 @@ public final class CodaHaleMetricsTracker extends MetricsTracker
                               return poolStats.getPendingThreads();
                            }
                         });
+
+      registry.register(MetricRegistry.name(poolName, "pool", "WarmupTime"),
+                        new Gauge<Long>() {
+                           @Override
+                           public Long getValue() {
+                              return warmupMillis;
+                           }
+                        });
    }
 
    /** {@inheritDoc} */
@@ -82,6 +107,18 @@ public final class CodaHaleMetricsTracker extends MetricsTracker
       registry.remove(MetricRegistry.name(poolName, "pool", "IdleConnections"));
       registry.remove(MetricRegistry.name(poolName, "pool", "ActiveConnections"));
       registry.remove(MetricRegistry.name(poolName, "pool", "PendingConnections"));
+      registry.remove(MetricRegistry.name(poolName, "pool", "WarmupTime"));
+      registry.remove(MetricRegistry.name(poolName, "pool", "TransactionRetries"));
+      registry.remove(MetricRegistry.name(poolName, "pool", "TransactionRetriesExhausted"));
+      registry.remove(MetricRegistry.name(poolName, "pool", "BulkLoadBatches"));
+      registry.remove(MetricRegistry.name(poolName, "pool", "BulkLoadRows"));
+      registry.remove(MetricRegistry.name(poolName, "pool", "BulkLoadRetries"));
+      for (String laneName : laneObtainTimers.keySet()) {
+         registry.remove(MetricRegistry.name(poolName, "pool", "Lane", laneName, "Wait"));
+      }
+      for (String laneName : laneTimeoutMeters.keySet()) {
+         registry.remove(MetricRegistry.name(poolName, "pool", "Lane", laneName, "Timeouts"));
+      }
    }
 
    /** {@inheritDoc} */
@@ -98,6 +135,66 @@ public final class CodaHaleMetricsTracker extends MetricsTracker
       connectionUsage.update(elapsedBorrowedMillis);
    }
 
+   /** {@inheritDoc} */
+   @Override
+   public void recordPoolWarmupMillis(final long elapsedWarmupMillis)
+   {
+      warmupMillis = elapsedWarmupMillis;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void recordLaneAcquiredNanos(final String laneName, final long elapsedAcquiredNanos)
+   {
+      Timer timer = laneObtainTimers.get(laneName);
+      if (timer == null) {
+         timer = registry.timer(MetricRegistry.name(poolName, "pool", "Lane", laneName, "Wait"));
+         laneObtainTimers.putIfAbsent(laneName, timer);
+      }
+      timer.update(elapsedAcquiredNanos, TimeUnit.NANOSECONDS);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void recordLaneTimeout(final String laneName)
+   {
+      Meter meter = laneTimeoutMeters.get(laneName);
+      if (meter == null) {
+         meter = registry.meter(MetricRegistry.name(poolName, "pool", "Lane", laneName, "Timeouts"));
+         laneTimeoutMeters.putIfAbsent(laneName, meter);
+      }
+      meter.mark();
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void recordTransactionRetry()
+   {
+      transactionRetries.mark();
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void recordTransactionRetriesExhausted()
+   {
+      transactionRetriesExhausted.mark();
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void recordBulkLoadBatch(final int rows, final long elapsedBatchNanos)
+   {
+      bulkLoadBatches.update(elapsedBatchNanos, TimeUnit.NANOSECONDS);
+      bulkLoadRows.mark(rows);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void recordBulkLoadRetry()
+   {
+      bulkLoadRetries.mark();
+   }
+
    public Timer getConnectionAcquisitionTimer()
    {
       return connectionObtainTimer;
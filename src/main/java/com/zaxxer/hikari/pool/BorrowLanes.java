@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari.pool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.zaxxer.hikari.BorrowLane;
+
+/**
+ * Admission control for borrow lanes.  A borrower that obtains a connection from the
+ * bag is only admitted if no higher priority lane has a waiter blocked in the bag, and
+ * if taking the connection would not eat into capacity reserved by other lanes.  Only
+ * connections within <code>maximumPoolSize</code> count against reserved capacity.
+ * Borrowers that are not admitted return the connection to the bag, where waiting
+ * higher priority borrowers will pick it up, and wait until they become admissible.
+ *
+ * @author Brett Wooldridge
+ */
+final class BorrowLanes
+{
+   private final Lane defaultLane;
+   private final Lane[] lanes;
+   private final Map<String, Lane> laneMap;
+   private final int capacity;
+   private final AtomicInteger inUse;
+   private final AtomicInteger gatedWaiters;
+
+   static final class Lane
+   {
+      final String name;
+      final int priority;
+      final int reservedCapacity;
+      final long connectionTimeout;
+      final AtomicInteger waiting;
+      final AtomicInteger inUse;
+
+      Lane(final String name, final int priority, final int reservedCapacity, final long connectionTimeout)
+      {
+         this.name = name;
+         this.priority = priority;
+         this.reservedCapacity = reservedCapacity;
+         this.connectionTimeout = connectionTimeout;
+         this.waiting = new AtomicInteger();
+         this.inUse = new AtomicInteger();
+      }
+   }
+
+   BorrowLanes(final List<BorrowLane> borrowLanes, final int capacity)
+   {
+      this.capacity = capacity;
+      this.inUse = new AtomicInteger();
+      this.gatedWaiters = new AtomicInteger();
+      this.defaultLane = new Lane(BorrowLane.DEFAULT_LANE, 0, 0, 0L);
+      this.laneMap = new HashMap<>();
+
+      final List<Lane> list = new ArrayList<>();
+      list.add(defaultLane);
+      for (BorrowLane borrowLane : borrowLanes) {
+         final Lane lane = new Lane(borrowLane.getName(), borrowLane.getPriority(), borrowLane.getReservedCapacity(), borrowLane.getConnectionTimeout());
+         list.add(lane);
+         laneMap.put(lane.name, lane);
+      }
+
+      // Highest priority first, so that the priority scan can stop early
+      Collections.sort(list, new Comparator<Lane>() {
+         @Override
+         public int compare(Lane laneOne, Lane laneTwo)
+         {
+            return Integer.compare(laneTwo.priority, laneOne.priority);
+         }
+      });
+      this.lanes = list.toArray(new Lane[list.size()]);
+   }
+
+   Lane getDefaultLane()
+   {
+      return defaultLane;
+   }
+
+   Lane getLane(final String name)
+   {
+      final Lane lane = laneMap.get(name);
+      if (lane == null) {
+         throw new IllegalArgumentException("Unknown borrow lane '" + name + "'");
+      }
+      return lane;
+   }
+
+   /**
+    * Mark that a borrower in the specified lane is about to block in the bag.
+    */
+   void beginWait(final Lane lane)
+   {
+      lane.waiting.incrementAndGet();
+   }
+
+   /**
+    * Mark that a borrower in the specified lane is no longer blocked in the bag.
+    */
+   void endWait(final Lane lane)
+   {
+      lane.waiting.decrementAndGet();
+      signal();
+   }
+
+   /**
+    * Attempt to admit the borrow of the specified entry in the specified lane.
+    *
+    * @return true if admitted, false if the entry must be returned to the bag
+    */
+   boolean tryAdmit(final Lane lane, final PoolEntry poolEntry)
+   {
+      if (hasHigherPriorityWaiter(lane)) {
+         return false;
+      }
+
+      // Overflow connections come on top of maximumPoolSize, so they are not counted against reservations
+      if (!poolEntry.isOverflow) {
+         final int shortfall = reservedShortfall(lane);
+         int current;
+         do {
+            current = inUse.get();
+            if (current + 1 + shortfall > capacity) {
+               return false;
+            }
+         } while (!inUse.compareAndSet(current, current + 1));
+
+         lane.inUse.incrementAndGet();
+      }
+
+      poolEntry.borrowLane = lane;
+      return true;
+   }
+
+   /**
+    * Release the admission held by the specified entry, if any.
+    */
+   void release(final PoolEntry poolEntry)
+   {
+      final Lane lane = poolEntry.borrowLane;
+      if (lane != null) {
+         poolEntry.borrowLane = null;
+         if (!poolEntry.isOverflow) {
+            lane.inUse.decrementAndGet();
+            inUse.decrementAndGet();
+         }
+         signal();
+      }
+   }
+
+   /**
+    * Wait until a borrower in the specified lane could be admitted, or the timeout elapses.
+    *
+    * @param lane the lane of the borrower
+    * @param timeoutMs the maximum time to wait in milliseconds
+    * @throws InterruptedException if interrupted while waiting
+    */
+   void awaitAdmission(final Lane lane, final long timeoutMs) throws InterruptedException
+   {
+      if (timeoutMs <= 0L) {
+         return;
+      }
+
+      gatedWaiters.incrementAndGet();
+      try {
+         synchronized (this) {
+            if (!isAdmissible(lane)) {
+               wait(timeoutMs);
+            }
+         }
+      }
+      finally {
+         gatedWaiters.decrementAndGet();
+      }
+   }
+
+   private boolean isAdmissible(final Lane lane)
+   {
+      return !hasHigherPriorityWaiter(lane) && inUse.get() + 1 + reservedShortfall(lane) <= capacity;
+   }
+
+   private boolean hasHigherPriorityWaiter(final Lane lane)
+   {
+      for (Lane other : lanes) {
+         if (other.priority <= lane.priority) {
+            break;
+         }
+         if (other.waiting.get() > 0) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * Get the number of connections reserved by other lanes that those lanes are not currently using.
+    */
+   private int reservedShortfall(final Lane lane)
+   {
+      int shortfall = 0;
+      for (Lane other : lanes) {
+         if (other != lane && other.reservedCapacity > 0) {
+            shortfall += Math.max(0, other.reservedCapacity - other.inUse.get());
+         }
+      }
+      return shortfall;
+   }
+
+   private void signal()
+   {
+      if (gatedWaiters.get() > 0) {
+         synchronized (this) {
+            notifyAll();
+         }
+      }
+   }
+}
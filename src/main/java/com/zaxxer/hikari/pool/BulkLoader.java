@@ -0,0 +1,421 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari.pool;
+
+import static com.zaxxer.hikari.util.UtilityElf.createThreadPoolExecutor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.zaxxer.hikari.RetryPolicy;
+import com.zaxxer.hikari.util.ClockSource;
+
+/**
+ * Loads rows through a parameterized <code>INSERT</code> with <code>addBatch()</code>/<code>executeBatch()</code>
+ * on several pooled connections in parallel.  Rows added by the producer are copied into reused
+ * batch buffers, which writer threads bind, execute and commit on their own connection.  The batch
+ * size adapts to the observed batch latency, and batches failing with a transient error before their
+ * commit are retried on a fresh connection; a batch whose commit failed is never retried, as it may
+ * have been applied.  The producer blocks when all buffers are waiting to be written.
+ *
+ * <p>The writers run on threads of their own, so that a load does not occupy the asynchronous
+ * executor of the pool.</p>
+ *
+ * <p>Instances are not thread-safe; rows must be added by a single producer thread.</p>
+ *
+ * @author Brett Wooldridge
+ */
+public final class BulkLoader implements AutoCloseable
+{
+   private static final Logger LOGGER = LoggerFactory.getLogger(BulkLoader.class);
+   private static final ClockSource clockSource = ClockSource.INSTANCE;
+
+   static final int MIN_BATCH_SIZE = 16;
+   static final int MAX_BATCH_SIZE = 5000;
+   static final long TARGET_BATCH_MS = 250L;
+
+   private static final Batch END = new Batch(0, 0);
+   private static final long POLL_MS = 100L;
+
+   private final HikariPool hikariPool;
+   private final String sql;
+   private final int columnCount;
+   private final int writerCount;
+   private final RetryPolicy retryPolicy;
+   private final BlockingQueue<Batch> filledBatches;
+   private final BlockingQueue<Batch> freeBatches;
+   private final CountDownLatch writersDone;
+   private final AtomicReference<SQLException> failure;
+   private final AtomicLong rowsLoaded;
+   private final AtomicLong batchesLoaded;
+   private final AtomicLong retries;
+   private final long startTime;
+
+   private volatile int batchSize;
+   private volatile long elapsedNanos;
+   private Batch currentBatch;
+   private boolean isFinished;
+
+   BulkLoader(final HikariPool hikariPool, final String sql, final int columnCount, final int writerCount)
+   {
+      if (columnCount < 1) {
+         throw new IllegalArgumentException("columnCount cannot be less than 1");
+      }
+
+      this.hikariPool = hikariPool;
+      this.sql = sql;
+      this.columnCount = columnCount;
+      this.writerCount = writerCount;
+      this.retryPolicy = RetryPolicy.DEFAULT;
+      this.batchSize = MIN_BATCH_SIZE * 8;
+      this.failure = new AtomicReference<>();
+      this.rowsLoaded = new AtomicLong();
+      this.batchesLoaded = new AtomicLong();
+      this.retries = new AtomicLong();
+      this.writersDone = new CountDownLatch(writerCount);
+
+      // Two buffers per writer: one being written, one being filled or waiting
+      final int bufferCount = writerCount * 2;
+      this.filledBatches = new ArrayBlockingQueue<>(bufferCount + writerCount);
+      this.freeBatches = new ArrayBlockingQueue<>(bufferCount);
+      for (int i = 1; i < bufferCount; i++) {
+         freeBatches.add(new Batch(MAX_BATCH_SIZE, columnCount));
+      }
+      this.currentBatch = new Batch(MAX_BATCH_SIZE, columnCount);
+      this.startTime = clockSource.currentTime();
+   }
+
+   /**
+    * Start the writers on threads of their own, called by the pool.
+    */
+   void start()
+   {
+      final ThreadPoolExecutor writerExecutor = createThreadPoolExecutor(writerCount, writerCount, "Hikari bulk loader (pool " + hikariPool.poolName + ")", hikariPool.config.getThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+      try {
+         for (int i = 0; i < writerCount; i++) {
+            writerExecutor.execute(new Writer());
+         }
+      }
+      finally {
+         writerExecutor.shutdown(); // the writers run until they take the end marker
+      }
+   }
+
+   /**
+    * Add a row to be loaded.  The values are copied, so the array may be reused by the caller.
+    *
+    * @param values the values of the row, bound in order via <code>setObject()</code>
+    * @throws SQLException the failure of a previous batch, after which the load is aborted
+    */
+   public void addRow(final Object... values) throws SQLException
+   {
+      if (isFinished) {
+         throw new IllegalStateException("bulk load has finished");
+      }
+      if (values.length != columnCount) {
+         throw new IllegalArgumentException("expected " + columnCount + " values, got " + values.length);
+      }
+      checkFailure();
+
+      final Batch batch = currentBatch;
+      System.arraycopy(values, 0, batch.rows[batch.size++], 0, columnCount);
+      if (batch.size >= batchSize || batch.size == batch.rows.length) {
+         handOff(batch);
+         currentBatch = takeFreeBatch();
+      }
+   }
+
+   /**
+    * Write the remaining rows, wait for all writers to commit, and release their connections.
+    *
+    * @throws SQLException the first failure of any batch
+    */
+   public void finish() throws SQLException
+   {
+      if (isFinished) {
+         checkFailure();
+         return;
+      }
+      isFinished = true;
+
+      try {
+         if (currentBatch.size > 0 && failure.get() == null) {
+            handOff(currentBatch);
+         }
+      }
+      finally {
+         for (int i = 0; i < writerCount; i++) {
+            filledBatches.offer(END);
+         }
+      }
+
+      try {
+         writersDone.await();
+      }
+      catch (InterruptedException e) {
+         throw new SQLException(hikariPool.poolName + " - Interrupted waiting for bulk load to finish", e);
+      }
+      finally {
+         elapsedNanos = clockSource.elapsedNanos(startTime);
+      }
+
+      checkFailure();
+   }
+
+   /**
+    * Finish the load, see {@link #finish()}.
+    */
+   @Override
+   public void close() throws SQLException
+   {
+      finish();
+   }
+
+   /**
+    * Get the number of rows committed so far.
+    *
+    * @return the number of rows loaded
+    */
+   public long getRowsLoaded()
+   {
+      return rowsLoaded.get();
+   }
+
+   /**
+    * Get the number of batches committed so far.
+    *
+    * @return the number of batches loaded
+    */
+   public long getBatchesLoaded()
+   {
+      return batchesLoaded.get();
+   }
+
+   /**
+    * Get the number of batch retries after transient failures.
+    *
+    * @return the number of retries
+    */
+   public long getRetries()
+   {
+      return retries.get();
+   }
+
+   /**
+    * Get the current adaptive batch size.
+    *
+    * @return the batch size
+    */
+   public int getBatchSize()
+   {
+      return batchSize;
+   }
+
+   /**
+    * Get the throughput of the load, from its start until now or until it finished.
+    *
+    * @return the number of rows loaded per second
+    */
+   public double getRowsPerSecond()
+   {
+      final long nanos = (isFinished && elapsedNanos > 0 ? elapsedNanos : clockSource.elapsedNanos(startTime));
+      return nanos > 0 ? rowsLoaded.get() * (double) TimeUnit.SECONDS.toNanos(1) / nanos : 0d;
+   }
+
+   private void handOff(final Batch batch) throws SQLException
+   {
+      try {
+         while (!filledBatches.offer(batch, POLL_MS, TimeUnit.MILLISECONDS)) {
+            checkFailure();
+         }
+      }
+      catch (InterruptedException e) {
+         throw new SQLException(hikariPool.poolName + " - Interrupted during bulk load", e);
+      }
+   }
+
+   private Batch takeFreeBatch() throws SQLException
+   {
+      try {
+         Batch batch;
+         while ((batch = freeBatches.poll(POLL_MS, TimeUnit.MILLISECONDS)) == null) {
+            checkFailure();
+         }
+         return batch;
+      }
+      catch (InterruptedException e) {
+         throw new SQLException(hikariPool.poolName + " - Interrupted during bulk load", e);
+      }
+   }
+
+   private void checkFailure() throws SQLException
+   {
+      final SQLException e = failure.get();
+      if (e != null) {
+         throw e;
+      }
+   }
+
+   /**
+    * Grow the batch size while batches complete faster than the target latency, and halve it
+    * when they are slower, within bounds.
+    */
+   private void adaptBatchSize(final int rows, final long elapsedMs)
+   {
+      final int size = batchSize;
+      if (elapsedMs > TARGET_BATCH_MS) {
+         batchSize = Math.max(MIN_BATCH_SIZE, size / 2);
+      }
+      else if (rows >= size && elapsedMs < TARGET_BATCH_MS / 2) {
+         batchSize = Math.min(MAX_BATCH_SIZE, size + Math.max(1, size / 4));
+      }
+   }
+
+   /**
+    * A reusable buffer of rows.
+    */
+   private static final class Batch
+   {
+      private final Object[][] rows;
+      private int size;
+
+      Batch(final int capacity, final int columnCount)
+      {
+         this.rows = new Object[capacity][columnCount];
+      }
+   }
+
+   /**
+    * Writes batches on one connection, committing each, until the end marker is taken.
+    */
+   private final class Writer implements Runnable
+   {
+      private Connection connection;
+      private PreparedStatement statement;
+
+      @Override
+      public void run()
+      {
+         try {
+            for (Batch batch = filledBatches.take(); batch != END; batch = filledBatches.take()) {
+               try {
+                  if (failure.get() == null) {
+                     writeBatch(batch);
+                  }
+               }
+               catch (SQLException e) {
+                  failure.compareAndSet(null, e);
+               }
+               finally {
+                  batch.size = 0;
+                  freeBatches.offer(batch);
+               }
+            }
+         }
+         catch (InterruptedException e) {
+            failure.compareAndSet(null, new SQLException(hikariPool.poolName + " - Interrupted during bulk load", e));
+         }
+         finally {
+            release();
+            writersDone.countDown();
+         }
+      }
+
+      private void writeBatch(final Batch batch) throws SQLException
+      {
+         final long start = clockSource.currentTime();
+         for (int attempt = 1; ; attempt++) {
+            boolean isCommitting = false;
+            try {
+               if (connection == null) {
+                  connection = hikariPool.getConnection();
+                  connection.setAutoCommit(false);
+                  statement = connection.prepareStatement(sql);
+               }
+
+               final long batchStart = clockSource.currentTime();
+               for (int i = 0; i < batch.size; i++) {
+                  final Object[] row = batch.rows[i];
+                  for (int column = 0; column < columnCount; column++) {
+                     statement.setObject(column + 1, row[column]);
+                  }
+                  statement.addBatch();
+               }
+               statement.executeBatch();
+               isCommitting = true;
+               connection.commit();
+
+               adaptBatchSize(batch.size, clockSource.elapsedMillis(batchStart));
+               rowsLoaded.addAndGet(batch.size);
+               batchesLoaded.incrementAndGet();
+               hikariPool.getMetricsTracker().recordBulkLoadBatch(batch.size, start);
+               return;
+            }
+            catch (SQLException e) {
+               release();
+               if (isCommitting || !hikariPool.isRetryable(retryPolicy, e) || attempt >= retryPolicy.getMaxAttempts()) {
+                  throw e;
+               }
+
+               retries.incrementAndGet();
+               hikariPool.getMetricsTracker().recordBulkLoadRetry();
+               LOGGER.debug("{} - Retrying bulk load batch after attempt {} failed with SQLSTATE({})", hikariPool.poolName, attempt, e.getSQLState());
+               try {
+                  Thread.sleep(retryPolicy.getBackoff(attempt));
+               }
+               catch (InterruptedException ie) {
+                  throw new SQLException(hikariPool.poolName + " - Interrupted during bulk load retry backoff", ie);
+               }
+            }
+         }
+      }
+
+      /**
+       * Roll back any uncommitted work and return the connection to the pool.
+       */
+      private void release()
+      {
+         if (connection != null) {
+            try {
+               connection.rollback();
+            }
+            catch (SQLException e) {
+               // connection is closed below
+            }
+            try {
+               connection.close();
+            }
+            catch (SQLException e) {
+               LOGGER.debug("{} - Exception closing bulk load connection", hikariPool.poolName, e);
+            }
+            connection = null;
+            statement = null;
+         }
+      }
+   }
+}
@@ -0,0 +1,409 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari.pool;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+
+/**
+ * A reusable chunk of rows held column by column in primitive arrays, filled by
+ * {@link ProxyResultSet#fetchColumns(ColumnBatch)}.  Integer, long and double columns are read
+ * with the primitive getters, string columns are dictionary encoded per chunk, and nulls are
+ * tracked in a bitmap per column, so filling a chunk allocates nothing per row beyond what the
+ * driver itself allocates.  Any other column type is held as objects.
+ *
+ * <p>The arrays returned by the getters are the buffers themselves; their contents are only
+ * valid until the next fill.  Columns are numbered from 1, rows from 0.</p>
+ *
+ * @author Brett Wooldridge
+ */
+public final class ColumnBatch
+{
+   /**
+    * The buffer representation of a column.
+    */
+   public enum ColumnType
+   {
+      INT, LONG, DOUBLE, STRING, OBJECT
+   }
+
+   private final int capacity;
+   private final ColumnType[] types;
+   private final int[][] ints;
+   private final long[][] longs;
+   private final double[][] doubles;
+   private final Object[][] objects;
+   private final long[][] nulls;
+   private final String[][] dictionaries;
+   private final int[][] dictionarySlots;
+   private final int[] dictionarySizes;
+
+   private int size;
+
+   /**
+    * Create a batch with column types inferred from the metadata of a result set.
+    *
+    * @param metaData the metadata of the result set to read
+    * @param capacity the maximum number of rows per chunk
+    * @throws SQLException thrown if the metadata cannot be read
+    */
+   public ColumnBatch(final ResultSetMetaData metaData, final int capacity) throws SQLException
+   {
+      this(inferTypes(metaData), capacity);
+   }
+
+   /**
+    * Create a batch with explicit column types.
+    *
+    * @param types the buffer representation of each column
+    * @param capacity the maximum number of rows per chunk
+    */
+   public ColumnBatch(final ColumnType[] types, final int capacity)
+   {
+      if (capacity < 1) {
+         throw new IllegalArgumentException("capacity cannot be less than 1");
+      }
+
+      final int columnCount = types.length;
+      this.capacity = capacity;
+      this.types = types.clone();
+      this.ints = new int[columnCount][];
+      this.longs = new long[columnCount][];
+      this.doubles = new double[columnCount][];
+      this.objects = new Object[columnCount][];
+      this.nulls = new long[columnCount][(capacity + 63) >>> 6];
+      this.dictionaries = new String[columnCount][];
+      this.dictionarySlots = new int[columnCount][];
+      this.dictionarySizes = new int[columnCount];
+
+      for (int i = 0; i < columnCount; i++) {
+         switch (types[i]) {
+         case INT:
+            ints[i] = new int[capacity];
+            break;
+         case LONG:
+            longs[i] = new long[capacity];
+            break;
+         case DOUBLE:
+            doubles[i] = new double[capacity];
+            break;
+         case STRING:
+            // codes, the strings of the chunk, and an open addressing index of at most half load
+            ints[i] = new int[capacity];
+            dictionaries[i] = new String[capacity];
+            dictionarySlots[i] = new int[Integer.highestOneBit(capacity) << 2];
+            break;
+         default:
+            objects[i] = new Object[capacity];
+         }
+      }
+   }
+
+   /**
+    * Get the number of rows in the current chunk.
+    *
+    * @return the number of rows
+    */
+   public int getSize()
+   {
+      return size;
+   }
+
+   /**
+    * Get the maximum number of rows per chunk.
+    *
+    * @return the capacity
+    */
+   public int getCapacity()
+   {
+      return capacity;
+   }
+
+   /**
+    * Get the number of columns.
+    *
+    * @return the number of columns
+    */
+   public int getColumnCount()
+   {
+      return types.length;
+   }
+
+   /**
+    * Get the buffer representation of a column.
+    *
+    * @param column the column, from 1
+    * @return the column type
+    */
+   public ColumnType getColumnType(final int column)
+   {
+      return types[column - 1];
+   }
+
+   /**
+    * Get the values of an INT column.
+    *
+    * @param column the column, from 1
+    * @return the value buffer
+    */
+   public int[] getInts(final int column)
+   {
+      return buffer(ints, column, ColumnType.INT);
+   }
+
+   /**
+    * Get the values of a LONG column.
+    *
+    * @param column the column, from 1
+    * @return the value buffer
+    */
+   public long[] getLongs(final int column)
+   {
+      return buffer(longs, column, ColumnType.LONG);
+   }
+
+   /**
+    * Get the values of a DOUBLE column.
+    *
+    * @param column the column, from 1
+    * @return the value buffer
+    */
+   public double[] getDoubles(final int column)
+   {
+      return buffer(doubles, column, ColumnType.DOUBLE);
+   }
+
+   /**
+    * Get the values of an OBJECT column.
+    *
+    * @param column the column, from 1
+    * @return the value buffer
+    */
+   public Object[] getObjects(final int column)
+   {
+      return buffer(objects, column, ColumnType.OBJECT);
+   }
+
+   /**
+    * Get the dictionary codes of a STRING column, indexes into {@link #getDictionary(int)}, or -1 for null.
+    *
+    * @param column the column, from 1
+    * @return the code buffer
+    */
+   public int[] getStringCodes(final int column)
+   {
+      return buffer(ints, column, ColumnType.STRING);
+   }
+
+   /**
+    * Get the distinct strings of a STRING column in the current chunk; the first
+    * {@link #getDictionarySize(int)} entries are valid.
+    *
+    * @param column the column, from 1
+    * @return the dictionary buffer
+    */
+   public String[] getDictionary(final int column)
+   {
+      return buffer(dictionaries, column, ColumnType.STRING);
+   }
+
+   /**
+    * Get the number of distinct strings of a STRING column in the current chunk.
+    *
+    * @param column the column, from 1
+    * @return the dictionary size
+    */
+   public int getDictionarySize(final int column)
+   {
+      buffer(dictionaries, column, ColumnType.STRING);
+      return dictionarySizes[column - 1];
+   }
+
+   /**
+    * Get the string of a row of a STRING column.
+    *
+    * @param column the column, from 1
+    * @param row the row, from 0
+    * @return the string, or null
+    */
+   public String getString(final int column, final int row)
+   {
+      final int code = getStringCodes(column)[row];
+      return code < 0 ? null : dictionaries[column - 1][code];
+   }
+
+   /**
+    * Get the null bitmap of a column; bit <code>row &amp; 63</code> of word <code>row &gt;&gt;&gt; 6</code>
+    * is set if the value of the row is null.
+    *
+    * @param column the column, from 1
+    * @return the bitmap buffer
+    */
+   public long[] getNullBitmap(final int column)
+   {
+      return nulls[column - 1];
+   }
+
+   /**
+    * Determine whether the value of a row is null.
+    *
+    * @param column the column, from 1
+    * @param row the row, from 0
+    * @return true if the value is null
+    */
+   public boolean isNull(final int column, final int row)
+   {
+      return (nulls[column - 1][row >>> 6] & (1L << row)) != 0;
+   }
+
+   /**
+    * Replace the contents of the batch with up to {@link #getCapacity()} rows read from the
+    * current position of the result set.
+    *
+    * @return the number of rows read
+    */
+   int fill(final ResultSet resultSet) throws SQLException
+   {
+      final int columnCount = types.length;
+      for (int i = 0; i < columnCount; i++) {
+         Arrays.fill(nulls[i], 0L);
+         if (types[i] == ColumnType.STRING && dictionarySizes[i] > 0) {
+            Arrays.fill(dictionaries[i], 0, dictionarySizes[i], null);
+            Arrays.fill(dictionarySlots[i], 0);
+            dictionarySizes[i] = 0;
+         }
+      }
+
+      int row = 0;
+      while (row < capacity && resultSet.next()) {
+         for (int i = 0; i < columnCount; i++) {
+            final int column = i + 1;
+            final boolean isNull;
+            switch (types[i]) {
+            case INT:
+               ints[i][row] = resultSet.getInt(column);
+               isNull = resultSet.wasNull();
+               break;
+            case LONG:
+               longs[i][row] = resultSet.getLong(column);
+               isNull = resultSet.wasNull();
+               break;
+            case DOUBLE:
+               doubles[i][row] = resultSet.getDouble(column);
+               isNull = resultSet.wasNull();
+               break;
+            case STRING:
+               final String value = resultSet.getString(column);
+               isNull = value == null;
+               ints[i][row] = isNull ? -1 : encode(i, value);
+               break;
+            default:
+               objects[i][row] = resultSet.getObject(column);
+               isNull = resultSet.wasNull();
+            }
+
+            if (isNull) {
+               nulls[i][row >>> 6] |= 1L << row;
+            }
+         }
+         row++;
+      }
+
+      for (int i = 0; i < columnCount; i++) {
+         if (objects[i] != null) {
+            Arrays.fill(objects[i], row, size > row ? size : row, null);
+         }
+      }
+
+      size = row;
+      return row;
+   }
+
+   /**
+    * Get the dictionary code of a string, adding it to the dictionary of the chunk if needed.
+    */
+   private int encode(final int index, final String value)
+   {
+      final String[] dictionary = dictionaries[index];
+      final int[] slots = dictionarySlots[index];
+      final int mask = slots.length - 1;
+
+      int slot = value.hashCode() & mask;
+      for (int entry = slots[slot]; entry != 0; entry = slots[slot]) {
+         if (dictionary[entry - 1].equals(value)) {
+            return entry - 1;
+         }
+         slot = (slot + 1) & mask;
+      }
+
+      final int code = dictionarySizes[index]++;
+      dictionary[code] = value;
+      slots[slot] = code + 1;
+      return code;
+   }
+
+   private <A> A buffer(final A[] buffers, final int column, final ColumnType type)
+   {
+      if (types[column - 1] != type) {
+         throw new IllegalArgumentException("column " + column + " is " + types[column - 1] + ", not " + type);
+      }
+      return buffers[column - 1];
+   }
+
+   private static ColumnType[] inferTypes(final ResultSetMetaData metaData) throws SQLException
+   {
+      final ColumnType[] types = new ColumnType[metaData.getColumnCount()];
+      for (int i = 0; i < types.length; i++) {
+         final int column = i + 1;
+         switch (metaData.getColumnType(column)) {
+         case Types.TINYINT:
+         case Types.SMALLINT:
+         case Types.INTEGER:
+            types[i] = ColumnType.INT;
+            break;
+         case Types.BIGINT:
+            types[i] = ColumnType.LONG;
+            break;
+         case Types.REAL:
+         case Types.FLOAT:
+         case Types.DOUBLE:
+            types[i] = ColumnType.DOUBLE;
+            break;
+         case Types.DECIMAL:
+         case Types.NUMERIC:
+            // exact decimals are only read as primitives when they cannot lose precision
+            final int precision = metaData.getPrecision(column);
+            types[i] = (metaData.getScale(column) == 0 && precision > 0 && precision <= 18 ? ColumnType.LONG : ColumnType.OBJECT);
+            break;
+         case Types.CHAR:
+         case Types.VARCHAR:
+         case Types.LONGVARCHAR:
+         case Types.NCHAR:
+         case Types.NVARCHAR:
+         case Types.LONGNVARCHAR:
+            types[i] = ColumnType.STRING;
+            break;
+         default:
+            types[i] = ColumnType.OBJECT;
+         }
+      }
+      return types;
+   }
+}
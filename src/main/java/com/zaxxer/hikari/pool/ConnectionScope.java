@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari.pool;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * A unit of work that shares one pool connection among all <code>getConnection()</code> calls
+ * made on the thread that opened it.  The connection is borrowed by the first such call, and each
+ * call returns a view of it whose <code>close()</code> only releases that view.  Scopes opened
+ * while another is open on the same thread join it.  Closing the outermost scope ends the unit of
+ * work on the thread; the connection is closed, and so reset and returned to the pool, once every
+ * view has been closed as well.
+ *
+ * <p>A scope, and the views obtained within it, must only be used by the thread that opened it.</p>
+ *
+ * @author Brett Wooldridge
+ */
+public final class ConnectionScope implements AutoCloseable
+{
+   private final HikariPool hikariPool;
+   private final ConnectionScope outermost;
+
+   private boolean isClosed;
+   private Connection connection;
+   private int openViews;
+
+   ConnectionScope(final HikariPool hikariPool)
+   {
+      this(hikariPool, null);
+   }
+
+   private ConnectionScope(final HikariPool hikariPool, final ConnectionScope outermost)
+   {
+      this.hikariPool = hikariPool;
+      this.outermost = (outermost != null ? outermost : this);
+   }
+
+   /**
+    * Close this scope, see {@link HikariPool#openScope()}.  Closing the outermost scope unbinds it
+    * from the thread, and returns the connection to the pool once all views are closed.  Closing
+    * a scope that is already closed has no effect.
+    *
+    * @throws SQLException thrown if the connection cannot be closed
+    */
+   @Override
+   public void close() throws SQLException
+   {
+      if (isClosed) {
+         return;
+      }
+
+      isClosed = true;
+      if (outermost == this) {
+         hikariPool.unbindScope(this);
+         if (openViews == 0) {
+            releaseConnection();
+         }
+      }
+   }
+
+   /**
+    * Determine whether a connection has been borrowed by this scope.
+    *
+    * @return true if a connection is bound to the scope
+    */
+   public boolean isBound()
+   {
+      return outermost.connection != null;
+   }
+
+   /**
+    * Join the outermost scope from a scope opened again on the same thread.
+    */
+   ConnectionScope join()
+   {
+      return new ConnectionScope(hikariPool, outermost);
+   }
+
+   /**
+    * Get a view of the connection of the scope, borrowing it on first use.
+    */
+   Connection getConnection() throws SQLException
+   {
+      if (connection == null) {
+         connection = hikariPool.getConnection(hikariPool.connectionTimeout);
+      }
+
+      openViews++;
+      return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class[] { Connection.class }, new View(connection));
+   }
+
+   /**
+    * Unwrap a view of a scope connection to the pool connection it shares.
+    *
+    * @return the pool connection, or null if the specified connection is not a view
+    */
+   static Connection unwrapView(final Connection connection)
+   {
+      if (Proxy.isProxyClass(connection.getClass())) {
+         final InvocationHandler handler = Proxy.getInvocationHandler(connection);
+         if (handler instanceof View) {
+            return ((View) handler).connection;
+         }
+      }
+      return null;
+   }
+
+   private void releaseView() throws SQLException
+   {
+      if (--openViews == 0 && isClosed) {
+         releaseConnection();
+      }
+   }
+
+   private void releaseConnection() throws SQLException
+   {
+      if (connection != null) {
+         final Connection bound = connection;
+         connection = null;
+         bound.close();
+      }
+   }
+
+   /**
+    * A view of the connection of the scope, which releases its reference when closed.
+    */
+   private final class View implements InvocationHandler
+   {
+      private final Connection connection;
+      private boolean isClosed;
+
+      View(final Connection connection)
+      {
+         this.connection = connection;
+      }
+
+      /** {@inheritDoc} */
+      @Override
+      public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable
+      {
+         switch (method.getName()) {
+         case "toString":
+            return "ConnectionScope view@" + System.identityHashCode(proxy) + " wrapping " + connection;
+         case "hashCode":
+            return System.identityHashCode(proxy);
+         case "equals":
+            return proxy == args[0];
+         case "isClosed":
+            return isClosed || connection.isClosed();
+         case "close":
+            if (!isClosed) {
+               isClosed = true;
+               releaseView();
+            }
+            return null;
+         default:
+            if (isClosed) {
+               throw new SQLException("Connection is closed");
+            }
+         }
+
+         try {
+            return method.invoke(connection, args);
+         }
+         catch (InvocationTargetException e) {
+            throw e.getCause();
+         }
+      }
+   }
+}
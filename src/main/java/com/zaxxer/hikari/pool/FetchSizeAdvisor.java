@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari.pool;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Learns the number of rows actually consumed from the results of each normalized SQL
+ * statement, and advises a fetch size that retrieves a typical result in one round trip,
+ * bounded by the configured minimum and maximum.  The statistics of the
+ * {@link #MAX_FINGERPRINTS} most recently used statements are kept, and the SQL strings most
+ * recently seen are mapped to them directly, so repeated SQL is not normalized again.
+ *
+ * @author Brett Wooldridge
+ */
+final class FetchSizeAdvisor
+{
+   static final int MAX_FINGERPRINTS = 1024;
+   private static final double ALPHA = 0.2;
+
+   private final int minFetchSize;
+   private final int maxFetchSize;
+   private final LinkedHashMap<String, Stats> sqlStats;
+   private final LinkedHashMap<String, Stats> fingerprintStats;
+
+   FetchSizeAdvisor(final int minFetchSize, final int maxFetchSize)
+   {
+      this.minFetchSize = minFetchSize;
+      this.maxFetchSize = maxFetchSize;
+      this.sqlStats = newLruMap();
+      this.fingerprintStats = newLruMap();
+   }
+
+   /**
+    * Get the statistics of the specified SQL, creating them if needed.
+    *
+    * @return the statistics
+    */
+   Stats getStats(final String sql)
+   {
+      synchronized (this) {
+         final Stats stats = sqlStats.get(sql);
+         if (stats != null) {
+            return stats;
+         }
+      }
+
+      final String fingerprint = fingerprint(sql);
+      synchronized (this) {
+         Stats stats = fingerprintStats.get(fingerprint);
+         if (stats == null) {
+            stats = new Stats();
+            fingerprintStats.put(fingerprint, stats);
+         }
+         sqlStats.put(sql, stats);
+         return stats;
+      }
+   }
+
+   /**
+    * Get the number of normalized statements whose statistics are kept.
+    */
+   synchronized int size()
+   {
+      return fingerprintStats.size();
+   }
+
+   /**
+    * Get the advised fetch size for the statement with the specified statistics.
+    *
+    * @return the advised fetch size, or 0 if nothing has been learned yet
+    */
+   int getFetchSize(final Stats stats)
+   {
+      if (stats.samples == 0) {
+         return 0;
+      }
+
+      // Cover most results in one round trip; the mean plus two deviations is roughly the 95th percentile
+      final long rows = (long) Math.ceil(stats.mean + 2 * stats.deviation) + 1;
+      return (int) Math.max(minFetchSize, Math.min(maxFetchSize, rows));
+   }
+
+   /**
+    * Normalize SQL so that statements differing only in literal values or whitespace share statistics.
+    */
+   static String fingerprint(final String sql)
+   {
+      final int length = sql.length();
+      final StringBuilder sb = new StringBuilder(length);
+
+      boolean isSpace = false;
+      for (int i = 0; i < length; i++) {
+         char c = sql.charAt(i);
+         if (c == '\'') {
+            // skip string literal, including doubled quotes
+            i++;
+            while (i < length) {
+               if (sql.charAt(i) == '\'') {
+                  if (i + 1 < length && sql.charAt(i + 1) == '\'') {
+                     i += 2;
+                     continue;
+                  }
+                  break;
+               }
+               i++;
+            }
+            c = '?';
+         }
+         else if (Character.isDigit(c) && !isIdentifierPart(sb)) {
+            while (i + 1 < length && (Character.isDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '.')) {
+               i++;
+            }
+            c = '?';
+         }
+         else if (Character.isWhitespace(c)) {
+            isSpace = sb.length() > 0;
+            continue;
+         }
+
+         if (isSpace) {
+            sb.append(' ');
+            isSpace = false;
+         }
+         sb.append(Character.toLowerCase(c));
+      }
+
+      return sb.toString();
+   }
+
+   private static LinkedHashMap<String, Stats> newLruMap()
+   {
+      return new LinkedHashMap<String, Stats>(16, 0.75f, true) {
+         @Override
+         protected boolean removeEldestEntry(final Map.Entry<String, Stats> eldest)
+         {
+            return size() > MAX_FINGERPRINTS;
+         }
+      };
+   }
+
+   private static boolean isIdentifierPart(final StringBuilder sb)
+   {
+      if (sb.length() == 0) {
+         return false;
+      }
+
+      final char last = sb.charAt(sb.length() - 1);
+      return Character.isLetterOrDigit(last) || last == '_';
+   }
+
+   /**
+    * Row count distribution of one normalized SQL statement, as exponentially weighted moving
+    * mean and mean absolute deviation.
+    */
+   static final class Stats
+   {
+      private volatile double mean;
+      private volatile double deviation;
+      private volatile int samples;
+
+      synchronized void recordRows(final long rows)
+      {
+         if (samples == 0) {
+            mean = rows;
+         }
+         else {
+            deviation += (Math.abs(rows - mean) - deviation) * ALPHA;
+            mean += (rows - mean) * ALPHA;
+         }
+         if (samples < Integer.MAX_VALUE) {
+            samples++;
+         }
+      }
+   }
+}
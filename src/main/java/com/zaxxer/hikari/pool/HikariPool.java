@@ -23,20 +23,32 @@ import static com.zaxxer.hikari.util.UtilityElf.createThreadPoolExecutor;
 import static com.zaxxer.hikari.util.UtilityElf.quietlySleep;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,6 +57,9 @@ import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.health.HealthCheckRegistry;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.RetryPolicy;
+import com.zaxxer.hikari.RowMapper;
+import com.zaxxer.hikari.TransactionCallback;
 import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
 import com.zaxxer.hikari.metrics.PoolStats;
 import com.zaxxer.hikari.metrics.dropwizard.CodahaleHealthChecker;
@@ -69,6 +84,7 @@ public class HikariPool extends PoolBase implements HikariPoolMXBean, IBagStateL
 
    private static final long ALIVE_BYPASS_WINDOW_MS = Long.getLong("com.zaxxer.hikari.aliveBypassWindow", TimeUnit.SECONDS.toMillis(1));
    private static final long HOUSEKEEPING_PERIOD_MS = Long.getLong("com.zaxxer.hikari.housekeeping.periodMs", TimeUnit.SECONDS.toMillis(30));
+   private static final int HEALTH_SWEEP_PARALLELISM = 4;
 
    private static final int POOL_NORMAL = 0;
    private static final int POOL_SUSPENDED = 1;
@@ -79,12 +95,23 @@ public class HikariPool extends PoolBase implements HikariPoolMXBean, IBagStateL
    private final AtomicInteger totalConnections;
    private final ThreadPoolExecutor addConnectionExecutor;
    private final ThreadPoolExecutor closeConnectionExecutor;
+   private final ThreadPoolExecutor refreshConnectionExecutor;
+   private final ThreadPoolExecutor asyncExecutor;
+   private final ThreadPoolExecutor healthSweepExecutor;
+   private final AtomicLong lastHealthSweep;
+   private final AtomicBoolean isHealthSweeping;
    private final ScheduledThreadPoolExecutor houseKeepingExecutorService;
+   private final ScheduledFuture<?> overflowReaperTask;
 
    private final ConcurrentBag<PoolEntry> connectionBag;
 
    private final ProxyLeakTask leakTask;
    private final SuspendResumeLock suspendResumeLock;
+   private final BorrowLanes borrowLanes;
+   private final ReentrantLock bulkAcquireLock;
+   private final ThreadLocal<ConnectionScope> connectionScopes;
+   private volatile boolean isScopeOpened;
+   private final ConcurrentHashMap<String, PoolEntry> affinityIndex;
 
    private MetricsTrackerDelegate metricsTracker;
    private boolean isRecordMetrics;
@@ -101,9 +128,22 @@ public class HikariPool extends PoolBase implements HikariPoolMXBean, IBagStateL
       this.connectionBag = new ConcurrentBag<>(this);
       this.totalConnections = new AtomicInteger();
       this.suspendResumeLock = config.isAllowPoolSuspension() ? new SuspendResumeLock() : SuspendResumeLock.FAUX_LOCK;
+      this.bulkAcquireLock = new ReentrantLock(true);
+      this.connectionScopes = new ThreadLocal<>();
+      this.affinityIndex = new ConcurrentHashMap<>();
+      this.borrowLanes = config.getBorrowLanes().isEmpty() ? null : new BorrowLanes(config.getBorrowLanes(), config.getMaximumPoolSize());
 
       this.addConnectionExecutor = createThreadPoolExecutor(config.getMaximumPoolSize(), "Hikari connection filler (pool " + poolName + ")", config.getThreadFactory(), new ThreadPoolExecutor.DiscardPolicy());
       this.closeConnectionExecutor = createThreadPoolExecutor(4, "Hikari connection closer (pool " + poolName + ")", config.getThreadFactory(), new ThreadPoolExecutor.CallerRunsPolicy());
+      this.asyncExecutor = createThreadPoolExecutor(config.getAsyncQueueSize(), config.getMaximumPoolSize(), "Hikari async executor (pool " + poolName + ")", config.getThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+      this.refreshConnectionExecutor = config.isRollingRefresh()
+                                       ? createThreadPoolExecutor(config.getMaximumPoolSize() + config.getOverflowPoolSize(), config.getMaxConcurrentRefreshes(), "Hikari connection refresher (pool " + poolName + ")", config.getThreadFactory(), new ThreadPoolExecutor.AbortPolicy())
+                                       : null;
+      this.healthSweepExecutor = config.getHealthSweepWindow() > 0
+                                 ? createThreadPoolExecutor(HEALTH_SWEEP_PARALLELISM, HEALTH_SWEEP_PARALLELISM, "Hikari health sweeper (pool " + poolName + ")", config.getThreadFactory(), new ThreadPoolExecutor.DiscardPolicy())
+                                 : null;
+      this.lastHealthSweep = new AtomicLong();
+      this.isHealthSweeping = new AtomicBoolean();
 
       if (config.getScheduledExecutorService() == null) {
          ThreadFactory threadFactory = config.getThreadFactory() != null ? config.getThreadFactory() : new DefaultThreadFactory("Hikari housekeeper (pool " + poolName + ")", true);
@@ -117,6 +157,14 @@ public class HikariPool extends PoolBase implements HikariPoolMXBean, IBagStateL
 
       this.houseKeepingExecutorService.scheduleAtFixedRate(new HouseKeeper(), HOUSEKEEPING_PERIOD_MS, HOUSEKEEPING_PERIOD_MS, TimeUnit.MILLISECONDS);
 
+      if (config.getOverflowPoolSize() > 0) {
+         final long reaperPeriod = Math.min(HOUSEKEEPING_PERIOD_MS, Math.max(100L, config.getOverflowIdleTimeout() / 2));
+         this.overflowReaperTask = houseKeepingExecutorService.scheduleAtFixedRate(new OverflowReaper(), reaperPeriod, reaperPeriod, TimeUnit.MILLISECONDS);
+      }
+      else {
+         this.overflowReaperTask = null;
+      }
+
       this.leakTask = new ProxyLeakTask(config.getLeakDetectionThreshold(), houseKeepingExecutorService);
 
       if (config.getMetricsTrackerFactory() != null) {
@@ -141,9 +189,59 @@ public class HikariPool extends PoolBase implements HikariPoolMXBean, IBagStateL
     */
    public final Connection getConnection() throws SQLException
    {
+      // pools that never open a scope skip the thread-local lookup
+      if (isScopeOpened) {
+         final ConnectionScope scope = connectionScopes.get();
+         if (scope != null) {
+            return scope.getConnection();
+         }
+      }
+
       return getConnection(connectionTimeout);
    }
 
+   /**
+    * Open a scope in which every {@link #getConnection()} call on this thread shares one pool
+    * connection.  If a scope is already open on this thread, it is joined instead.  The scope is
+    * unbound from the thread when the outermost scope is closed, and the shared connection is
+    * returned to the pool once every connection obtained within it has been closed as well.
+    *
+    * @return the scope, which must be closed
+    */
+   public final ConnectionScope openScope()
+   {
+      ConnectionScope scope = connectionScopes.get();
+      if (scope != null) {
+         return scope.join();
+      }
+
+      scope = new ConnectionScope(this);
+      connectionScopes.set(scope);
+      isScopeOpened = true;
+      return scope;
+   }
+
+   /**
+    * Unbind the outermost scope from the current thread when it is closed.
+    */
+   final void unbindScope(final ConnectionScope scope)
+   {
+      if (connectionScopes.get() == scope) {
+         connectionScopes.remove();
+      }
+   }
+
+   /**
+    * Get a connection that borrows a connection from the pool only when it is first used, see
+    * {@link com.zaxxer.hikari.HikariConfig#setLazyConnection(boolean)}.
+    *
+    * @return a java.sql.Connection instance
+    */
+   public final Connection getLazyConnection()
+   {
+      return LazyConnection.newProxy(this);
+   }
+
    /**
     * Get a connection from the pool, or timeout after the specified number of milliseconds.
     *
@@ -153,24 +251,93 @@ public class HikariPool extends PoolBase implements HikariPoolMXBean, IBagStateL
     */
    public final Connection getConnection(final long hardTimeout) throws SQLException
    {
+      return getConnection(borrowLanes != null ? borrowLanes.getDefaultLane() : null, null, hardTimeout);
+   }
+
+   /**
+    * Get a connection for a request that must complete within the specified number of milliseconds.
+    * The wait for a connection is bounded by the remaining time, and the query timeout of every
+    * statement executed on the connection is clamped to the time remaining at execution.
+    *
+    * @param deadlineMs the time remaining on the request in milliseconds
+    * @return a java.sql.Connection instance
+    * @throws SQLException thrown if a timeout occurs trying to obtain a connection
+    */
+   public final Connection getConnectionWithDeadline(final long deadlineMs) throws SQLException
+   {
+      final long deadline = clockSource.plusMillis(clockSource.currentTime(), deadlineMs);
+      final Connection connection = getConnection(Math.max(0L, Math.min(connectionTimeout, deadlineMs)));
+      ((ProxyConnection) connection).setDeadline(deadline);
+      return connection;
+   }
+
+   /**
+    * Get a connection from the pool in the specified borrow lane, or timeout after the
+    * lane's connectionTimeout (or the pool connectionTimeout if the lane does not define one).
+    *
+    * @param laneName the name of a borrow lane defined in the configuration
+    * @return a java.sql.Connection instance
+    * @throws SQLException thrown if a timeout occurs trying to obtain a connection
+    * @throws IllegalArgumentException if the lane is not defined
+    */
+   public final Connection getConnection(final String laneName) throws SQLException
+   {
+      if (borrowLanes == null) {
+         throw new IllegalArgumentException("Unknown borrow lane '" + laneName + "'");
+      }
+
+      final BorrowLanes.Lane lane = borrowLanes.getLane(laneName);
+      return getConnection(lane, null, lane.connectionTimeout > 0 ? lane.connectionTimeout : connectionTimeout);
+   }
+
+   /**
+    * Get a connection from the pool, preferring an idle connection last borrowed with the same
+    * affinity key, for example a tenant or shard whose catalog is set on the connection, or
+    * timeout after connectionTimeout milliseconds.  The catalog set by a borrower with an affinity
+    * key is not reset when the connection is returned; the reset is deferred until the connection
+    * is borrowed without that key.
+    *
+    * @param affinityKey the affinity key of the borrower
+    * @return a java.sql.Connection instance
+    * @throws SQLException thrown if a timeout occurs trying to obtain a connection
+    */
+   public final Connection getConnectionWithAffinity(final String affinityKey) throws SQLException
+   {
+      if (affinityKey == null) {
+         throw new IllegalArgumentException("affinityKey cannot be null");
+      }
+
+      return getConnection(borrowLanes != null ? borrowLanes.getDefaultLane() : null, affinityKey, connectionTimeout);
+   }
+
+   private Connection getConnection(final BorrowLanes.Lane lane, final String affinityKey, final long hardTimeout) throws SQLException
+   {
+      if (poolState == POOL_SHUTDOWN) {
+         // asynchronous tasks still queued at shutdown fail here rather than wait out their timeout
+         throw new SQLTransientConnectionException(poolName + " - Connection is not available, the pool has been shut down");
+      }
+
       suspendResumeLock.acquire();
       final long startTime = clockSource.currentTime();
 
       try {
          long timeout = hardTimeout;
          do {
-            final PoolEntry poolEntry = connectionBag.borrow(timeout, TimeUnit.MILLISECONDS);
+            final PoolEntry poolEntry = (affinityKey == null ? borrowAdmittedPoolEntry(lane, timeout, startTime) : borrowAffinityPoolEntry(lane, affinityKey, timeout, startTime));
             if (poolEntry == null) {
                break; // We timed out... break and throw exception
             }
 
             final long now = clockSource.currentTime();
-            if (poolEntry.isMarkedEvicted() || (clockSource.elapsedMillis(poolEntry.lastAccessed, now) > ALIVE_BYPASS_WINDOW_MS && !isConnectionAlive(poolEntry.connection))) {
+            if (poolEntry.isMarkedEvicted() || (clockSource.elapsedMillis(poolEntry.lastAccessed, now) > ALIVE_BYPASS_WINDOW_MS && !isConnectionAlive(poolEntry.connection)) || !bindAffinity(poolEntry, affinityKey)) {
                closeConnection(poolEntry, "(connection evicted or dead)"); // Throw away the dead connection and try again
                timeout = hardTimeout - clockSource.elapsedMillis(startTime);
             }
             else {
                metricsTracker.recordBorrowStats(poolEntry, startTime);
+               if (lane != null) {
+                  metricsTracker.recordLaneBorrowStats(lane.name, startTime);
+               }
                return poolEntry.createProxyConnection(leakTask.start(poolEntry), now);
             }
          } while (timeout > 0L);
@@ -183,6 +350,9 @@ public class HikariPool extends PoolBase implements HikariPoolMXBean, IBagStateL
       }
 
       logPoolState("Timeout failure\t");
+      if (lane != null) {
+         metricsTracker.recordLaneTimeout(lane.name);
+      }
 
       String sqlState = null;
       final Throwable originalException = getLastConnectionFailure();
@@ -196,6 +366,295 @@ public class HikariPool extends PoolBase implements HikariPoolMXBean, IBagStateL
       throw connectionException;
    }
 
+   /**
+    * Get the specified number of connections from the pool, all-or-nothing, or timeout after the
+    * specified number of milliseconds.  If the timeout elapses before all connections could be
+    * acquired, any connections gathered so far are returned to the pool before the exception
+    * is thrown.
+    * <p>
+    * Bulk requests are served one at a time in arrival order, and a request keeps every
+    * connection it gathers while waiting for the rest.  Two bulk requests can therefore never
+    * deadlock by each holding a partial set, and a large request cannot be starved by a
+    * stream of single-connection borrowers that keep taking released connections.
+    *
+    * @param count the number of connections to acquire, at most maximumPoolSize
+    * @param hardTimeout the maximum time to wait for all of the connections
+    * @return a list of <code>count</code> java.sql.Connection instances
+    * @throws SQLException thrown if a timeout occurs trying to obtain the connections
+    */
+   public final List<Connection> getConnections(final int count, final long hardTimeout) throws SQLException
+   {
+      if (count < 1 || count > config.getMaximumPoolSize()) {
+         throw new IllegalArgumentException("count must be between 1 and maximumPoolSize (" + config.getMaximumPoolSize() + ")");
+      }
+
+      suspendResumeLock.acquire();
+      final long startTime = clockSource.currentTime();
+      final List<PoolEntry> poolEntries = new ArrayList<>(count);
+      boolean isLocked = false;
+      boolean isAcquired = false;
+
+      try {
+         isLocked = bulkAcquireLock.tryLock(hardTimeout, TimeUnit.MILLISECONDS);
+         if (isLocked) {
+            final BorrowLanes.Lane lane = (borrowLanes != null ? borrowLanes.getDefaultLane() : null);
+            long timeout = hardTimeout - clockSource.elapsedMillis(startTime);
+            while (poolEntries.size() < count && timeout > 0L) {
+               final PoolEntry poolEntry = borrowAdmittedPoolEntry(lane, timeout, startTime);
+               if (poolEntry == null) {
+                  break; // We timed out... break and throw exception
+               }
+
+               if (poolEntry.isMarkedEvicted() || (clockSource.elapsedMillis(poolEntry.lastAccessed) > ALIVE_BYPASS_WINDOW_MS && !isConnectionAlive(poolEntry.connection)) || !bindAffinity(poolEntry, null)) {
+                  closeConnection(poolEntry, "(connection evicted or dead)"); // Throw away the dead connection and try again
+               }
+               else {
+                  poolEntries.add(poolEntry);
+               }
+               timeout = hardTimeout - clockSource.elapsedMillis(startTime);
+            }
+         }
+
+         if (poolEntries.size() == count) {
+            final List<Connection> connections = new ArrayList<>(count);
+            final long now = clockSource.currentTime();
+            for (PoolEntry poolEntry : poolEntries) {
+               metricsTracker.recordBorrowStats(poolEntry, startTime);
+               connections.add(poolEntry.createProxyConnection(leakTask.start(poolEntry), now));
+            }
+            isAcquired = true;
+            return connections;
+         }
+      }
+      catch (InterruptedException e) {
+         throw new SQLException(poolName + " - Interrupted during bulk connection acquisition", e);
+      }
+      finally {
+         if (isLocked) {
+            bulkAcquireLock.unlock();
+         }
+         if (!isAcquired) {
+            for (PoolEntry poolEntry : poolEntries) {
+               if (borrowLanes != null) {
+                  borrowLanes.release(poolEntry);
+               }
+               connectionBag.requite(poolEntry);
+            }
+         }
+         suspendResumeLock.release();
+      }
+
+      logPoolState("Bulk timeout failure\t");
+      throw new SQLTransientConnectionException(poolName + " - " + count + " connections are not available, request timed out after " + clockSource.elapsedMillis(startTime) + "ms.");
+   }
+
+   /**
+    * Execute the callback in a transaction on a connection from the pool, committing if it returns
+    * and rolling back if it throws.  Transactions failing with an exception the retry policy deems
+    * retryable, or that the exception classifier of the pool deems a broken connection, are retried
+    * on a connection borrowed anew, so a connection that was evicted as broken is never reused.  A
+    * failed commit is retried only if the retry policy marks the work as idempotent.  Each borrow
+    * waits at most until the deadline of the retry policy, and failures to acquire a connection are
+    * not retried.  The transaction never joins a connection scope open on the calling thread, so
+    * neither a retry nor a rollback touches the connection shared by the scope.
+    *
+    * @param callback the work to execute in the transaction
+    * @param retryPolicy the retry policy
+    * @param <T> the type of the result
+    * @return the result of the callback
+    * @throws SQLException the exception of the last attempt, or a timeout acquiring a connection
+    */
+   public final <T> T inTransaction(final TransactionCallback<T> callback, final RetryPolicy retryPolicy) throws SQLException
+   {
+      final long startTime = clockSource.currentTime();
+      for (int attempt = 1; ; attempt++) {
+         final long remainingMs = retryPolicy.getDeadline() - clockSource.elapsedMillis(startTime);
+         final Connection connection = getConnection(Math.max(1L, Math.min(connectionTimeout, remainingMs)));
+         boolean isCommitting = false;
+         try (Connection c = connection) {
+            boolean isCommitted = false;
+            try {
+               c.setAutoCommit(false);
+               final T result = callback.doInTransaction(c);
+               isCommitting = true;
+               c.commit();
+               isCommitted = true;
+               return result;
+            }
+            catch (SQLException e) {
+               // evict a broken connection before it is closed, so that the retry borrows another one
+               final ProxyConnection proxyConnection = unwrapProxyConnection(c);
+               if (proxyConnection != null) {
+                  proxyConnection.checkException(e);
+               }
+               throw e;
+            }
+            finally {
+               if (!isCommitted) {
+                  try {
+                     c.rollback();
+                  }
+                  catch (SQLException e) {
+                     LOGGER.debug("{} - Rollback of failed transaction failed", poolName, e);
+                  }
+               }
+            }
+         }
+         catch (SQLException e) {
+            if ((isCommitting && !retryPolicy.isIdempotent()) || !isRetryable(retryPolicy, e)) {
+               throw e;
+            }
+
+            final long remaining = retryPolicy.getDeadline() - clockSource.elapsedMillis(startTime);
+            if (attempt >= retryPolicy.getMaxAttempts() || remaining <= 0L) {
+               metricsTracker.recordTransactionRetriesExhausted();
+               throw e;
+            }
+
+            metricsTracker.recordTransactionRetry();
+            LOGGER.debug("{} - Retrying transaction after attempt {} failed with SQLSTATE({})", poolName, attempt, e.getSQLState());
+            try {
+               Thread.sleep(Math.min(retryPolicy.getBackoff(attempt), remaining));
+            }
+            catch (InterruptedException ie) {
+               throw new SQLException(poolName + " - Interrupted during transaction retry backoff", ie);
+            }
+         }
+      }
+   }
+
+   /**
+    * Execute a query asynchronously on a connection borrowed from the pool.  Queries run on at most
+    * <code>maximumPoolSize</code> threads, each of which holds a connection only while its query runs,
+    * so the pool size bounds the concurrency and the queue in front of it bounds the backlog.
+    *
+    * @param sql the SQL of the query
+    * @param parameters the parameters to bind via <code>setObject()</code>, or null
+    * @param rowMapper the mapper of each row of the result
+    * @param <T> the type of the mapped rows
+    * @return a future of the list of mapped rows; its <code>ExecutionException</code> wraps the failure
+    * @throws SQLException thrown if the pool is shut down or too many queries are already queued
+    */
+   public final <T> Future<List<T>> executeQueryAsync(final String sql, final Object[] parameters, final RowMapper<T> rowMapper) throws SQLException
+   {
+      final FutureTask<List<T>> future = new FutureTask<>(new Callable<List<T>>() {
+         @Override
+         public List<T> call() throws SQLException
+         {
+            try (Connection connection = getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql)) {
+               if (parameters != null) {
+                  for (int i = 0; i < parameters.length; i++) {
+                     statement.setObject(i + 1, parameters[i]);
+                  }
+               }
+
+               final List<T> rows = new ArrayList<>();
+               try (ResultSet resultSet = statement.executeQuery()) {
+                  while (resultSet.next()) {
+                     rows.add(rowMapper.mapRow(resultSet, rows.size()));
+                  }
+               }
+               return rows;
+            }
+         }
+      });
+
+      submitAsync(future);
+      return future;
+   }
+
+   /**
+    * Create a pipeline of statements to execute back to back on one connection from the pool.
+    *
+    * @return a new, empty statement pipeline
+    */
+   public final StatementPipeline pipeline()
+   {
+      return new StatementPipeline(this);
+   }
+
+   /**
+    * Execute a query template once per partition parameter set, concurrently on up to
+    * <code>parallelism</code> connections, and merge the rows.
+    *
+    * @param sql the SQL of the query template
+    * @param partitions the parameters of each partition, bound via <code>setObject()</code>
+    * @param rowMapper the mapper of each row of the results
+    * @param parallelism the maximum number of partitions to run at once, at most maximumPoolSize
+    * @param isOrdered true to deliver rows in partition order, false in order of completion
+    * @param timeoutMs the time in milliseconds after which outstanding partitions are cancelled
+    * @param <T> the type of the mapped rows
+    * @return the merged rows, which should be closed if not fully consumed
+    */
+   public final <T> ScatterGather<T> scatterGather(final String sql, final List<Object[]> partitions, final RowMapper<T> rowMapper, final int parallelism, final boolean isOrdered, final long timeoutMs)
+   {
+      if (parallelism < 1) {
+         throw new IllegalArgumentException("parallelism cannot be less than 1");
+      }
+
+      final ScatterGather<T> scatterGather = new ScatterGather<>(this, sql, partitions, rowMapper, isOrdered, timeoutMs);
+      scatterGather.start(Math.min(parallelism, config.getMaximumPoolSize()));
+      return scatterGather;
+   }
+
+   /**
+    * Create a publisher of the rows of a query, read from a pooled connection only as its
+    * subscriber requests them.
+    *
+    * @param sql the SQL of the query
+    * @param parameters the parameters to bind via <code>setObject()</code>, or null
+    * @param rowMapper the mapper of each row of the result
+    * @param <T> the type of the mapped rows
+    * @return a publisher for a single subscriber
+    */
+   public final <T> RowPublisher<T> publish(final String sql, final Object[] parameters, final RowMapper<T> rowMapper)
+   {
+      return new RowPublisher<>(this, sql, parameters, rowMapper);
+   }
+
+   /**
+    * Create a loader writing rows through a parameterized <code>INSERT</code> in batches, in
+    * parallel on up to <code>parallelism</code> connections, each committing its own batches.  The
+    * writers run on threads of the loader rather than the asynchronous executor of the pool.
+    *
+    * @param sql the SQL of the parameterized insert
+    * @param columnCount the number of parameters of each row
+    * @param parallelism the number of connections to write on, at most maximumPoolSize
+    * @return the bulk loader, which must be finished or closed to write the last rows
+    * @throws SQLException thrown if the writers cannot be started
+    */
+   public final BulkLoader bulkLoader(final String sql, final int columnCount, final int parallelism) throws SQLException
+   {
+      if (parallelism < 1) {
+         throw new IllegalArgumentException("parallelism cannot be less than 1");
+      }
+
+      final BulkLoader bulkLoader = new BulkLoader(this, sql, columnCount, Math.min(parallelism, config.getMaximumPoolSize()));
+      bulkLoader.start();
+      return bulkLoader;
+   }
+
+   /**
+    * Submit a task to the asynchronous executor of the pool.
+    *
+    * @throws SQLException thrown if the pool is shut down or the executor queue is full
+    */
+   final void submitAsync(final Runnable task) throws SQLException
+   {
+      try {
+         asyncExecutor.execute(task);
+      }
+      catch (RejectedExecutionException e) {
+         throw new SQLTransientConnectionException(poolName + " - Asynchronous execution rejected, the pool is shut down or its queue of " + config.getAsyncQueueSize() + " is full", e);
+      }
+   }
+
+   final MetricsTrackerDelegate getMetricsTracker()
+   {
+      return metricsTracker;
+   }
+
    /**
     * Shutdown the pool, closing all idle connections and aborting or closing
     * active connections.
@@ -211,9 +670,20 @@ public class HikariPool extends PoolBase implements HikariPoolMXBean, IBagStateL
          logPoolState("Before closing\t");
 
          connectionBag.close();
+         if (overflowReaperTask != null) {
+            overflowReaperTask.cancel(false);
+         }
          softEvictConnections();
+         asyncExecutor.shutdown();
+         if (healthSweepExecutor != null) {
+            healthSweepExecutor.shutdown();
+         }
          addConnectionExecutor.shutdown();
          addConnectionExecutor.awaitTermination(5L, TimeUnit.SECONDS);
+         if (refreshConnectionExecutor != null) {
+            refreshConnectionExecutor.shutdown();
+            refreshConnectionExecutor.awaitTermination(5L, TimeUnit.SECONDS);
+         }
          if (config.getScheduledExecutorService() == null) {
             houseKeepingExecutorService.shutdown();
             houseKeepingExecutorService.awaitTermination(5L, TimeUnit.SECONDS);
@@ -232,6 +702,12 @@ public class HikariPool extends PoolBase implements HikariPoolMXBean, IBagStateL
             assassinExecutor.awaitTermination(5L, TimeUnit.SECONDS);
          }
 
+         // queued tasks have failed fast and running ones have lost their connections, interrupt any still waiting
+         if (!asyncExecutor.awaitTermination(5L, TimeUnit.SECONDS)) {
+            asyncExecutor.shutdownNow();
+            asyncExecutor.awaitTermination(5L, TimeUnit.SECONDS);
+         }
+
          shutdownNetworkTimeoutExecutor();
          closeConnectionExecutor.shutdown();
          closeConnectionExecutor.awaitTermination(5L, TimeUnit.SECONDS);
@@ -245,13 +721,54 @@ public class HikariPool extends PoolBase implements HikariPoolMXBean, IBagStateL
    }
 
    /**
-    * Evict a connection from the pool.
+    * Evict a connection from the pool.  A lazy connection or a view of a scope connection evicts the
+    * pool connection it wraps; a lazy connection that has not borrowed one yet is left as is.
     *
     * @param proxyConnection the connection to evict
     */
    public final void evictConnection(Connection proxyConnection)
    {
-      softEvictConnection(((ProxyConnection) proxyConnection).getPoolEntry(), "(connection evicted by user)", true /* owner */);
+      final ProxyConnection connection = unwrapProxyConnection(proxyConnection);
+      if (connection != null) {
+         softEvictConnection(connection.getPoolEntry(), "(connection evicted by user)", true /* owner */);
+      }
+   }
+
+   /**
+    * Get the pool connection wrapped by a lazy connection or a view of a scope connection.
+    *
+    * @return the pool connection, or null if a lazy connection has not borrowed one yet
+    */
+   private static ProxyConnection unwrapProxyConnection(final Connection proxyConnection)
+   {
+      Connection connection = proxyConnection;
+      while (connection != null && !(connection instanceof ProxyConnection)) {
+         final Connection view = ConnectionScope.unwrapView(connection);
+         connection = (view != null ? view : LazyConnection.unwrapLazy(connection));
+      }
+      return (ProxyConnection) connection;
+   }
+
+   /**
+    * Remove all results of the specified query from the result cache.
+    *
+    * @param sql the SQL of the query
+    */
+   public void invalidateResultCache(String sql)
+   {
+      if (resultCache != null) {
+         resultCache.invalidate(sql);
+      }
+   }
+
+   /**
+    * Remove all results from the result cache.
+    */
+   public void invalidateResultCache()
+   {
+      if (resultCache != null) {
+         resultCache.invalidateAll();
+      }
    }
 
    public void setMetricRegistry(Object metricRegistry)
@@ -402,6 +919,21 @@ public class HikariPool extends PoolBase implements HikariPoolMXBean, IBagStateL
    {
       metricsTracker.recordConnectionUsage(poolEntry);
 
+      if (borrowLanes != null) {
+         borrowLanes.release(poolEntry);
+      }
+
+      if (refreshConnectionExecutor != null && poolEntry.isMarkedEvicted()) {
+         // retired by a rolling refresh while in use, so it is replaced now that it is returned
+         closeConnection(poolEntry, "(connection refreshed)");
+         fillPool();
+         return;
+      }
+
+      if (poolEntry.affinityKey != null) {
+         affinityIndex.put(poolEntry.affinityKey, poolEntry);
+      }
+
       connectionBag.requite(poolEntry);
    }
 
@@ -413,7 +945,14 @@ public class HikariPool extends PoolBase implements HikariPoolMXBean, IBagStateL
    final void closeConnection(final PoolEntry poolEntry, final String closureReason)
    {
       final Connection connection = poolEntry.connection;
+      final String affinityKey = poolEntry.affinityKey;
+      if (affinityKey != null) {
+         affinityIndex.remove(affinityKey, poolEntry);
+      }
       poolEntry.close();
+      if (borrowLanes != null) {
+         borrowLanes.release(poolEntry);
+      }
       if (connectionBag.remove(poolEntry)) {
          final int tc = totalConnections.decrementAndGet();
          if (tc < 0) {
@@ -429,6 +968,29 @@ public class HikariPool extends PoolBase implements HikariPoolMXBean, IBagStateL
       }
    }
 
+   /**
+    * Close a connection found broken and, unless a sweep is running or started within
+    * <code>healthSweepWindow</code>, start a sweep validating all idle connections, as they are
+    * likely broken too.
+    *
+    * @param poolEntry the broken connection
+    * @param closureReason the reason to log
+    */
+   final void closeBrokenConnection(final PoolEntry poolEntry, final String closureReason)
+   {
+      closeConnection(poolEntry, closureReason);
+
+      if (healthSweepExecutor != null && poolState == POOL_NORMAL) {
+         final long now = clockSource.currentTime();
+         final long last = lastHealthSweep.get();
+         // against a dead database a sweep can outlast the window, so only one runs at a time
+         if ((last == 0L || clockSource.elapsedMillis(last, now) > config.getHealthSweepWindow()) && isHealthSweeping.compareAndSet(false, true)) {
+            lastHealthSweep.set(now);
+            startHealthSweep();
+         }
+      }
+   }
+
    // ***********************************************************************
    //                           Private methods
    // ***********************************************************************
@@ -437,39 +999,255 @@ public class HikariPool extends PoolBase implements HikariPoolMXBean, IBagStateL
     * Create and add a single connection to the pool.
     */
    private boolean addConnection()
+   {
+      try {
+         tryAddConnection();
+         return true;
+      }
+      catch (Exception e) {
+         if (poolState == POOL_NORMAL) {
+            LOGGER.debug("{} - Cannot acquire connection from data source", poolName, e);
+         }
+         return false;
+      }
+   }
+
+   /**
+    * Create and add a single connection to the pool, unless it is maxed out.
+    *
+    * @return true if a connection was added, false if the pool is maxed out
+    * @throws Exception thrown if the connection cannot be created
+    */
+   private boolean tryAddConnection() throws Exception
    {
       // Speculative increment of totalConnections with expectation of success
       if (totalConnections.incrementAndGet() > config.getMaximumPoolSize()) {
          totalConnections.decrementAndGet(); // Pool is maxed out, so undo speculative increment of totalConnections
+         return false;
+      }
+
+      try {
+         createPoolEntry();
          return true;
       }
+      catch (Exception e) {
+         totalConnections.decrementAndGet(); // We failed, so undo speculative increment of totalConnections
+         throw e;
+      }
+   }
+
+   /**
+    * Create and add a single overflow connection to the pool, if the overflow band is not exhausted.
+    */
+   private void addOverflowConnection()
+   {
+      if (totalConnections.incrementAndGet() > config.getMaximumPoolSize() + config.getOverflowPoolSize()) {
+         totalConnections.decrementAndGet(); // Overflow band is exhausted
+         return;
+      }
 
       try {
-         final PoolEntry poolEntry = newPoolEntry();
-         connectionBag.add(poolEntry);
-
-         final long maxLifetime = config.getMaxLifetime();
-         if (maxLifetime > 0) {
-            final long variance = maxLifetime > 60_000 ? ThreadLocalRandom.current().nextLong(10_000) : 0;
-            final long lifetime = maxLifetime - variance;
-            poolEntry.setFutureEol(houseKeepingExecutorService.schedule(new Runnable() {
+         createPoolEntry(true);
+      }
+      catch (Exception e) {
+         totalConnections.decrementAndGet();
+         if (poolState == POOL_NORMAL) {
+            LOGGER.debug("{} - Cannot acquire overflow connection from data source", poolName, e);
+         }
+      }
+   }
+
+   /**
+    * Determine whether work that failed with the specified exception may be retried, because the
+    * retry policy deems it retryable or the connection is classified as broken.
+    */
+   final boolean isRetryable(final RetryPolicy retryPolicy, final SQLException e)
+   {
+      return retryPolicy.isRetryable(e) || isConnectionBroken(e);
+   }
+
+   /**
+    * Borrow a PoolEntry from the bag.  If an overflow band is configured and the caller has
+    * waited longer than <code>overflowThreshold</code>, an overflow connection is requested
+    * before waiting for the remainder of the timeout.
+    *
+    * @param timeout the maximum time to wait in milliseconds
+    * @param startTime the time at which the caller began waiting
+    * @return a PoolEntry, or null if the timeout elapsed
+    * @throws InterruptedException if interrupted while waiting
+    */
+   private PoolEntry borrowPoolEntry(final long timeout, final long startTime) throws InterruptedException
+   {
+      if (config.getOverflowPoolSize() > 0) {
+         final long thresholdWait = Math.min(timeout, config.getOverflowThreshold() - clockSource.elapsedMillis(startTime));
+         if (thresholdWait > 0L) {
+            final PoolEntry poolEntry = connectionBag.borrow(thresholdWait, TimeUnit.MILLISECONDS);
+            if (poolEntry != null || thresholdWait == timeout) {
+               return poolEntry;
+            }
+         }
+
+         if (poolState == POOL_NORMAL && totalConnections.get() >= config.getMaximumPoolSize()) {
+            addConnectionExecutor.execute(new Runnable() {
                @Override
                public void run() {
-                  softEvictConnection(poolEntry, "(connection reached maxLifetime)", false /* not owner */);
+                  addOverflowConnection();
                }
-            }, lifetime, TimeUnit.MILLISECONDS));
+            });
          }
 
-         LOGGER.debug("{} - Added connection {}", poolName, poolEntry.connection);
-         return true;
+         return connectionBag.borrow(timeout - Math.max(0L, thresholdWait), TimeUnit.MILLISECONDS);
       }
-      catch (Exception e) {
-         totalConnections.decrementAndGet(); // We failed, so undo speculative increment of totalConnections
-         if (poolState == POOL_NORMAL) {
-            LOGGER.debug("{} - Cannot acquire connection from data source", poolName, e);
+
+      return connectionBag.borrow(timeout, TimeUnit.MILLISECONDS);
+   }
+
+   /**
+    * Borrow the PoolEntry most recently released with the specified affinity key if it is still
+    * idle, or any PoolEntry from the bag if it is not.
+    *
+    * @param affinityKey the affinity key of the borrower
+    * @param timeout the maximum time to wait for a connection
+    * @param startTime the start time of the acquisition
+    * @return a borrowed PoolEntry, or null if the timeout elapsed
+    */
+   private PoolEntry borrowAffinityPoolEntry(final BorrowLanes.Lane lane, final String affinityKey, final long timeout, final long startTime) throws InterruptedException
+   {
+      final PoolEntry poolEntry = affinityIndex.get(affinityKey);
+      if (poolEntry != null && poolEntry.compareAndSet(STATE_NOT_IN_USE, STATE_IN_USE)) {
+         if (affinityKey.equals(poolEntry.affinityKey) && (lane == null || borrowLanes.tryAdmit(lane, poolEntry))) {
+            return poolEntry;
          }
-         return false;
+
+         connectionBag.requite(poolEntry);
       }
+
+      return borrowAdmittedPoolEntry(lane, timeout, startTime);
+   }
+
+   /**
+    * Borrow a PoolEntry from the bag, subject to admission in the specified lane if lanes are configured.
+    *
+    * @param lane the borrow lane, or null if no lanes are configured
+    * @param timeout the maximum time to wait in milliseconds
+    * @param startTime the time at which the caller began waiting
+    * @return a PoolEntry, or null if the timeout elapsed
+    * @throws InterruptedException if interrupted while waiting
+    */
+   private PoolEntry borrowAdmittedPoolEntry(final BorrowLanes.Lane lane, final long timeout, final long startTime) throws InterruptedException
+   {
+      return (lane != null ? borrowLanePoolEntry(lane, timeout, startTime) : borrowPoolEntry(timeout, startTime));
+   }
+
+   /**
+    * Tag a borrowed PoolEntry with the affinity key of its borrower, first performing the reset
+    * that was deferred by its previous borrower if that borrower had another key.
+    *
+    * @param poolEntry the borrowed PoolEntry
+    * @param affinityKey the affinity key of the borrower, or null
+    * @return false if the deferred reset failed and the connection should be closed
+    */
+   private boolean bindAffinity(final PoolEntry poolEntry, final String affinityKey)
+   {
+      if (poolEntry.deferredResetBits != 0 && (affinityKey == null || !affinityKey.equals(poolEntry.affinityKey))) {
+         try {
+            resetConnectionState(poolEntry, poolEntry.deferredResetBits);
+            poolEntry.deferredResetBits = 0;
+         }
+         catch (SQLException e) {
+            LOGGER.debug("{} - Deferred reset failed on connection {}", poolName, poolEntry.connection, e);
+            return false;
+         }
+      }
+
+      if (poolEntry.affinityKey != null && !poolEntry.affinityKey.equals(affinityKey)) {
+         affinityIndex.remove(poolEntry.affinityKey, poolEntry);
+      }
+
+      poolEntry.affinityKey = affinityKey;
+      return true;
+   }
+
+   /**
+    * Borrow a PoolEntry from the bag on behalf of a borrower in the specified lane.  Entries
+    * that the lane is not admitted to use are returned to the bag, where waiters in higher
+    * priority lanes will pick them up, and the borrower waits until it becomes admissible.
+    *
+    * @param lane the borrow lane
+    * @param timeout the maximum time to wait in milliseconds
+    * @param startTime the time at which the caller began waiting
+    * @return an admitted PoolEntry, or null if the timeout elapsed
+    * @throws InterruptedException if interrupted while waiting
+    */
+   private PoolEntry borrowLanePoolEntry(final BorrowLanes.Lane lane, long timeout, final long startTime) throws InterruptedException
+   {
+      final long borrowStart = clockSource.currentTime();
+      final long hardTimeout = timeout;
+      do {
+         final PoolEntry poolEntry;
+         borrowLanes.beginWait(lane);
+         try {
+            poolEntry = borrowPoolEntry(timeout, startTime);
+         }
+         finally {
+            borrowLanes.endWait(lane);
+         }
+
+         if (poolEntry == null) {
+            return null;
+         }
+         else if (borrowLanes.tryAdmit(lane, poolEntry)) {
+            return poolEntry;
+         }
+
+         connectionBag.requite(poolEntry);
+         borrowLanes.awaitAdmission(lane, hardTimeout - clockSource.elapsedMillis(borrowStart));
+         timeout = hardTimeout - clockSource.elapsedMillis(borrowStart);
+      } while (timeout > 0L);
+
+      return null;
+   }
+
+   /**
+    * Create a new PoolEntry, add it to the bag, and schedule its end-of-life.  The caller is
+    * responsible for accounting of totalConnections.
+    *
+    * @return the PoolEntry that was added
+    * @throws Exception thrown if the connection could not be created
+    */
+   private PoolEntry createPoolEntry() throws Exception
+   {
+      return createPoolEntry(false);
+   }
+
+   /**
+    * Create a new PoolEntry, add it to the bag, and schedule its end-of-life.  The caller is
+    * responsible for accounting of totalConnections.
+    *
+    * @param isOverflow true if the entry is an overflow connection beyond maximumPoolSize
+    * @return the PoolEntry that was added
+    * @throws Exception thrown if the connection could not be created
+    */
+   private PoolEntry createPoolEntry(final boolean isOverflow) throws Exception
+   {
+      final PoolEntry poolEntry = newPoolEntry();
+      poolEntry.isOverflow = isOverflow;
+      connectionBag.add(poolEntry);
+
+      final long maxLifetime = config.getMaxLifetime();
+      if (maxLifetime > 0) {
+         final long variance = maxLifetime > 60_000 ? ThreadLocalRandom.current().nextLong(10_000) : 0;
+         final long lifetime = maxLifetime - variance;
+         poolEntry.setFutureEol(houseKeepingExecutorService.schedule(new Runnable() {
+            @Override
+            public void run() {
+               softEvictConnection(poolEntry, "(connection reached maxLifetime)", false /* not owner */);
+            }
+         }, lifetime, TimeUnit.MILLISECONDS));
+      }
+
+      LOGGER.debug("{} - Added connection {}", poolName, poolEntry.connection);
+      return poolEntry;
    }
 
    /**
@@ -534,22 +1312,139 @@ public class HikariPool extends PoolBase implements HikariPoolMXBean, IBagStateL
             }
          }
          catch (Throwable e) {
-            try {
-               shutdown();
-            }
-            catch (Throwable ex) {
-               e.addSuppressed(ex);
+            throw abortInitialization(e);
+         }
+      }
+
+      if ((config.getWarmupParallelism() > 1 || config.getWarmupFraction() > 0.0) && warmupPool()) {
+         return; // the warm-up fills the pool when it finishes, so that the two do not overshoot together
+      }
+
+      fillPool();
+   }
+
+   /**
+    * Establish connections up to minimumIdle using <code>warmupParallelism</code> concurrent
+    * threads, optionally blocking until <code>warmupFraction</code> of them have been added.
+    *
+    * @return true if the warm-up was started, in which case it fills the pool once it finishes
+    */
+   private boolean warmupPool()
+   {
+      final int minimumIdle = config.getMinimumIdle();
+      final int connectionsToAdd = Math.min(config.getMaximumPoolSize() - totalConnections.get(), minimumIdle - getIdleConnections());
+      if (connectionsToAdd <= 0) {
+         return false;
+      }
+
+      final int warmTarget = (int) Math.ceil(minimumIdle * config.getWarmupFraction()) - totalConnections.get();
+      final PoolWarmup warmup = new PoolWarmup(connectionsToAdd, Math.max(0, warmTarget));
+      warmup.start();
+
+      try {
+         if (!warmup.await(connectionTimeout)) {
+            final String message = poolName + " - Pool did not reach warm fraction " + config.getWarmupFraction() + " within " + connectionTimeout + "ms";
+            if (config.isInitializationFailFast()) {
+               final Throwable cause = getLastConnectionFailure();
+               throw abortInitialization(cause != null ? cause : new SQLTransientConnectionException(message));
             }
 
-            throw new PoolInitializationException(e);
+            LOGGER.warn(message);
          }
       }
+      catch (InterruptedException e) {
+         warmup.abort();
+         throw abortInitialization(e);
+      }
 
-      fillPool();
+      return true;
+   }
+
+   /**
+    * Shutdown the pool after a failure during initialization.
+    *
+    * @param e the cause of the failure
+    * @return a PoolInitializationException to throw
+    */
+   private PoolInitializationException abortInitialization(final Throwable e)
+   {
+      try {
+         shutdown();
+      }
+      catch (Throwable ex) {
+         e.addSuppressed(ex);
+      }
+
+      return new PoolInitializationException(e);
+   }
+
+   /**
+    * Validate all idle connections in parallel, closing the dead ones, then refill the pool.
+    */
+   private void startHealthSweep()
+   {
+      final ConcurrentLinkedQueue<PoolEntry> idleEntries = new ConcurrentLinkedQueue<>(connectionBag.values(STATE_NOT_IN_USE));
+      if (idleEntries.isEmpty()) {
+         isHealthSweeping.set(false);
+         return;
+      }
+
+      LOGGER.info("{} - Broken connection detected, validating {} idle connections.", poolName, idleEntries.size());
+
+      final int sweepers = Math.min(HEALTH_SWEEP_PARALLELISM, idleEntries.size());
+      final AtomicInteger remainingSweepers = new AtomicInteger(sweepers);
+      for (int i = 0; i < sweepers; i++) {
+         healthSweepExecutor.execute(new Runnable() {
+            @Override
+            public void run()
+            {
+               try {
+                  for (PoolEntry poolEntry = idleEntries.poll(); poolEntry != null && poolState == POOL_NORMAL; poolEntry = idleEntries.poll()) {
+                     // entries borrowed in the meantime are validated by their borrower or fail on use
+                     if (connectionBag.reserve(poolEntry)) {
+                        if (isConnectionAlive(poolEntry.connection)) {
+                           poolEntry.lastAccessed = clockSource.currentTime();
+                           connectionBag.unreserve(poolEntry);
+                        }
+                        else {
+                           closeConnection(poolEntry, "(connection failed health sweep)");
+                        }
+                     }
+                  }
+               }
+               finally {
+                  if (remainingSweepers.decrementAndGet() == 0) {
+                     try {
+                        fillPool();
+                        logPoolState("After health sweep\t");
+                     }
+                     finally {
+                        isHealthSweeping.set(false);
+                     }
+                  }
+               }
+            }
+         });
+      }
    }
 
    private void softEvictConnection(final PoolEntry poolEntry, final String reason, final boolean owner)
    {
+      if (refreshConnectionExecutor != null && !owner && poolState == POOL_NORMAL) {
+         if (poolEntry.markRefreshing()) {
+            try {
+               refreshConnectionExecutor.execute(new ConnectionRefresher(poolEntry, reason));
+               return;
+            }
+            catch (RejectedExecutionException e) {
+               // the refresher is shutting down, so retire the connection without a replacement
+            }
+         }
+         else {
+            return;
+         }
+      }
+
       poolEntry.markEvicted();
       if (connectionBag.reserve(poolEntry) || owner) {
          closeConnection(poolEntry, reason);
@@ -627,6 +1522,187 @@ public class HikariPool extends PoolBase implements HikariPoolMXBean, IBagStateL
       }
    }
 
+   /**
+    * The warm-up of the pool on a dedicated executor.  Unless the pool already has a connection,
+    * a single connection is created first, so that the driver capabilities are probed by one
+    * thread before the remaining connections are set up in parallel.
+    */
+   private final class PoolWarmup
+   {
+      private final long startTime;
+      private final int connectionsToAdd;
+      private final CountDownLatch warmLatch;
+      private final AtomicInteger remaining;
+      private final ThreadPoolExecutor warmupExecutor;
+
+      PoolWarmup(final int connectionsToAdd, final int warmTarget)
+      {
+         this.startTime = clockSource.currentTime();
+         this.connectionsToAdd = connectionsToAdd;
+         this.warmLatch = new CountDownLatch(warmTarget);
+         this.remaining = new AtomicInteger(connectionsToAdd);
+         this.warmupExecutor = createThreadPoolExecutor(connectionsToAdd, Math.min(config.getWarmupParallelism(), connectionsToAdd),
+                                                        "Hikari connection warmer (pool " + poolName + ")", config.getThreadFactory(), new ThreadPoolExecutor.DiscardPolicy());
+      }
+
+      void start()
+      {
+         if (totalConnections.get() > 0) {
+            for (int i = 0; i < connectionsToAdd; i++) {
+               warmupExecutor.execute(newWarmer(false));
+            }
+            warmupExecutor.shutdown();
+         }
+         else {
+            warmupExecutor.execute(newWarmer(true));
+         }
+      }
+
+      boolean await(final long timeoutMs) throws InterruptedException
+      {
+         return warmLatch.await(timeoutMs, TimeUnit.MILLISECONDS);
+      }
+
+      void abort()
+      {
+         warmupExecutor.shutdownNow();
+      }
+
+      private Runnable newWarmer(final boolean isFirst)
+      {
+         return new Runnable() {
+            @Override
+            public void run()
+            {
+               int finished = 1;
+               try {
+                  final boolean isAdded = addWarmConnection();
+                  if (isAdded) {
+                     warmLatch.countDown();
+                  }
+
+                  if (isFirst) {
+                     if (isAdded) {
+                        for (int i = 1; i < connectionsToAdd; i++) {
+                           warmupExecutor.execute(newWarmer(false));
+                        }
+                     }
+                     else {
+                        finished = connectionsToAdd; // the others would fail or find the pool full as well
+                     }
+                     warmupExecutor.shutdown();
+                  }
+               }
+               finally {
+                  if (remaining.addAndGet(-finished) == 0) {
+                     finish();
+                  }
+               }
+            }
+         };
+      }
+
+      /**
+       * Add a connection, retrying with backoff until connectionTimeout has elapsed since the start.
+       *
+       * @return true if a connection was added, false if the pool is full, shut down, or the warm-up gave up
+       */
+      private boolean addWarmConnection()
+      {
+         long sleepBackoff = 200L;
+         while (poolState == POOL_NORMAL) {
+            try {
+               return tryAddConnection();
+            }
+            catch (Exception e) {
+               LOGGER.debug("{} - Cannot acquire connection from data source", poolName, e);
+               if (clockSource.elapsedMillis(startTime) > connectionTimeout) {
+                  return false; // give up, the pool is filled after the warm-up and by the housekeeper
+               }
+               quietlySleep(sleepBackoff);
+               sleepBackoff = Math.min(connectionTimeout / 2, (long) (sleepBackoff * 1.5));
+            }
+         }
+         return false;
+      }
+
+      private void finish()
+      {
+         metricsTracker.recordPoolWarmup(startTime);
+         LOGGER.debug("{} - Pool warm-up finished with {} connections in {}ms", poolName, totalConnections.get(), clockSource.elapsedMillis(startTime));
+         if (poolState == POOL_NORMAL) {
+            fillPool();
+         }
+      }
+   }
+
+   /**
+    * Task that retires overflow connections which have been idle longer than <code>overflowIdleTimeout</code>.
+    */
+   private final class OverflowReaper implements Runnable
+   {
+      @Override
+      public void run()
+      {
+         final long now = clockSource.currentTime();
+         final long overflowIdleTimeout = config.getOverflowIdleTimeout();
+         for (PoolEntry poolEntry : connectionBag.values(STATE_NOT_IN_USE)) {
+            if (poolEntry.isOverflow && clockSource.elapsedMillis(poolEntry.lastAccessed, now) > overflowIdleTimeout && connectionBag.reserve(poolEntry)) {
+               closeConnection(poolEntry, "(overflow connection passed overflowIdleTimeout)");
+            }
+         }
+      }
+   }
+
+   /**
+    * Replace-before-retire task used when <code>rollingRefresh</code> is enabled.  A replacement
+    * for an idle connection is added to the pool before the connection is closed, so pool capacity
+    * never dips below its level before the refresh.  A connection in use is marked evicted, and
+    * is replaced when it is returned.
+    */
+   private final class ConnectionRefresher implements Runnable
+   {
+      private final PoolEntry poolEntry;
+      private final String reason;
+
+      ConnectionRefresher(final PoolEntry poolEntry, final String reason)
+      {
+         this.poolEntry = poolEntry;
+         this.reason = reason;
+      }
+
+      @Override
+      public void run()
+      {
+         if (poolEntry.isMarkedEvicted() || poolEntry.getState() == STATE_REMOVED) {
+            return; // already retired by someone else
+         }
+
+         poolEntry.markEvicted();
+         if (!connectionBag.reserve(poolEntry)) {
+            return; // in use, or taken by someone else
+         }
+
+         // Each refresher thread holds at most one replacement, so maximumPoolSize is exceeded by at most maxConcurrentRefreshes
+         if (poolState == POOL_NORMAL && !poolEntry.isOverflow) {
+            if (totalConnections.incrementAndGet() > config.getMaximumPoolSize() + config.getMaxConcurrentRefreshes()) {
+               totalConnections.decrementAndGet();
+            }
+            else {
+               try {
+                  createPoolEntry();
+               }
+               catch (Exception e) {
+                  totalConnections.decrementAndGet();
+                  LOGGER.debug("{} - Cannot acquire replacement connection from data source", poolName, e);
+               }
+            }
+         }
+
+         closeConnection(poolEntry, reason);
+      }
+   }
+
    public static class PoolInitializationException extends RuntimeException
    {
       private static final long serialVersionUID = 929872118275916520L;
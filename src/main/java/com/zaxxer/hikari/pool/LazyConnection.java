@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari.pool;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * The handler of a connection that borrows a connection from the pool only when it is first
+ * used.  Until then, connection state set by the application is recorded and answered locally,
+ * and a commit or rollback has nothing to do.  The first call that needs the database borrows a
+ * connection, replays the recorded state on it, and from then on every call is delegated to it.
+ *
+ * <p>Like a pool connection, an instance is used by one thread at a time.</p>
+ *
+ * @author Brett Wooldridge
+ */
+final class LazyConnection implements InvocationHandler
+{
+   private static final Object NEEDS_CONNECTION = new Object();
+
+   private final HikariPool hikariPool;
+
+   private Connection delegate;
+   private boolean isClosed;
+
+   private Boolean autoCommit;
+   private Boolean readOnly;
+   private Integer transactionIsolation;
+   private Integer holdability;
+   private String catalog;
+   private String schema;
+
+   private LazyConnection(final HikariPool hikariPool)
+   {
+      this.hikariPool = hikariPool;
+   }
+
+   static Connection newProxy(final HikariPool hikariPool)
+   {
+      return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class[] { Connection.class }, new LazyConnection(hikariPool));
+   }
+
+   /**
+    * Unwrap a lazy connection to the pool connection it has borrowed.
+    *
+    * @return the pool connection, or null if none was borrowed or the specified connection is not lazy
+    */
+   static Connection unwrapLazy(final Connection connection)
+   {
+      if (Proxy.isProxyClass(connection.getClass())) {
+         final InvocationHandler handler = Proxy.getInvocationHandler(connection);
+         if (handler instanceof LazyConnection) {
+            return ((LazyConnection) handler).delegate;
+         }
+      }
+      return null;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable
+   {
+      final String methodName = method.getName();
+      switch (methodName) {
+      case "toString":
+         return LazyConnection.class.getSimpleName() + '@' + System.identityHashCode(proxy) + (delegate != null ? " wrapping " + delegate : " (unbound)");
+      case "hashCode":
+         return System.identityHashCode(proxy);
+      case "equals":
+         return proxy == args[0];
+      case "isClosed":
+         return isClosed;
+      case "close":
+         close();
+         return null;
+      case "abort":
+         if (delegate == null) {
+            isClosed = true;
+            return null;
+         }
+         break;
+      default:
+         if (isClosed) {
+            throw new SQLException("Connection is closed");
+         }
+      }
+
+      if (delegate == null) {
+         final Object result = invokeUnbound(methodName, args);
+         if (result != NEEDS_CONNECTION) {
+            return result;
+         }
+         bind();
+      }
+
+      try {
+         return method.invoke(delegate, args);
+      }
+      catch (InvocationTargetException e) {
+         throw e.getCause();
+      }
+   }
+
+   /**
+    * Handle a call that does not need a connection.
+    *
+    * @return the result of the call, or NEEDS_CONNECTION if the call needs a connection
+    */
+   private Object invokeUnbound(final String methodName, final Object[] args)
+   {
+      switch (methodName) {
+      case "setAutoCommit":
+         autoCommit = (Boolean) args[0];
+         return null;
+      case "getAutoCommit":
+         return (autoCommit != null ? autoCommit : hikariPool.config.isAutoCommit());
+      case "setReadOnly":
+         readOnly = (Boolean) args[0];
+         return null;
+      case "isReadOnly":
+         return (readOnly != null ? readOnly : hikariPool.config.isReadOnly());
+      case "setTransactionIsolation":
+         transactionIsolation = (Integer) args[0];
+         return null;
+      case "getTransactionIsolation":
+         return (transactionIsolation != null ? transactionIsolation : NEEDS_CONNECTION);
+      case "setHoldability":
+         holdability = (Integer) args[0];
+         return null;
+      case "getHoldability":
+         return (holdability != null ? holdability : NEEDS_CONNECTION);
+      case "setCatalog":
+         catalog = (String) args[0];
+         return null;
+      case "getCatalog":
+         return (catalog != null ? catalog : NEEDS_CONNECTION);
+      case "setSchema":
+         schema = (String) args[0];
+         return null;
+      case "getSchema":
+         return (schema != null ? schema : NEEDS_CONNECTION);
+      case "commit":
+      case "clearWarnings":
+      case "getWarnings":
+         return null;
+      case "rollback":
+         // a rollback to a savepoint needs the connection that created it, which is already bound
+         return (args == null ? null : NEEDS_CONNECTION);
+      default:
+         return NEEDS_CONNECTION;
+      }
+   }
+
+   /**
+    * Borrow a connection from the pool and replay the recorded state on it.
+    */
+   private void bind() throws SQLException
+   {
+      final Connection connection = hikariPool.getConnection();
+      try {
+         if (readOnly != null) {
+            connection.setReadOnly(readOnly);
+         }
+         if (transactionIsolation != null) {
+            connection.setTransactionIsolation(transactionIsolation);
+         }
+         if (catalog != null) {
+            connection.setCatalog(catalog);
+         }
+         if (schema != null) {
+            connection.setSchema(schema);
+         }
+         if (holdability != null) {
+            connection.setHoldability(holdability);
+         }
+         if (autoCommit != null) {
+            connection.setAutoCommit(autoCommit);
+         }
+      }
+      catch (SQLException e) {
+         connection.close();
+         throw e;
+      }
+
+      delegate = connection;
+   }
+
+   private void close() throws SQLException
+   {
+      if (!isClosed) {
+         isClosed = true;
+         if (delegate != null) {
+            delegate.close();
+         }
+      }
+   }
+}
@@ -17,6 +17,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.management.MBeanServer;
@@ -27,6 +28,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.SQLExceptionClassifier;
+import com.zaxxer.hikari.SQLExceptionClassifier.Classification;
+import com.zaxxer.hikari.SQLExceptionProfile;
 import com.zaxxer.hikari.metrics.MetricsTracker;
 import com.zaxxer.hikari.util.ClockSource;
 import com.zaxxer.hikari.util.DefaultThreadFactory;
@@ -41,6 +45,15 @@ abstract class PoolBase
    protected final String poolName;
    protected long connectionTimeout;
 
+   final int batchCoalescingSize;
+   final boolean isBatchCoalescingStrict;
+   final ResultCache resultCache;
+   final FetchSizeAdvisor fetchSizeAdvisor;
+   final int queryTimeout;
+   final boolean isTrackStatements;
+   final SQLExceptionClassifier exceptionClassifier;
+   final SQLExceptionProfile exceptionProfile;
+
    private static final String[] RESET_STATES = {"readOnly", "autoCommit", "isolation", "catalog", "netTimeout"};
    private static final int UNINITIALIZED = -1;
    private static final int TRUE = 1;
@@ -48,6 +61,7 @@ abstract class PoolBase
 
    private int networkTimeout;
    private int transactionIsolation;
+   private int defaultTransactionIsolation;
    private int isNetworkTimeoutSupported;
    private int isQueryTimeoutSupported;
    private Executor netTimeoutExecutor;
@@ -59,6 +73,7 @@ abstract class PoolBase
    private final boolean isUseJdbc4Validation;
    private final boolean isIsolateInternalQueries;
    private final AtomicReference<Throwable> lastConnectionFailure;
+   private final AtomicInteger consecutiveConnectionFailures;
 
    private volatile boolean isValidChecked; 
 
@@ -66,7 +81,8 @@ abstract class PoolBase
    {
       this.config = config;
 
-      this.networkTimeout = -1;
+      this.networkTimeout = UNINITIALIZED;
+      this.defaultTransactionIsolation = UNINITIALIZED;
       this.catalog = config.getCatalog();
       this.isReadOnly = config.isReadOnly();
       this.isAutoCommit = config.isAutoCommit();
@@ -76,10 +92,19 @@ abstract class PoolBase
       this.isNetworkTimeoutSupported = UNINITIALIZED;
       this.isUseJdbc4Validation = config.getConnectionTestQuery() == null;
       this.isIsolateInternalQueries = config.isIsolateInternalQueries();
+      this.batchCoalescingSize = config.getBatchCoalescingSize();
+      this.isBatchCoalescingStrict = config.isBatchCoalescingStrict();
+      this.resultCache = (config.getResultCacheSize() > 0 ? new ResultCache(config) : null);
+      this.queryTimeout = (int) Math.min(Integer.MAX_VALUE, TimeUnit.MILLISECONDS.toSeconds(config.getQueryTimeout() + 999));
+      this.fetchSizeAdvisor = (config.getAdaptiveFetchSizeMax() > 0 ? new FetchSizeAdvisor(config.getAdaptiveFetchSizeMin(), config.getAdaptiveFetchSizeMax()) : null);
+      this.isTrackStatements = config.isTrackStatements();
+      this.exceptionClassifier = config.getExceptionClassifier();
+      this.exceptionProfile = (config.getExceptionProfile() != null ? SQLExceptionProfile.forName(config.getExceptionProfile()) : detectExceptionProfile(config));
 
       this.poolName = config.getPoolName();
       this.connectionTimeout = config.getConnectionTimeout();
       this.lastConnectionFailure = new AtomicReference<>();
+      this.consecutiveConnectionFailures = new AtomicInteger();
 
       initializeDataSource();
    }
@@ -147,6 +172,7 @@ abstract class PoolBase
       }
       catch (SQLException e) {
          lastConnectionFailure.set(e);
+         consecutiveConnectionFailures.incrementAndGet();
          LOGGER.warn("{} - Connection {} failed alive test with exception {}", poolName, connection, e.getMessage());
          return false;
       }
@@ -157,49 +183,142 @@ abstract class PoolBase
       return lastConnectionFailure.getAndSet(null);
    }
 
+   /**
+    * Get the number of connection creation and alive test failures since a connection was last
+    * created successfully.
+    *
+    * @return the number of consecutive connection failures
+    */
+   public int getConsecutiveConnectionFailures()
+   {
+      return consecutiveConnectionFailures.get();
+   }
+
    public DataSource getUnwrappedDataSource()
    {
       return dataSource;
    }
 
+   /**
+    * Determine whether an exception thrown through a connection means the connection is broken.  The
+    * exception and its chained exceptions are classified in turn, first by the application classifier
+    * and then by the exception profile, and the first definite classification decides.
+    *
+    * @param sqle the exception thrown through the connection
+    * @return true if the connection should be evicted
+    */
+   boolean isConnectionBroken(final SQLException sqle)
+   {
+      return findBrokenException(sqle) != null;
+   }
+
+   /**
+    * Find the exception, among an exception and its chained exceptions, whose classification
+    * decided that the connection is broken.
+    *
+    * @param sqle the exception thrown through the connection
+    * @return the exception classified as broken, or null if the connection is not broken
+    */
+   SQLException findBrokenException(final SQLException sqle)
+   {
+      for (SQLException e = sqle; e != null; ) {
+         final Classification classification = classify(e);
+         if (classification != Classification.UNKNOWN) {
+            return (classification == Classification.BROKEN ? e : null);
+         }
+
+         final SQLException next = e.getNextException();
+         e = (next != e ? next : null);
+      }
+
+      return null;
+   }
+
+   private Classification classify(final SQLException e)
+   {
+      if (exceptionClassifier != null) {
+         try {
+            final Classification classification = exceptionClassifier.classify(e);
+            if (classification != null && classification != Classification.UNKNOWN) {
+               return classification;
+            }
+         }
+         catch (RuntimeException re) {
+            LOGGER.warn("{} - Exception classifier failed on SQLSTATE({}), using the exception profile", poolName, e.getSQLState(), re);
+         }
+      }
+
+      return exceptionProfile.classify(e);
+   }
+
    // ***********************************************************************
    //                         PoolEntry methods
    // ***********************************************************************
 
    PoolEntry newPoolEntry() throws Exception
    {
-      return new PoolEntry(newConnection(), this);
+      final PoolEntry poolEntry = new PoolEntry(newConnection(), this);
+
+      // The session state established by setupConnection()
+      poolEntry.isAutoCommit = isAutoCommit;
+      poolEntry.isReadOnly = isReadOnly;
+      poolEntry.transactionIsolation = transactionIsolation;
+      poolEntry.knownStates = DIRTY_BIT_AUTOCOMMIT | DIRTY_BIT_READONLY | DIRTY_BIT_ISOLATION;
+      if (catalog != null) {
+         poolEntry.catalog = catalog;
+         poolEntry.knownStates |= DIRTY_BIT_CATALOG;
+      }
+      if (isNetworkTimeoutSupported == TRUE) {
+         poolEntry.networkTimeout = networkTimeout;
+         poolEntry.knownStates |= DIRTY_BIT_NETTIMEOUT;
+      }
+
+      return poolEntry;
    }
 
-   void resetConnectionState(final Connection connection, final ProxyConnection proxyConnection, final int dirtyBits) throws SQLException
+   /**
+    * Reset the session state of the connection to the pool defaults, issuing only the driver calls
+    * for states that were changed through the proxy and whose known value differs from the default.
+    *
+    * @param poolEntry the PoolEntry whose connection is to be reset
+    * @param dirtyBits the states that were changed through the proxy
+    * @throws SQLException thrown from driver
+    */
+   void resetConnectionState(final PoolEntry poolEntry, final int dirtyBits) throws SQLException
    {
+      final Connection connection = poolEntry.connection;
       int resetBits = 0;
 
-      if ((dirtyBits & DIRTY_BIT_READONLY) != 0 && proxyConnection.getReadOnlyState() != isReadOnly) {
+      if ((dirtyBits & DIRTY_BIT_READONLY) != 0 && poolEntry.isReadOnly != isReadOnly) {
          connection.setReadOnly(isReadOnly);
+         poolEntry.isReadOnly = isReadOnly;
          resetBits |= DIRTY_BIT_READONLY;
       }
 
-      if ((dirtyBits & DIRTY_BIT_AUTOCOMMIT) != 0 && proxyConnection.getAutoCommitState() != isAutoCommit) {
+      if ((dirtyBits & DIRTY_BIT_AUTOCOMMIT) != 0 && poolEntry.isAutoCommit != isAutoCommit) {
          connection.setAutoCommit(isAutoCommit);
+         poolEntry.isAutoCommit = isAutoCommit;
          resetBits |= DIRTY_BIT_AUTOCOMMIT;
       }
 
-      if ((dirtyBits & DIRTY_BIT_ISOLATION) != 0 && proxyConnection.getTransactionIsolationState() != transactionIsolation) {
+      if ((dirtyBits & DIRTY_BIT_ISOLATION) != 0 && poolEntry.transactionIsolation != transactionIsolation) {
          connection.setTransactionIsolation(transactionIsolation);
+         poolEntry.transactionIsolation = transactionIsolation;
          resetBits |= DIRTY_BIT_ISOLATION;
       }
 
       if ((dirtyBits & DIRTY_BIT_CATALOG) != 0) {
-         final String currentCatalog = proxyConnection.getCatalogState();
+         final String currentCatalog = poolEntry.catalog;
          if ((currentCatalog != null && !currentCatalog.equals(catalog)) || (currentCatalog == null && catalog != null)) {
             connection.setCatalog(catalog);
+            poolEntry.catalog = catalog;
             resetBits |= DIRTY_BIT_CATALOG;
          }
       }
 
-      if ((dirtyBits & DIRTY_BIT_NETTIMEOUT) != 0 && proxyConnection.getNetworkTimeoutState() != networkTimeout) {
+      if ((dirtyBits & DIRTY_BIT_NETTIMEOUT) != 0 && poolEntry.networkTimeout != networkTimeout) {
          setNetworkTimeout(connection, networkTimeout);
+         poolEntry.networkTimeout = networkTimeout;
          resetBits |= DIRTY_BIT_NETTIMEOUT;
       }
       
@@ -317,10 +436,12 @@ abstract class PoolBase
          connection = (username == null) ? dataSource.getConnection() : dataSource.getConnection(username, password);
          setupConnection(connection);
          lastConnectionFailure.set(null);
+         consecutiveConnectionFailures.set(0);
          return connection;
       }
       catch (Exception e) {
          lastConnectionFailure.set(e);
+         consecutiveConnectionFailures.incrementAndGet();
          quietlyCloseConnection(connection, "(exception during connection creation)");
          throw e;
       }
@@ -334,14 +455,24 @@ abstract class PoolBase
     */
    private void setupConnection(final Connection connection) throws SQLException
    {
-      networkTimeout = getAndSetNetworkTimeout(connection, connectionTimeout);
+      // The driver defaults are the same for every connection, so they are only probed once
+      if (networkTimeout == UNINITIALIZED) {
+         networkTimeout = getAndSetNetworkTimeout(connection, connectionTimeout);
+      }
+      else {
+         setNetworkTimeout(connection, connectionTimeout);
+      }
 
       checkValidationMode(connection);
 
       connection.setAutoCommit(isAutoCommit);
       connection.setReadOnly(isReadOnly);
 
-      final int defaultLevel = connection.getTransactionIsolation();
+      if (defaultTransactionIsolation == UNINITIALIZED) {
+         defaultTransactionIsolation = connection.getTransactionIsolation();
+      }
+
+      final int defaultLevel = defaultTransactionIsolation;
       transactionIsolation = (transactionIsolation < 0 || defaultLevel == Connection.TRANSACTION_NONE)
                            ? defaultLevel
                            : transactionIsolation;
@@ -394,7 +525,7 @@ abstract class PoolBase
     * @param statement a statement to set the query timeout on
     * @param timeoutSec the number of seconds before timeout
     */
-   private void setQueryTimeout(final Statement statement, final int timeoutSec)
+   void setQueryTimeout(final Statement statement, final int timeoutSec)
    {
       if (isQueryTimeoutSupported != FALSE) {
          try {
@@ -554,6 +685,19 @@ abstract class PoolBase
       return sb.toString();
    }
 
+   private static SQLExceptionProfile detectExceptionProfile(final HikariConfig config)
+   {
+      String className = config.getDriverClassName();
+      if (config.getDataSource() != null) {
+         className = config.getDataSource().getClass().getName();
+      }
+      else if (config.getDataSourceClassName() != null) {
+         className = config.getDataSourceClassName();
+      }
+
+      return SQLExceptionProfile.detect(config.getJdbcUrl(), className);
+   }
+
    static class MetricsTrackerDelegate implements AutoCloseable
    {
       final MetricsTracker tracker;
@@ -589,6 +733,41 @@ abstract class PoolBase
          poolEntry.lastBorrowed = now;
          tracker.recordConnectionAcquiredNanos(ClockSource.INSTANCE.elapsedNanos(startTime, now));
       }
+
+      void recordPoolWarmup(final long startTime)
+      {
+         tracker.recordPoolWarmupMillis(ClockSource.INSTANCE.elapsedMillis(startTime));
+      }
+
+      void recordLaneBorrowStats(final String laneName, final long startTime)
+      {
+         tracker.recordLaneAcquiredNanos(laneName, ClockSource.INSTANCE.elapsedNanos(startTime));
+      }
+
+      void recordLaneTimeout(final String laneName)
+      {
+         tracker.recordLaneTimeout(laneName);
+      }
+
+      void recordTransactionRetry()
+      {
+         tracker.recordTransactionRetry();
+      }
+
+      void recordTransactionRetriesExhausted()
+      {
+         tracker.recordTransactionRetriesExhausted();
+      }
+
+      void recordBulkLoadBatch(final int rows, final long startTime)
+      {
+         tracker.recordBulkLoadBatch(rows, ClockSource.INSTANCE.elapsedNanos(startTime));
+      }
+
+      void recordBulkLoadRetry()
+      {
+         tracker.recordBulkLoadRetry();
+      }
    }
 
    static final class NopMetricsTrackerDelegate extends MetricsTrackerDelegate
@@ -610,5 +789,47 @@ abstract class PoolBase
       {
          // no-op
       }
+
+      @Override
+      void recordPoolWarmup(final long startTime)
+      {
+         // no-op
+      }
+
+      @Override
+      void recordLaneBorrowStats(final String laneName, final long startTime)
+      {
+         // no-op
+      }
+
+      @Override
+      void recordLaneTimeout(final String laneName)
+      {
+         // no-op
+      }
+
+      @Override
+      void recordTransactionRetry()
+      {
+         // no-op
+      }
+
+      @Override
+      void recordTransactionRetriesExhausted()
+      {
+         // no-op
+      }
+
+      @Override
+      void recordBulkLoadBatch(final int rows, final long startTime)
+      {
+         // no-op
+      }
+
+      @Override
+      void recordBulkLoadRetry()
+      {
+         // no-op
+      }
    }
 }
@@ -15,11 +15,14 @@
  */
 package com.zaxxer.hikari.pool;
 
+import static com.zaxxer.hikari.pool.ProxyConnection.DIRTY_BIT_CATALOG;
+
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Comparator;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
@@ -27,7 +30,6 @@ import org.slf4j.LoggerFactory;
 
 import com.zaxxer.hikari.util.ClockSource;
 import com.zaxxer.hikari.util.ConcurrentBag.IConcurrentBagEntry;
-import com.zaxxer.hikari.util.FastList;
 
 /**
  * Entry used in the ConcurrentBag to track Connection instances.
@@ -42,11 +44,28 @@ final class PoolEntry implements IConcurrentBagEntry
    Connection connection;
    long lastAccessed;
    long lastBorrowed;
+   boolean isOverflow;
+   BorrowLanes.Lane borrowLane;
+
+   // Known server-side session state of the physical connection, valid for the states in knownStates
+   int knownStates;
+   boolean isAutoCommit;
+   boolean isReadOnly;
+   int transactionIsolation;
+   int networkTimeout;
+   String catalog;
+   String schema;
+
+   // Affinity key of the last borrower, and the states whose reset was deferred until a borrower with another key
+   String affinityKey;
+   int deferredResetBits;
+
    private volatile boolean evict;
 
-   private final FastList<Statement> openStatements;
+   private final StatementTracker openStatements;
    private final HikariPool hikariPool;
    private final AtomicInteger state;
+   private final AtomicBoolean refreshing;
 
    private volatile ScheduledFuture<?> endOfLife;
 
@@ -65,8 +84,9 @@ final class PoolEntry implements IConcurrentBagEntry
       this.connection = connection;
       this.hikariPool = (HikariPool) pool;
       this.state = new AtomicInteger(STATE_NOT_IN_USE);
+      this.refreshing = new AtomicBoolean();
       this.lastAccessed = ClockSource.INSTANCE.currentTime();
-      this.openStatements = new FastList<>(Statement.class, 16);
+      this.openStatements = (hikariPool.isTrackStatements ? new StatementTracker(16) : null);
    }
 
    /**
@@ -93,9 +113,64 @@ final class PoolEntry implements IConcurrentBagEntry
       return ProxyFactory.getProxyConnection(this, connection, openStatements, leakTask, now);
    }
 
-   void resetConnectionState(final ProxyConnection proxyConnection, final int dirtyBits) throws SQLException
+   void resetConnectionState(final int dirtyBits) throws SQLException
+   {
+      int resetBits = dirtyBits;
+      if (affinityKey != null) {
+         // the next borrower with the same key most likely wants the same catalog
+         deferredResetBits |= (resetBits & DIRTY_BIT_CATALOG);
+         resetBits &= ~DIRTY_BIT_CATALOG;
+      }
+
+      if (resetBits != 0) {
+         hikariPool.resetConnectionState(this, resetBits);
+      }
+   }
+
+   int getBatchCoalescingSize()
+   {
+      return hikariPool.batchCoalescingSize;
+   }
+
+   boolean isBatchCoalescingStrict()
+   {
+      return hikariPool.isBatchCoalescingStrict;
+   }
+
+   ResultCache getResultCache()
+   {
+      return hikariPool.resultCache;
+   }
+
+   FetchSizeAdvisor getFetchSizeAdvisor()
+   {
+      return hikariPool.fetchSizeAdvisor;
+   }
+
+   int getQueryTimeout()
+   {
+      return hikariPool.queryTimeout;
+   }
+
+   void setQueryTimeout(final Statement statement, final int timeoutSec)
+   {
+      hikariPool.setQueryTimeout(statement, timeoutSec);
+   }
+
+   SQLException findBrokenException(final SQLException e)
+   {
+      return hikariPool.findBrokenException(e);
+   }
+
+   /**
+    * Determine whether the specified server-side session state of the connection is known.
+    *
+    * @param stateBit one of the ProxyConnection DIRTY_BIT_* constants
+    * @return true if the cached value of the state reflects the connection
+    */
+   boolean isKnownState(final int stateBit)
    {
-      hikariPool.resetConnectionState(connection, proxyConnection, dirtyBits);
+      return (knownStates & stateBit) != 0;
    }
 
    String getPoolName()
@@ -113,9 +188,19 @@ final class PoolEntry implements IConcurrentBagEntry
       this.evict = true;
    }
 
+   /**
+    * Mark this entry as being replaced by a rolling refresh.
+    *
+    * @return true if this call marked the entry, false if a refresh was already pending
+    */
+   boolean markRefreshing()
+   {
+      return refreshing.compareAndSet(false, true);
+   }
+
    void evict(final String closureReason)
    {
-      hikariPool.closeConnection(this, closureReason);
+      hikariPool.closeBrokenConnection(this, closureReason);
    }
 
    /** Returns millis since lastBorrowed */
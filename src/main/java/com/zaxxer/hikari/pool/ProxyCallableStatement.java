@@ -28,6 +28,7 @@ public abstract class ProxyCallableStatement extends ProxyPreparedStatement impl
    protected ProxyCallableStatement(ProxyConnection connection, CallableStatement statement)
    {
       super(connection, statement);
+      this.isCoalescingDisabled = true; // OUT parameters must be read after each execution
    }
 
    // **********************************************************************
@@ -26,15 +26,13 @@ import java.sql.SQLException;
 import java.sql.Savepoint;
 import java.sql.Statement;
 import java.sql.Wrapper;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Objects;
 import java.util.concurrent.Executor;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.zaxxer.hikari.util.ClockSource;
-import com.zaxxer.hikari.util.FastList;
 
 /**
  * This is the proxy class for java.sql.Connection.
@@ -43,47 +41,36 @@ import com.zaxxer.hikari.util.FastList;
  */
 public abstract class ProxyConnection implements Connection
 {
-   static final int DIRTY_BIT_READONLY   = 0b00001;
-   static final int DIRTY_BIT_AUTOCOMMIT = 0b00010;
-   static final int DIRTY_BIT_ISOLATION  = 0b00100;
-   static final int DIRTY_BIT_CATALOG    = 0b01000;
-   static final int DIRTY_BIT_NETTIMEOUT = 0b10000;
+   static final int DIRTY_BIT_READONLY   = 0b000001;
+   static final int DIRTY_BIT_AUTOCOMMIT = 0b000010;
+   static final int DIRTY_BIT_ISOLATION  = 0b000100;
+   static final int DIRTY_BIT_CATALOG    = 0b001000;
+   static final int DIRTY_BIT_NETTIMEOUT = 0b010000;
+   static final int DIRTY_BIT_SCHEMA     = 0b100000;
    
    private static final Logger LOGGER;
-   private static final Set<String> SQL_ERRORS;
    private static final ClockSource clockSource;
 
    protected Connection delegate;
 
    private final ProxyLeakTask leakTask;
    private final PoolEntry poolEntry;
-   private final FastList<Statement> openStatements;
+   private final StatementTracker openStatements;
    
    private int dirtyBits;
    private long lastAccess;
    private boolean isCommitStateDirty;
-
-   private boolean isAutoCommit;
-   private int networkTimeout;
-   private int transactionIsolation;
-   private String dbcatalog;
-   private boolean isReadOnly;
+   private ProxyPreparedStatement coalescingStatement;
+   private boolean hasDeadline;
+   private long deadline;
 
    // static initializer
    static {
       LOGGER = LoggerFactory.getLogger(ProxyConnection.class);
       clockSource = ClockSource.INSTANCE;
-
-      SQL_ERRORS = new HashSet<>();
-      SQL_ERRORS.add("57P01"); // ADMIN SHUTDOWN
-      SQL_ERRORS.add("57P02"); // CRASH SHUTDOWN
-      SQL_ERRORS.add("57P03"); // CANNOT CONNECT NOW
-      SQL_ERRORS.add("01002"); // SQL92 disconnect error
-      SQL_ERRORS.add("JZ0C0"); // Sybase disconnect error
-      SQL_ERRORS.add("JZ0C1"); // Sybase disconnect error
    }
 
-   protected ProxyConnection(final PoolEntry poolEntry, final Connection connection, final FastList<Statement> openStatements, final ProxyLeakTask leakTask, final long now) {
+   protected ProxyConnection(final PoolEntry poolEntry, final Connection connection, final StatementTracker openStatements, final ProxyLeakTask leakTask, final long now) {
       this.poolEntry = poolEntry;
       this.delegate = connection;
       this.openStatements = openStatements;
@@ -102,81 +89,131 @@ public abstract class ProxyConnection implements Connection
    }
 
    // ***********************************************************************
-   //                     Connection State Accessors
+   //                      IHikariConnectionProxy methods
    // ***********************************************************************
 
-   final boolean getAutoCommitState()
+   /** {@inheritDoc} */
+   final PoolEntry getPoolEntry()
    {
-      return isAutoCommit;
+      return poolEntry;
    }
 
-   final String getCatalogState()
+   /** {@inheritDoc} */
+   final SQLException checkException(final SQLException sqle)
    {
-      return dbcatalog;
+      final SQLException broken = (delegate != ClosedConnection.CLOSED_CONNECTION ? poolEntry.findBrokenException(sqle) : null);
+      if (broken != null) {
+         LOGGER.warn("{} - Connection {} marked as broken because of SQLSTATE({}), ErrorCode({})",
+                     poolEntry.getPoolName(), delegate, broken.getSQLState(), broken.getErrorCode(), sqle);
+         leakTask.cancel();
+         delegate = ClosedConnection.CLOSED_CONNECTION;
+         poolEntry.evict("(connection broken)");
+      }
+      return sqle;
    }
 
-   final int getTransactionIsolationState()
+   /**
+    * Track a statement created through this connection, so it is closed with the connection.
+    *
+    * @return the slot handle of the statement, or -1 if statements are not tracked
+    */
+   final int trackStatement(final Statement statement)
    {
-      return transactionIsolation;
+      return (openStatements != null ? openStatements.track(statement) : -1);
    }
 
-   final boolean getReadOnlyState()
+   /** {@inheritDoc} */
+   final void untrackStatement(final int slot, final Statement statement)
    {
-      return isReadOnly;
+      if (slot >= 0) {
+         openStatements.untrack(slot, statement);
+      }
    }
 
-   final int getNetworkTimeoutState()
+   /** {@inheritDoc} */
+   final void markCommitStateDirty()
    {
-      return networkTimeout;
+      if (poolEntry.isAutoCommit) {
+         lastAccess = clockSource.currentTime();         
+      }
+      else {
+         isCommitStateDirty = true;
+      }
    }
 
-   // ***********************************************************************
-   //                      IHikariConnectionProxy methods
-   // ***********************************************************************
+   /**
+    * Determine whether executeUpdate() calls on the statement may currently be coalesced into a batch.
+    */
+   final boolean isCoalescingAllowed()
+   {
+      return !poolEntry.isAutoCommit && delegate != ClosedConnection.CLOSED_CONNECTION;
+   }
 
-   /** {@inheritDoc} */
-   final PoolEntry getPoolEntry()
+   /**
+    * Set the deadline of this borrow, to which the query timeouts of statements are clamped.
+    *
+    * @param deadline the deadline in {@link ClockSource} time
+    */
+   final void setDeadline(final long deadline)
    {
-      return poolEntry;
+      this.deadline = deadline;
+      this.hasDeadline = true;
    }
 
-   /** {@inheritDoc} */
-   final SQLException checkException(final SQLException sqle)
+   final boolean hasDeadline()
    {
-      String sqlState = sqle.getSQLState();
-      if (sqlState != null) {
-         boolean isForceClose = sqlState.startsWith("08") || SQL_ERRORS.contains(sqlState);
-         if (isForceClose && delegate != ClosedConnection.CLOSED_CONNECTION) {
-            LOGGER.warn("{} - Connection {} marked as broken because of SQLSTATE({}), ErrorCode({})",
-                        poolEntry.getPoolName(), delegate, sqlState, sqle.getErrorCode(), sqle);
-            leakTask.cancel();
-            delegate = ClosedConnection.CLOSED_CONNECTION;
-            poolEntry.evict("(connection broken)");
-         }
-         else {
-            SQLException nse = sqle.getNextException();
-            if (nse != null && nse != sqle) {
-               checkException(nse);
-            }
-         }
-      }
-      return sqle;
+      return hasDeadline;
    }
 
-   /** {@inheritDoc} */
-   final void untrackStatement(final Statement statement)
+   /**
+    * Get the number of milliseconds remaining until the deadline of this borrow.
+    */
+   final long getRemainingMillis()
    {
-      openStatements.remove(statement);
+      return clockSource.elapsedMillis(clockSource.currentTime(), deadline);
    }
 
-   /** {@inheritDoc} */
-   final void markCommitStateDirty()
+   /**
+    * Determine whether query results may currently be served from the result cache, which is
+    * bypassed inside transactions that may write, and while coalesced updates are pending, as the
+    * query must see them.
+    */
+   final boolean isResultCacheAllowed()
    {
-      if (isAutoCommit) {
-         lastAccess = clockSource.currentTime();         
+      return coalescingStatement == null && (poolEntry.isAutoCommit || poolEntry.isReadOnly);
+   }
+
+   /**
+    * Make the specified statement the one with a pending coalesced batch, flushing the batch of any
+    * other statement first so that statement execution order is preserved.
+    */
+   final void beginCoalescing(final ProxyPreparedStatement statement) throws SQLException
+   {
+      if (coalescingStatement != statement) {
+         flushCoalescedBatch();
+         coalescingStatement = statement;
       }
-      else {
-         isCommitStateDirty = true;
+   }
+
+   /**
+    * Execute the pending coalesced batch, if any.
+    */
+   final void flushCoalescedBatch() throws SQLException
+   {
+      if (coalescingStatement != null) {
+         final ProxyPreparedStatement statement = coalescingStatement;
+         coalescingStatement = null;
+         statement.executeCoalescedBatch();
+      }
+   }
+
+   /**
+    * Execute the pending coalesced batch, if it belongs to the specified statement.
+    */
+   final void flushCoalescedBatch(final ProxyPreparedStatement statement) throws SQLException
+   {
+      if (coalescingStatement == statement) {
+         flushCoalescedBatch();
       }
    }
 
@@ -184,16 +221,24 @@ public abstract class ProxyConnection implements Connection
    //                        Internal methods
    // ***********************************************************************
 
-   private final <T extends Statement> T trackStatement(final T statement)
+   private final <T extends Statement> T trackFetchSize(final T statement, final String sql)
    {
-      openStatements.add(statement);
+      ((ProxyStatement) statement).trackFetchSize(sql);
+      return statement;
+   }
 
+   private final PreparedStatement enableResultCache(final PreparedStatement statement, final String sql)
+   {
+      final ResultCache resultCache = poolEntry.getResultCache();
+      if (resultCache != null && resultCache.isCacheable(sql)) {
+         ((ProxyPreparedStatement) statement).enableResultCache(resultCache, sql);
+      }
       return statement;
    }
 
    private final void closeStatements()
    {
-      final int size = openStatements.size();
+      final int size = (openStatements != null ? openStatements.size() : 0);
       if (size > 0) {
          for (int i = 0; i < size; i++) {
             try {
@@ -226,15 +271,15 @@ public abstract class ProxyConnection implements Connection
          leakTask.cancel();
 
          try {
-            closeStatements();
-            if (isCommitStateDirty && !isAutoCommit) {
+            coalescingStatement = null; // uncommitted work is discarded on close
+            if (isCommitStateDirty && !poolEntry.isAutoCommit) {
                delegate.rollback();
                lastAccess = clockSource.currentTime();
                LOGGER.debug("{} - Executed rollback on connection {} due to dirty commit state on close().", poolEntry.getPoolName(), delegate);
             }
 
-            if (dirtyBits != 0) {
-               poolEntry.resetConnectionState(this, dirtyBits);
+            if (dirtyBits != 0 && !poolEntry.isMarkedEvicted()) {
+               poolEntry.resetConnectionState(dirtyBits); // evicted connections are closed, not reset
                lastAccess = clockSource.currentTime();
             }
 
@@ -264,90 +309,115 @@ public abstract class ProxyConnection implements Connection
    @Override
    public Statement createStatement() throws SQLException
    {
-      return ProxyFactory.getProxyStatement(this, trackStatement(delegate.createStatement()));
+      return ProxyFactory.getProxyStatement(this, delegate.createStatement());
    }
 
    /** {@inheritDoc} */
    @Override
    public Statement createStatement(int resultSetType, int concurrency) throws SQLException
    {
-      return ProxyFactory.getProxyStatement(this, trackStatement(delegate.createStatement(resultSetType, concurrency)));
+      return ProxyFactory.getProxyStatement(this, delegate.createStatement(resultSetType, concurrency));
    }
 
    /** {@inheritDoc} */
    @Override
    public Statement createStatement(int resultSetType, int concurrency, int holdability) throws SQLException
    {
-      return ProxyFactory.getProxyStatement(this, trackStatement(delegate.createStatement(resultSetType, concurrency, holdability)));
+      return ProxyFactory.getProxyStatement(this, delegate.createStatement(resultSetType, concurrency, holdability));
    }
 
    /** {@inheritDoc} */
    @Override
    public CallableStatement prepareCall(String sql) throws SQLException
    {
-      return ProxyFactory.getProxyCallableStatement(this, trackStatement(delegate.prepareCall(sql)));
+      return trackFetchSize(ProxyFactory.getProxyCallableStatement(this, delegate.prepareCall(sql)), sql);
    }
 
    /** {@inheritDoc} */
    @Override
    public CallableStatement prepareCall(String sql, int resultSetType, int concurrency) throws SQLException
    {
-      return ProxyFactory.getProxyCallableStatement(this, trackStatement(delegate.prepareCall(sql, resultSetType, concurrency)));
+      return trackFetchSize(ProxyFactory.getProxyCallableStatement(this, delegate.prepareCall(sql, resultSetType, concurrency)), sql);
    }
 
    /** {@inheritDoc} */
    @Override
    public CallableStatement prepareCall(String sql, int resultSetType, int concurrency, int holdability) throws SQLException
    {
-      return ProxyFactory.getProxyCallableStatement(this, trackStatement(delegate.prepareCall(sql, resultSetType, concurrency, holdability)));
+      return trackFetchSize(ProxyFactory.getProxyCallableStatement(this, delegate.prepareCall(sql, resultSetType, concurrency, holdability)), sql);
    }
 
    /** {@inheritDoc} */
    @Override
    public PreparedStatement prepareStatement(String sql) throws SQLException
    {
-      return ProxyFactory.getProxyPreparedStatement(this, trackStatement(delegate.prepareStatement(sql)));
+      return enableResultCache(trackFetchSize(ProxyFactory.getProxyPreparedStatement(this, delegate.prepareStatement(sql)), sql), sql);
    }
 
    /** {@inheritDoc} */
    @Override
    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException
    {
-      return ProxyFactory.getProxyPreparedStatement(this, trackStatement(delegate.prepareStatement(sql, autoGeneratedKeys)));
+      final PreparedStatement statement = ProxyFactory.getProxyPreparedStatement(this, delegate.prepareStatement(sql, autoGeneratedKeys));
+      if (autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS) {
+         ((ProxyPreparedStatement) statement).isCoalescingDisabled = true;
+      }
+      return statement;
    }
 
    /** {@inheritDoc} */
    @Override
    public PreparedStatement prepareStatement(String sql, int resultSetType, int concurrency) throws SQLException
    {
-      return ProxyFactory.getProxyPreparedStatement(this, trackStatement(delegate.prepareStatement(sql, resultSetType, concurrency)));
+      return trackFetchSize(ProxyFactory.getProxyPreparedStatement(this, delegate.prepareStatement(sql, resultSetType, concurrency)), sql);
    }
 
    /** {@inheritDoc} */
    @Override
    public PreparedStatement prepareStatement(String sql, int resultSetType, int concurrency, int holdability) throws SQLException
    {
-      return ProxyFactory.getProxyPreparedStatement(this, trackStatement(delegate.prepareStatement(sql, resultSetType, concurrency, holdability)));
+      return trackFetchSize(ProxyFactory.getProxyPreparedStatement(this, delegate.prepareStatement(sql, resultSetType, concurrency, holdability)), sql);
    }
 
    /** {@inheritDoc} */
    @Override
    public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException
    {
-      return ProxyFactory.getProxyPreparedStatement(this, trackStatement(delegate.prepareStatement(sql, columnIndexes)));
+      final PreparedStatement statement = ProxyFactory.getProxyPreparedStatement(this, delegate.prepareStatement(sql, columnIndexes));
+      ((ProxyPreparedStatement) statement).isCoalescingDisabled = true;
+      return statement;
    }
 
    /** {@inheritDoc} */
    @Override
    public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException
    {
-      return ProxyFactory.getProxyPreparedStatement(this, trackStatement(delegate.prepareStatement(sql, columnNames)));
+      final PreparedStatement statement = ProxyFactory.getProxyPreparedStatement(this, delegate.prepareStatement(sql, columnNames));
+      ((ProxyPreparedStatement) statement).isCoalescingDisabled = true;
+      return statement;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public Savepoint setSavepoint() throws SQLException
+   {
+      flushCoalescedBatch();
+      return delegate.setSavepoint();
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public Savepoint setSavepoint(String name) throws SQLException
+   {
+      flushCoalescedBatch();
+      return delegate.setSavepoint(name);
    }
 
    /** {@inheritDoc} */
    @Override
    public void commit() throws SQLException
    {
+      flushCoalescedBatch();
       delegate.commit();
       isCommitStateDirty = false;
       lastAccess = clockSource.currentTime();
@@ -357,6 +427,11 @@ public abstract class ProxyConnection implements Connection
    @Override
    public void rollback() throws SQLException
    {
+      if (coalescingStatement != null) {
+         final ProxyPreparedStatement statement = coalescingStatement;
+         coalescingStatement = null;
+         statement.discardCoalescedBatch(); // the buffered updates would be rolled back anyway
+      }
       delegate.rollback();
       isCommitStateDirty = false;
       lastAccess = clockSource.currentTime();
@@ -366,6 +441,7 @@ public abstract class ProxyConnection implements Connection
    @Override
    public void rollback(Savepoint savepoint) throws SQLException
    {
+      flushCoalescedBatch();
       delegate.rollback(savepoint);
       isCommitStateDirty = false;
       lastAccess = clockSource.currentTime();
@@ -375,45 +451,72 @@ public abstract class ProxyConnection implements Connection
    @Override
    public void setAutoCommit(boolean autoCommit) throws SQLException
    {
-      delegate.setAutoCommit(autoCommit);
-      isAutoCommit = autoCommit;
-      dirtyBits |= DIRTY_BIT_AUTOCOMMIT;
+      if (!poolEntry.isKnownState(DIRTY_BIT_AUTOCOMMIT) || poolEntry.isAutoCommit != autoCommit) {
+         flushCoalescedBatch();
+         delegate.setAutoCommit(autoCommit);
+         poolEntry.isAutoCommit = autoCommit;
+         poolEntry.knownStates |= DIRTY_BIT_AUTOCOMMIT;
+         dirtyBits |= DIRTY_BIT_AUTOCOMMIT;
+      }
    }
 
    /** {@inheritDoc} */
    @Override
    public void setReadOnly(boolean readOnly) throws SQLException
    {
-      delegate.setReadOnly(readOnly);
-      isReadOnly = readOnly;
-      dirtyBits |= DIRTY_BIT_READONLY;
+      if (!poolEntry.isKnownState(DIRTY_BIT_READONLY) || poolEntry.isReadOnly != readOnly) {
+         delegate.setReadOnly(readOnly);
+         poolEntry.isReadOnly = readOnly;
+         poolEntry.knownStates |= DIRTY_BIT_READONLY;
+         dirtyBits |= DIRTY_BIT_READONLY;
+      }
    }
 
    /** {@inheritDoc} */
    @Override
    public void setTransactionIsolation(int level) throws SQLException
    {
-      delegate.setTransactionIsolation(level);
-      transactionIsolation = level;
-      dirtyBits |= DIRTY_BIT_ISOLATION;
+      if (!poolEntry.isKnownState(DIRTY_BIT_ISOLATION) || poolEntry.transactionIsolation != level) {
+         delegate.setTransactionIsolation(level);
+         poolEntry.transactionIsolation = level;
+         poolEntry.knownStates |= DIRTY_BIT_ISOLATION;
+         dirtyBits |= DIRTY_BIT_ISOLATION;
+      }
    }
 
    /** {@inheritDoc} */
    @Override
    public void setCatalog(String catalog) throws SQLException
    {
-      delegate.setCatalog(catalog);
-      dbcatalog = catalog;
-      dirtyBits |= DIRTY_BIT_CATALOG;
+      if (!poolEntry.isKnownState(DIRTY_BIT_CATALOG) || !Objects.equals(poolEntry.catalog, catalog)) {
+         delegate.setCatalog(catalog);
+         poolEntry.catalog = catalog;
+         poolEntry.knownStates |= DIRTY_BIT_CATALOG;
+         dirtyBits |= DIRTY_BIT_CATALOG;
+      }
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setSchema(String schema) throws SQLException
+   {
+      if (!poolEntry.isKnownState(DIRTY_BIT_SCHEMA) || !Objects.equals(poolEntry.schema, schema)) {
+         delegate.setSchema(schema);
+         poolEntry.schema = schema;
+         poolEntry.knownStates |= DIRTY_BIT_SCHEMA;
+      }
    }
 
    /** {@inheritDoc} */
    @Override
    public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException
    {
-      delegate.setNetworkTimeout(executor, milliseconds);
-      networkTimeout = milliseconds;
-      dirtyBits |= DIRTY_BIT_NETTIMEOUT;
+      if (!poolEntry.isKnownState(DIRTY_BIT_NETTIMEOUT) || poolEntry.networkTimeout != milliseconds) {
+         delegate.setNetworkTimeout(executor, milliseconds);
+         poolEntry.networkTimeout = milliseconds;
+         poolEntry.knownStates |= DIRTY_BIT_NETTIMEOUT;
+         dirtyBits |= DIRTY_BIT_NETTIMEOUT;
+      }
    }
 
    /** {@inheritDoc} */
@@ -22,8 +22,6 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Statement;
 
-import com.zaxxer.hikari.util.FastList;
-
 /**
  * A factory class that produces proxies around instances of the standard
  * JDBC interfaces.
@@ -47,7 +45,7 @@ public final class ProxyFactory
     * @param now current timestamp in milliseconds
     * @return a proxy that wraps the specified {@link Connection}
     */
-   static ProxyConnection getProxyConnection(final PoolEntry poolEntry, final Connection connection, final FastList<Statement> openStatements, final ProxyLeakTask leakTask, final long now)
+   static ProxyConnection getProxyConnection(final PoolEntry poolEntry, final Connection connection, final StatementTracker openStatements, final ProxyLeakTask leakTask, final long now)
    {
       // Body is replaced (injected) by JavassistProxyFactory
       throw new IllegalStateException("You need to run the CLI build and you need target/classes in your classpath to run.");
@@ -16,9 +16,30 @@
 
 package com.zaxxer.hikari.pool;
 
+import static com.zaxxer.hikari.pool.ProxyConnection.DIRTY_BIT_CATALOG;
+import static com.zaxxer.hikari.pool.ProxyConnection.DIRTY_BIT_SCHEMA;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.NClob;
 import java.sql.PreparedStatement;
+import java.sql.Ref;
 import java.sql.ResultSet;
+import java.sql.RowId;
 import java.sql.SQLException;
+import java.sql.SQLType;
+import java.sql.SQLXML;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Calendar;
 
 /**
  * This is the proxy class for java.sql.PreparedStatement.
@@ -27,9 +48,162 @@ import java.sql.SQLException;
  */
 public abstract class ProxyPreparedStatement extends ProxyStatement implements PreparedStatement
 {
+   private static final int[] NO_UPDATE_COUNTS = new int[0];
+   private static final Object[] NO_PARAMETERS = new Object[0];
+
+   boolean isCoalescingDisabled;
+
+   private final int coalescingSize;
+   private int coalescedCount;
+   private int[] updateCounts;
+   private boolean hasCoalesced;
+
+   private ResultCache resultCache;
+   private String cacheSql;
+   private Object[] parameters;
+   private int parameterCount;
+
    protected ProxyPreparedStatement(ProxyConnection connection, PreparedStatement statement)
    {
       super(connection, statement);
+      final PoolEntry poolEntry = connection.getPoolEntry();
+      // In strict mode every executeUpdate() reports its real update count, so none is coalesced
+      this.coalescingSize = (poolEntry.isBatchCoalescingStrict() ? 0 : poolEntry.getBatchCoalescingSize());
+   }
+
+   /**
+    * Serve <code>executeQuery()</code> of this statement from the specified result cache, called by the
+    * connection when the SQL is cacheable.
+    */
+   final void enableResultCache(final ResultCache resultCache, final String sql)
+   {
+      this.resultCache = resultCache;
+      this.cacheSql = sql;
+      this.parameters = NO_PARAMETERS;
+   }
+
+   /**
+    * Record the key of a bound parameter value as part of the result cache key.
+    */
+   private void bindParameter(final int parameterIndex, final Object value)
+   {
+      if (resultCache != null) {
+         bindParameterKey(parameterIndex, ResultCache.keyOf(value));
+      }
+   }
+
+   /**
+    * Record the key of a bound parameter value, qualified by a further argument of its setter.
+    */
+   private void bindParameter(final int parameterIndex, final Object value, final Object qualifier)
+   {
+      if (resultCache != null) {
+         bindParameterKey(parameterIndex, ResultCache.keyOf(value, qualifier));
+      }
+   }
+
+   private void bindParameterKey(final int parameterIndex, final Object key)
+   {
+      if (parameterIndex > 0) {
+         if (parameterIndex > parameters.length) {
+            parameters = Arrays.copyOf(parameters, Math.max(parameterIndex, parameters.length * 2));
+         }
+         parameters[parameterIndex - 1] = key;
+         parameterCount = Math.max(parameterCount, parameterIndex);
+      }
+   }
+
+   /**
+    * Record a bound parameter value that cannot be keyed, such as a stream or LOB, so that the
+    * execution bypasses the result cache.
+    */
+   private void bindUnkeyable(final int parameterIndex)
+   {
+      if (resultCache != null) {
+         bindParameterKey(parameterIndex, ResultCache.UNKEYABLE);
+      }
+   }
+
+   private static Object sqlTypeKey(final SQLType sqlType, final int scaleOrLength)
+   {
+      return (sqlType != null ? new Object[] { sqlType.getVendor(), sqlType.getVendorTypeNumber(), scaleOrLength } : scaleOrLength);
+   }
+
+   /**
+    * Get the result cache key of the current execution, or null if a bound parameter cannot be keyed.
+    */
+   private ResultCache.Key getResultCacheKey()
+   {
+      final Object[] parameterKeys = Arrays.copyOf(parameters, parameterCount);
+      for (Object parameterKey : parameterKeys) {
+         if (parameterKey == ResultCache.UNKEYABLE) {
+            return null;
+         }
+      }
+
+      final PoolEntry poolEntry = connection.getPoolEntry();
+      final String catalog = (poolEntry.isKnownState(DIRTY_BIT_CATALOG) ? poolEntry.catalog : null);
+      final String schema = (poolEntry.isKnownState(DIRTY_BIT_SCHEMA) ? poolEntry.schema : null);
+      return new ResultCache.Key(cacheSql, catalog, schema, maxRows, maxFieldSize, parameterKeys);
+   }
+
+   /**
+    * Flush any coalesced <code>executeUpdate()</code> calls of this statement, and return the update
+    * counts of the batch flushed most recently, in execution order.  The counts are cleared on each
+    * flush and returned only once; a subsequent call returns the counts of a later flush, if any.
+    *
+    * @return the update counts, possibly empty
+    * @throws SQLException thrown if the batch fails
+    */
+   public final int[] getCoalescedUpdateCounts() throws SQLException
+   {
+      try {
+         connection.flushCoalescedBatch(this);
+      }
+      catch (SQLException e) {
+         throw checkException(e);
+      }
+
+      final int[] counts = (updateCounts != null ? updateCounts : NO_UPDATE_COUNTS);
+      updateCounts = null;
+      return counts;
+   }
+
+   /**
+    * Execute the batch of coalesced updates, called by the connection when a flush is required.
+    */
+   final void executeCoalescedBatch() throws SQLException
+   {
+      coalescedCount = 0;
+      updateCounts = null;
+      applyQueryTimeout();
+      updateCounts = delegate.executeBatch();
+   }
+
+   /**
+    * Discard the batch of coalesced updates, called by the connection on rollback.
+    */
+   final void discardCoalescedBatch() throws SQLException
+   {
+      coalescedCount = 0;
+      updateCounts = null;
+      delegate.clearBatch();
+   }
+
+   /**
+    * Flush the coalesced updates of this statement before its results are read.
+    *
+    * @return true if the statement has coalesced updates whose results are now in the update counts
+    */
+   private boolean flushBeforeRead() throws SQLException
+   {
+      if (!hasCoalesced) {
+         return false;
+      }
+
+      connection.flushCoalescedBatch(this);
+      hasCoalesced = false;
+      return updateCounts != null && updateCounts.length > 0;
    }
 
    // **********************************************************************
@@ -40,7 +214,7 @@ public abstract class ProxyPreparedStatement extends ProxyStatement implements P
    @Override
    public boolean execute() throws SQLException
    {
-      connection.markCommitStateDirty();
+      beforeExecute();
       return ((PreparedStatement) delegate).execute();
    }
 
@@ -48,24 +222,496 @@ public abstract class ProxyPreparedStatement extends ProxyStatement implements P
    @Override
    public ResultSet executeQuery() throws SQLException
    {
-      connection.markCommitStateDirty();
+      final ResultCache.Key key = (resultCache != null && connection.isResultCacheAllowed() ? getResultCacheKey() : null);
+      if (key != null) {
+         ResultSet resultSet = resultCache.get(key);
+         if (resultSet == null) {
+            beforeExecute();
+            resultSet = resultCache.put(key, ((PreparedStatement) delegate).executeQuery());
+         }
+         return ProxyFactory.getProxyResultSet(connection, this, resultSet);
+      }
+
+      beforeExecute();
+      adviseFetchSize(fetchStats);
       ResultSet resultSet = ((PreparedStatement) delegate).executeQuery();
-      return ProxyFactory.getProxyResultSet(connection, this, resultSet); 
+      return trackRows(ProxyFactory.getProxyResultSet(connection, this, resultSet), fetchStats); 
    }
 
    /** {@inheritDoc} */
    @Override
    public int executeUpdate() throws SQLException
    {
-      connection.markCommitStateDirty();
+      if (coalescingSize > 0 && !isCoalescingDisabled && connection.isCoalescingAllowed()) {
+         connection.beginCoalescing(this);
+         connection.markCommitStateDirty();
+         ((PreparedStatement) delegate).addBatch();
+         hasCoalesced = true;
+         if (++coalescedCount >= coalescingSize) {
+            connection.flushCoalescedBatch();
+         }
+         return Statement.SUCCESS_NO_INFO;
+      }
+
+      beforeExecute();
       return ((PreparedStatement) delegate).executeUpdate();
    }
 
+   /** {@inheritDoc} */
+   @Override
+   public void addBatch() throws SQLException
+   {
+      // Keep the batch of the application apart from coalesced updates, which are never added to it
+      connection.flushCoalescedBatch(this);
+      isCoalescingDisabled = true;
+      ((PreparedStatement) delegate).addBatch();
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public int getUpdateCount() throws SQLException
+   {
+      if (flushBeforeRead()) {
+         return updateCounts[updateCounts.length - 1];
+      }
+      return delegate.getUpdateCount();
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public long getLargeUpdateCount() throws SQLException
+   {
+      if (flushBeforeRead()) {
+         return updateCounts[updateCounts.length - 1];
+      }
+      return delegate.getLargeUpdateCount();
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public ResultSet getGeneratedKeys() throws SQLException
+   {
+      flushBeforeRead();
+      return delegate.getGeneratedKeys();
+   }
+
    /** {@inheritDoc} */
    @Override
    public long executeLargeUpdate() throws SQLException
    {
-      connection.markCommitStateDirty();
+      beforeExecute();
       return ((PreparedStatement) delegate).executeLargeUpdate();
    }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setNull(int parameterIndex, int sqlType) throws SQLException
+   {
+      bindParameter(parameterIndex, null);
+      ((PreparedStatement) delegate).setNull(parameterIndex, sqlType);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException
+   {
+      bindParameter(parameterIndex, null);
+      ((PreparedStatement) delegate).setNull(parameterIndex, sqlType, typeName);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setBoolean(int parameterIndex, boolean x) throws SQLException
+   {
+      bindParameter(parameterIndex, x);
+      ((PreparedStatement) delegate).setBoolean(parameterIndex, x);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setByte(int parameterIndex, byte x) throws SQLException
+   {
+      bindParameter(parameterIndex, x);
+      ((PreparedStatement) delegate).setByte(parameterIndex, x);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setShort(int parameterIndex, short x) throws SQLException
+   {
+      bindParameter(parameterIndex, x);
+      ((PreparedStatement) delegate).setShort(parameterIndex, x);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setInt(int parameterIndex, int x) throws SQLException
+   {
+      bindParameter(parameterIndex, x);
+      ((PreparedStatement) delegate).setInt(parameterIndex, x);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setLong(int parameterIndex, long x) throws SQLException
+   {
+      bindParameter(parameterIndex, x);
+      ((PreparedStatement) delegate).setLong(parameterIndex, x);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setFloat(int parameterIndex, float x) throws SQLException
+   {
+      bindParameter(parameterIndex, x);
+      ((PreparedStatement) delegate).setFloat(parameterIndex, x);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setDouble(int parameterIndex, double x) throws SQLException
+   {
+      bindParameter(parameterIndex, x);
+      ((PreparedStatement) delegate).setDouble(parameterIndex, x);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException
+   {
+      bindParameter(parameterIndex, x);
+      ((PreparedStatement) delegate).setBigDecimal(parameterIndex, x);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setString(int parameterIndex, String x) throws SQLException
+   {
+      bindParameter(parameterIndex, x);
+      ((PreparedStatement) delegate).setString(parameterIndex, x);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setNString(int parameterIndex, String value) throws SQLException
+   {
+      bindParameter(parameterIndex, value);
+      ((PreparedStatement) delegate).setNString(parameterIndex, value);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setBytes(int parameterIndex, byte[] x) throws SQLException
+   {
+      bindParameter(parameterIndex, x);
+      ((PreparedStatement) delegate).setBytes(parameterIndex, x);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setDate(int parameterIndex, Date x) throws SQLException
+   {
+      bindParameter(parameterIndex, x);
+      ((PreparedStatement) delegate).setDate(parameterIndex, x);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setTime(int parameterIndex, Time x) throws SQLException
+   {
+      bindParameter(parameterIndex, x);
+      ((PreparedStatement) delegate).setTime(parameterIndex, x);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException
+   {
+      bindParameter(parameterIndex, x);
+      ((PreparedStatement) delegate).setTimestamp(parameterIndex, x);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setObject(int parameterIndex, Object x) throws SQLException
+   {
+      bindParameter(parameterIndex, x);
+      ((PreparedStatement) delegate).setObject(parameterIndex, x);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException
+   {
+      bindParameter(parameterIndex, x, targetSqlType);
+      ((PreparedStatement) delegate).setObject(parameterIndex, x, targetSqlType);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setDate(int parameterIndex, Date x, Calendar cal) throws SQLException
+   {
+      bindParameter(parameterIndex, x, cal);
+      ((PreparedStatement) delegate).setDate(parameterIndex, x, cal);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setTime(int parameterIndex, Time x, Calendar cal) throws SQLException
+   {
+      bindParameter(parameterIndex, x, cal);
+      ((PreparedStatement) delegate).setTime(parameterIndex, x, cal);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal) throws SQLException
+   {
+      bindParameter(parameterIndex, x, cal);
+      ((PreparedStatement) delegate).setTimestamp(parameterIndex, x, cal);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException
+   {
+      bindParameter(parameterIndex, x, new int[] { targetSqlType, scaleOrLength });
+      ((PreparedStatement) delegate).setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setObject(int parameterIndex, Object x, SQLType targetSqlType) throws SQLException
+   {
+      bindParameter(parameterIndex, x, sqlTypeKey(targetSqlType, 0));
+      ((PreparedStatement) delegate).setObject(parameterIndex, x, targetSqlType);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setObject(int parameterIndex, Object x, SQLType targetSqlType, int scaleOrLength) throws SQLException
+   {
+      bindParameter(parameterIndex, x, sqlTypeKey(targetSqlType, scaleOrLength));
+      ((PreparedStatement) delegate).setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setURL(int parameterIndex, URL x) throws SQLException
+   {
+      bindParameter(parameterIndex, x);
+      ((PreparedStatement) delegate).setURL(parameterIndex, x);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setRowId(int parameterIndex, RowId x) throws SQLException
+   {
+      bindParameter(parameterIndex, x);
+      ((PreparedStatement) delegate).setRowId(parameterIndex, x);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setArray(int parameterIndex, Array x) throws SQLException
+   {
+      bindUnkeyable(parameterIndex);
+      ((PreparedStatement) delegate).setArray(parameterIndex, x);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setRef(int parameterIndex, Ref x) throws SQLException
+   {
+      bindUnkeyable(parameterIndex);
+      ((PreparedStatement) delegate).setRef(parameterIndex, x);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setSQLXML(int parameterIndex, SQLXML xmlObject) throws SQLException
+   {
+      bindUnkeyable(parameterIndex);
+      ((PreparedStatement) delegate).setSQLXML(parameterIndex, xmlObject);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setBlob(int parameterIndex, Blob x) throws SQLException
+   {
+      bindUnkeyable(parameterIndex);
+      ((PreparedStatement) delegate).setBlob(parameterIndex, x);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setBlob(int parameterIndex, InputStream inputStream, long length) throws SQLException
+   {
+      bindUnkeyable(parameterIndex);
+      ((PreparedStatement) delegate).setBlob(parameterIndex, inputStream, length);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setBlob(int parameterIndex, InputStream inputStream) throws SQLException
+   {
+      bindUnkeyable(parameterIndex);
+      ((PreparedStatement) delegate).setBlob(parameterIndex, inputStream);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setClob(int parameterIndex, Clob x) throws SQLException
+   {
+      bindUnkeyable(parameterIndex);
+      ((PreparedStatement) delegate).setClob(parameterIndex, x);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setClob(int parameterIndex, Reader reader, long length) throws SQLException
+   {
+      bindUnkeyable(parameterIndex);
+      ((PreparedStatement) delegate).setClob(parameterIndex, reader, length);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setClob(int parameterIndex, Reader reader) throws SQLException
+   {
+      bindUnkeyable(parameterIndex);
+      ((PreparedStatement) delegate).setClob(parameterIndex, reader);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setNClob(int parameterIndex, NClob value) throws SQLException
+   {
+      bindUnkeyable(parameterIndex);
+      ((PreparedStatement) delegate).setNClob(parameterIndex, value);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setNClob(int parameterIndex, Reader reader, long length) throws SQLException
+   {
+      bindUnkeyable(parameterIndex);
+      ((PreparedStatement) delegate).setNClob(parameterIndex, reader, length);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setNClob(int parameterIndex, Reader reader) throws SQLException
+   {
+      bindUnkeyable(parameterIndex);
+      ((PreparedStatement) delegate).setNClob(parameterIndex, reader);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setAsciiStream(int parameterIndex, InputStream x, int length) throws SQLException
+   {
+      bindUnkeyable(parameterIndex);
+      ((PreparedStatement) delegate).setAsciiStream(parameterIndex, x, length);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setAsciiStream(int parameterIndex, InputStream x, long length) throws SQLException
+   {
+      bindUnkeyable(parameterIndex);
+      ((PreparedStatement) delegate).setAsciiStream(parameterIndex, x, length);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException
+   {
+      bindUnkeyable(parameterIndex);
+      ((PreparedStatement) delegate).setAsciiStream(parameterIndex, x);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setBinaryStream(int parameterIndex, InputStream x, int length) throws SQLException
+   {
+      bindUnkeyable(parameterIndex);
+      ((PreparedStatement) delegate).setBinaryStream(parameterIndex, x, length);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setBinaryStream(int parameterIndex, InputStream x, long length) throws SQLException
+   {
+      bindUnkeyable(parameterIndex);
+      ((PreparedStatement) delegate).setBinaryStream(parameterIndex, x, length);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException
+   {
+      bindUnkeyable(parameterIndex);
+      ((PreparedStatement) delegate).setBinaryStream(parameterIndex, x);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setCharacterStream(int parameterIndex, Reader reader, int length) throws SQLException
+   {
+      bindUnkeyable(parameterIndex);
+      ((PreparedStatement) delegate).setCharacterStream(parameterIndex, reader, length);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setCharacterStream(int parameterIndex, Reader reader, long length) throws SQLException
+   {
+      bindUnkeyable(parameterIndex);
+      ((PreparedStatement) delegate).setCharacterStream(parameterIndex, reader, length);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setCharacterStream(int parameterIndex, Reader reader) throws SQLException
+   {
+      bindUnkeyable(parameterIndex);
+      ((PreparedStatement) delegate).setCharacterStream(parameterIndex, reader);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setNCharacterStream(int parameterIndex, Reader value, long length) throws SQLException
+   {
+      bindUnkeyable(parameterIndex);
+      ((PreparedStatement) delegate).setNCharacterStream(parameterIndex, value, length);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setNCharacterStream(int parameterIndex, Reader value) throws SQLException
+   {
+      bindUnkeyable(parameterIndex);
+      ((PreparedStatement) delegate).setNCharacterStream(parameterIndex, value);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   @Deprecated
+   public void setUnicodeStream(int parameterIndex, InputStream x, int length) throws SQLException
+   {
+      bindUnkeyable(parameterIndex);
+      ((PreparedStatement) delegate).setUnicodeStream(parameterIndex, x, length);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void clearParameters() throws SQLException
+   {
+      if (resultCache != null) {
+         Arrays.fill(parameters, null);
+         parameterCount = 0;
+      }
+      ((PreparedStatement) delegate).clearParameters();
+   }
 }
@@ -32,6 +32,9 @@ public abstract class ProxyResultSet implements ResultSet
    protected final ProxyStatement statement;
    protected final ResultSet delegate;
 
+   FetchSizeAdvisor.Stats fetchStats;
+   private long rowCount;
+
    protected ProxyResultSet(ProxyConnection connection, ProxyStatement statement, ResultSet resultSet)
    {
       this.connection = connection;
@@ -65,6 +68,34 @@ public abstract class ProxyResultSet implements ResultSet
       return statement;
    }
 
+   /** {@inheritDoc} */
+   @Override
+   public boolean next() throws SQLException
+   {
+      final boolean hasRow = delegate.next();
+      if (hasRow) {
+         rowCount++;
+      }
+      else if (fetchStats != null) {
+         recordFetchStats();
+      }
+      return hasRow;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void close() throws SQLException
+   {
+      try {
+         delegate.close();
+      }
+      finally {
+         if (fetchStats != null) {
+            recordFetchStats();
+         }
+      }
+   }
+
    /** {@inheritDoc} */
    @Override
    public void updateRow() throws SQLException
@@ -89,6 +120,39 @@ public abstract class ProxyResultSet implements ResultSet
       delegate.deleteRow();
    }
 
+   /**
+    * Read up to the capacity of the batch rows from the current position into its column
+    * buffers, replacing its previous contents.  Intended for analytical reads of many rows,
+    * which would otherwise be copied into an object per row or per cell.
+    *
+    * @param batch the reusable column batch to fill
+    * @return the number of rows read, 0 once the result set is exhausted
+    * @throws SQLException thrown if the rows cannot be read
+    */
+   public final int fetchColumns(final ColumnBatch batch) throws SQLException
+   {
+      try {
+         final int rows = batch.fill(delegate);
+         rowCount += rows;
+         if (rows < batch.getCapacity() && fetchStats != null) {
+            recordFetchStats();
+         }
+         return rows;
+      }
+      catch (SQLException e) {
+         throw checkException(e);
+      }
+   }
+
+   /**
+    * Record the number of rows consumed, once, when the result set is exhausted or closed.
+    */
+   private void recordFetchStats()
+   {
+      fetchStats.recordRows(rowCount);
+      fetchStats = null;
+   }
+
    /** {@inheritDoc} */
    @Override
    @SuppressWarnings("unchecked")
@@ -19,8 +19,10 @@ package com.zaxxer.hikari.pool;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
 import java.sql.Statement;
 import java.sql.Wrapper;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This is the proxy class for java.sql.Statement.
@@ -32,13 +34,29 @@ public abstract class ProxyStatement implements Statement
    protected final ProxyConnection connection;
    protected final Statement delegate;
 
+   FetchSizeAdvisor.Stats fetchStats;
+   long maxRows;
+   int maxFieldSize;
+
+   private final FetchSizeAdvisor fetchSizeAdvisor;
    private boolean isClosed;
+   private boolean isFetchSizeExplicit;
+   private int adaptiveFetchSize;
+   private int queryTimeout;
+   private int appliedQueryTimeout;
    private ResultSet proxyResultSet;
+   private final int trackingSlot;
 
    protected ProxyStatement(ProxyConnection connection, Statement statement)
    {
       this.connection = connection;
       this.delegate = statement;
+      this.trackingSlot = connection.trackStatement(statement);
+
+      final PoolEntry poolEntry = connection.getPoolEntry();
+      this.fetchSizeAdvisor = poolEntry.getFetchSizeAdvisor();
+      // applied on first execution, once the deadline of the borrow, if any, has clamped it
+      this.queryTimeout = poolEntry.getQueryTimeout();
    }
 
    final SQLException checkException(SQLException e)
@@ -46,6 +64,75 @@ public abstract class ProxyStatement implements Statement
       return connection.checkException(e);
    }
 
+   /**
+    * Prepare for execution of this statement: flush any coalesced batch of the connection, mark the
+    * commit state dirty, and apply the query timeout clamped to the deadline of the borrow, if any.
+    */
+   final void beforeExecute() throws SQLException
+   {
+      connection.flushCoalescedBatch();
+      connection.markCommitStateDirty();
+      applyQueryTimeout();
+   }
+
+   /**
+    * Apply the query timeout, clamped to the time remaining until the deadline of the borrow, if
+    * any.  The driver is only called when the timeout differs from the one last applied.
+    *
+    * @throws SQLTimeoutException if the deadline has already passed
+    */
+   final void applyQueryTimeout() throws SQLException
+   {
+      int timeout = queryTimeout;
+      if (connection.hasDeadline()) {
+         final long remainingMs = connection.getRemainingMillis();
+         if (remainingMs <= 0L) {
+            throw new SQLTimeoutException(connection.getPoolEntry().getPoolName() + " - Deadline of the connection borrow has expired");
+         }
+
+         final int remainingSec = (int) Math.min(Integer.MAX_VALUE, TimeUnit.MILLISECONDS.toSeconds(remainingMs + 999));
+         timeout = (queryTimeout > 0 ? Math.min(queryTimeout, remainingSec) : remainingSec);
+      }
+
+      if (timeout != appliedQueryTimeout) {
+         connection.getPoolEntry().setQueryTimeout(delegate, timeout);
+         appliedQueryTimeout = timeout;
+      }
+   }
+
+   /**
+    * Track the statistics of the SQL of this prepared statement, called by the connection.
+    */
+   final void trackFetchSize(final String sql)
+   {
+      if (fetchSizeAdvisor != null) {
+         fetchStats = fetchSizeAdvisor.getStats(sql);
+      }
+   }
+
+   /**
+    * Set the fetch size learned for the specified statistics, unless the application chose one.
+    */
+   final void adviseFetchSize(final FetchSizeAdvisor.Stats stats) throws SQLException
+   {
+      if (stats != null && !isFetchSizeExplicit) {
+         final int fetchSize = fetchSizeAdvisor.getFetchSize(stats);
+         if (fetchSize > 0 && fetchSize != adaptiveFetchSize) {
+            delegate.setFetchSize(fetchSize);
+            adaptiveFetchSize = fetchSize;
+         }
+      }
+   }
+
+   /**
+    * Have the result set record the rows consumed from it in the specified statistics.
+    */
+   static final ResultSet trackRows(final ResultSet resultSet, final FetchSizeAdvisor.Stats stats)
+   {
+      ((ProxyResultSet) resultSet).fetchStats = stats;
+      return resultSet;
+   }
+
    /** {@inheritDoc} */
    @Override
    public final String toString()
@@ -70,10 +157,17 @@ public abstract class ProxyStatement implements Statement
       }
 
       isClosed = true;
-      connection.untrackStatement(delegate);
+      connection.untrackStatement(trackingSlot, delegate);
 
       try {
-         delegate.close();
+         try {
+            if (this instanceof ProxyPreparedStatement) {
+               connection.flushCoalescedBatch((ProxyPreparedStatement) this);
+            }
+         }
+         finally {
+            delegate.close();
+         }
       }
       catch (SQLException e) {
          throw connection.checkException(e);
@@ -91,7 +185,7 @@ public abstract class ProxyStatement implements Statement
    @Override
    public boolean execute(String sql) throws SQLException
    {
-      connection.markCommitStateDirty();
+      beforeExecute();
       return delegate.execute(sql);
    }
 
@@ -99,7 +193,7 @@ public abstract class ProxyStatement implements Statement
    @Override
    public boolean execute(String sql, int autoGeneratedKeys) throws SQLException
    {
-      connection.markCommitStateDirty();
+      beforeExecute();
       return delegate.execute(sql, autoGeneratedKeys);
    }
 
@@ -107,16 +201,18 @@ public abstract class ProxyStatement implements Statement
    @Override
    public ResultSet executeQuery(String sql) throws SQLException
    {
-      connection.markCommitStateDirty();
+      beforeExecute();
+      final FetchSizeAdvisor.Stats stats = (fetchSizeAdvisor != null ? fetchSizeAdvisor.getStats(sql) : null);
+      adviseFetchSize(stats);
       ResultSet resultSet = delegate.executeQuery(sql);
-      return ProxyFactory.getProxyResultSet(connection, this, resultSet); 
+      return trackRows(ProxyFactory.getProxyResultSet(connection, this, resultSet), stats); 
    }
 
    /** {@inheritDoc} */
    @Override
    public int executeUpdate(String sql) throws SQLException
    {
-      connection.markCommitStateDirty();
+      beforeExecute();
       return delegate.executeUpdate(sql);
    }
 
@@ -124,7 +220,7 @@ public abstract class ProxyStatement implements Statement
    @Override
    public int[] executeBatch() throws SQLException
    {
-      connection.markCommitStateDirty();
+      beforeExecute();
       return delegate.executeBatch();
    }
 
@@ -132,7 +228,7 @@ public abstract class ProxyStatement implements Statement
    @Override
    public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException
    {
-      connection.markCommitStateDirty();
+      beforeExecute();
       return delegate.executeUpdate(sql, autoGeneratedKeys);
    }
 
@@ -140,7 +236,7 @@ public abstract class ProxyStatement implements Statement
    @Override
    public int executeUpdate(String sql, int[] columnIndexes) throws SQLException
    {
-      connection.markCommitStateDirty();
+      beforeExecute();
       return delegate.executeUpdate(sql, columnIndexes);
    }
 
@@ -148,7 +244,7 @@ public abstract class ProxyStatement implements Statement
    @Override
    public int executeUpdate(String sql, String[] columnNames) throws SQLException
    {
-      connection.markCommitStateDirty();
+      beforeExecute();
       return delegate.executeUpdate(sql, columnNames);
    }
 
@@ -156,7 +252,7 @@ public abstract class ProxyStatement implements Statement
    @Override
    public boolean execute(String sql, int[] columnIndexes) throws SQLException
    {
-      connection.markCommitStateDirty();
+      beforeExecute();
       return delegate.execute(sql, columnIndexes);
    }
 
@@ -164,7 +260,7 @@ public abstract class ProxyStatement implements Statement
    @Override
    public boolean execute(String sql, String[] columnNames) throws SQLException
    {
-      connection.markCommitStateDirty();
+      beforeExecute();
       return delegate.execute(sql, columnNames);
    }
 
@@ -172,7 +268,7 @@ public abstract class ProxyStatement implements Statement
    @Override
    public long[] executeLargeBatch() throws SQLException
    {
-      connection.markCommitStateDirty();
+      beforeExecute();
       return delegate.executeLargeBatch();
    }
 
@@ -180,7 +276,7 @@ public abstract class ProxyStatement implements Statement
    @Override
    public long executeLargeUpdate(String sql) throws SQLException
    {
-      connection.markCommitStateDirty();
+      beforeExecute();
       return delegate.executeLargeUpdate(sql);
    }
 
@@ -188,7 +284,7 @@ public abstract class ProxyStatement implements Statement
    @Override
    public long executeLargeUpdate(String sql, int autoGeneratedKeys) throws SQLException
    {
-      connection.markCommitStateDirty();
+      beforeExecute();
       return delegate.executeLargeUpdate(sql, autoGeneratedKeys);
    }
 
@@ -196,7 +292,7 @@ public abstract class ProxyStatement implements Statement
    @Override
    public long executeLargeUpdate(String sql, int[] columnIndexes) throws SQLException
    {
-      connection.markCommitStateDirty();
+      beforeExecute();
       return delegate.executeLargeUpdate(sql, columnIndexes);
    }
 
@@ -204,10 +300,60 @@ public abstract class ProxyStatement implements Statement
    @Override
    public long executeLargeUpdate(String sql, String[] columnNames) throws SQLException
    {
-      connection.markCommitStateDirty();
+      beforeExecute();
       return delegate.executeLargeUpdate(sql, columnNames);
    }
 
+   /** {@inheritDoc} */
+   @Override
+   public int getQueryTimeout() throws SQLException
+   {
+      // the pool default is only applied on first execution
+      final int timeout = delegate.getQueryTimeout();
+      return (appliedQueryTimeout == 0 && queryTimeout > 0 ? queryTimeout : timeout);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setQueryTimeout(int seconds) throws SQLException
+   {
+      delegate.setQueryTimeout(seconds);
+      queryTimeout = seconds;
+      appliedQueryTimeout = seconds;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setFetchSize(int rows) throws SQLException
+   {
+      isFetchSizeExplicit = true;
+      delegate.setFetchSize(rows);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setMaxRows(int max) throws SQLException
+   {
+      delegate.setMaxRows(max);
+      maxRows = max;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setLargeMaxRows(long max) throws SQLException
+   {
+      delegate.setLargeMaxRows(max);
+      maxRows = max;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void setMaxFieldSize(int max) throws SQLException
+   {
+      delegate.setMaxFieldSize(max);
+      maxFieldSize = max;
+   }
+
    /** {@inheritDoc} */
    @Override
    public ResultSet getResultSet() throws SQLException {
@@ -0,0 +1,475 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari.pool;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URL;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetFactory;
+import javax.sql.rowset.RowSetProvider;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.util.ClockSource;
+
+/**
+ * A size, memory and time bounded cache of disconnected query results, keyed by SQL text,
+ * catalog, schema and bound parameters.  Only statements whose SQL is registered as cacheable,
+ * or that contain the {@link #SQL_HINT} comment, are cached.  Results are held as populated
+ * {@link CachedRowSet}s, and each hit is served from an independent read-only view.
+ *
+ * @author Brett Wooldridge
+ */
+final class ResultCache
+{
+   static final String SQL_HINT = "/*hikari.cache*/";
+
+   /** Key of a bound parameter that cannot be compared by value, such as a stream or LOB. */
+   static final Object UNKEYABLE = new Object();
+
+   private static final ClockSource clockSource = ClockSource.INSTANCE;
+   private static final int CELL_OVERHEAD = 16;
+
+   private final Set<String> cacheableQueries;
+   private final long ttlMs;
+   private final int maxEntries;
+   private final long maxBytes;
+   private final RowSetFactory rowSetFactory;
+   private final LinkedHashMap<Key, Entry> entries;
+
+   private long totalBytes;
+
+   ResultCache(final HikariConfig config)
+   {
+      this.cacheableQueries = new HashSet<>(config.getCacheableQueries());
+      this.ttlMs = config.getResultCacheTtl();
+      this.maxEntries = config.getResultCacheSize();
+      this.maxBytes = config.getResultCacheMaxBytes();
+      this.entries = new LinkedHashMap<>(16, 0.75f, true);
+
+      try {
+         this.rowSetFactory = RowSetProvider.newFactory();
+      }
+      catch (SQLException e) {
+         throw new RuntimeException("Unable to create RowSetFactory for the result cache", e);
+      }
+   }
+
+   /**
+    * Determine whether results of the specified SQL may be cached.
+    */
+   boolean isCacheable(final String sql)
+   {
+      return sql != null && (cacheableQueries.contains(sql) || sql.contains(SQL_HINT));
+   }
+
+   /**
+    * Get an independent view of the cached result for the specified key, or null on a miss.
+    */
+   ResultSet get(final Key key) throws SQLException
+   {
+      final CachedRowSet rowSet;
+      synchronized (this) {
+         final Entry entry = entries.get(key);
+         if (entry == null) {
+            return null;
+         }
+         if (clockSource.elapsedMillis(entry.createTime) > ttlMs) {
+            remove(key);
+            return null;
+         }
+         rowSet = entry.rowSet;
+      }
+
+      return view(rowSet);
+   }
+
+   /**
+    * Consume and close the specified result set, cache it under the specified key if it fits,
+    * and return an independent view of it.  The rows are counted while they are read, and once
+    * they exceed <code>maxBytes</code> reading stops, and the rows read so far are returned
+    * followed by the rest of the result set, which is then left open and not cached.
+    */
+   ResultSet put(final Key key, final ResultSet resultSet) throws SQLException
+   {
+      final List<Object[]> rows = new ArrayList<>();
+      final CachedRowSet rowSet;
+      long bytes = 0;
+      boolean isComplete = false;
+      try {
+         final ResultSetMetaData metaData = resultSet.getMetaData();
+         final int columns = metaData.getColumnCount();
+         while (bytes <= maxBytes) {
+            if (!resultSet.next()) {
+               isComplete = true;
+               break;
+            }
+
+            final Object[] row = new Object[columns];
+            for (int i = 0; i < columns; i++) {
+               row[i] = resultSet.getObject(i + 1);
+               bytes += estimateBytes(row[i]);
+            }
+            rows.add(row);
+         }
+
+         rowSet = rowSetFactory.createCachedRowSet();
+         rowSet.populate(replay(metaData, rows));
+      }
+      catch (SQLException | RuntimeException e) {
+         resultSet.close();
+         throw e;
+      }
+
+      if (!isComplete) {
+         return splice(rowSet, resultSet);
+      }
+
+      resultSet.close();
+      synchronized (this) {
+         remove(key);
+         entries.put(key, new Entry(rowSet, bytes));
+         totalBytes += bytes;
+         evict();
+      }
+
+      return view(rowSet);
+   }
+
+   /**
+    * Remove all cached results of the specified SQL.
+    */
+   synchronized void invalidate(final String sql)
+   {
+      final Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+      while (iterator.hasNext()) {
+         final Map.Entry<Key, Entry> mapEntry = iterator.next();
+         if (mapEntry.getKey().sql.equals(sql)) {
+            totalBytes -= mapEntry.getValue().bytes;
+            iterator.remove();
+         }
+      }
+   }
+
+   /**
+    * Remove all cached results.
+    */
+   synchronized void invalidateAll()
+   {
+      entries.clear();
+      totalBytes = 0;
+   }
+
+   synchronized int size()
+   {
+      return entries.size();
+   }
+
+   private void remove(final Key key)
+   {
+      final Entry entry = entries.remove(key);
+      if (entry != null) {
+         totalBytes -= entry.bytes;
+      }
+   }
+
+   private void evict()
+   {
+      final Iterator<Entry> iterator = entries.values().iterator();
+      while ((entries.size() > maxEntries || totalBytes > maxBytes) && iterator.hasNext()) {
+         totalBytes -= iterator.next().bytes;
+         iterator.remove();
+      }
+   }
+
+   /**
+    * Create a read-only view of a cached result with a cursor of its own.  Closing the view must
+    * not close the shared view, as that would release the cached rows.
+    */
+   private static ResultSet view(final CachedRowSet rowSet) throws SQLException
+   {
+      final ResultSet view = rowSet.createShared();
+      view.beforeFirst();
+      return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class[] { ResultSet.class }, new InvocationHandler() {
+         private boolean isClosed;
+
+         @Override
+         public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable
+         {
+            final String methodName = method.getName();
+            switch (methodName) {
+            case "close":
+               isClosed = true;
+               return null;
+            case "isClosed":
+               return isClosed;
+            case "getConcurrency":
+               return ResultSet.CONCUR_READ_ONLY;
+            case "isWrapperFor":
+               return ((Class<?>) args[0]).isInstance(proxy);
+            case "unwrap":
+               if (((Class<?>) args[0]).isInstance(proxy)) {
+                  return proxy;
+               }
+               throw new SQLException("Cached result set is not an instance of " + args[0]);
+            default:
+               if (isClosed) {
+                  throw new SQLException("ResultSet is closed");
+               }
+               else if (methodName.startsWith("update") || (methodName.endsWith("Row") && !methodName.equals("getRow") && !methodName.equals("moveToCurrentRow"))) {
+                  throw new SQLException("Cached result set is read-only");
+               }
+            }
+
+            return invokeDelegate(view, method, args);
+         }
+      });
+   }
+
+   /**
+    * Create a result set over rows already read, from which a CachedRowSet is populated.
+    */
+   private static ResultSet replay(final ResultSetMetaData metaData, final List<Object[]> rows)
+   {
+      return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class[] { ResultSet.class }, new InvocationHandler() {
+         private int row = -1;
+
+         @Override
+         public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable
+         {
+            switch (method.getName()) {
+            case "getMetaData":
+               return metaData;
+            case "next":
+               return ++row < rows.size();
+            case "getObject":
+               return rows.get(row)[(Integer) args[0] - 1];
+            case "close":
+               return null;
+            default:
+               throw new SQLException("Unsupported operation " + method.getName() + " on replayed rows");
+            }
+         }
+      });
+   }
+
+   /**
+    * Create a result set of the rows already read followed by the remainder of the live result
+    * set.  A cursor movement other than <code>next()</code> moves onto the live result set.
+    */
+   private static ResultSet splice(final ResultSet head, final ResultSet live)
+   {
+      return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class[] { ResultSet.class }, new InvocationHandler() {
+         private ResultSet current = head;
+
+         @Override
+         public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable
+         {
+            switch (method.getName()) {
+            case "next":
+               if (current == head) {
+                  if (head.next()) {
+                     return true;
+                  }
+                  current = live;
+               }
+               return live.next();
+            case "previous":
+            case "relative":
+               if (current == head) {
+                  live.absolute(head.getRow());
+               }
+               // fall through
+            case "absolute":
+            case "first":
+            case "last":
+            case "beforeFirst":
+            case "afterLast":
+               current = live;
+               break;
+            case "close":
+               head.close();
+               live.close();
+               return null;
+            case "getMetaData":
+            case "isClosed":
+            case "getStatement":
+            case "getType":
+            case "getConcurrency":
+            case "unwrap":
+            case "isWrapperFor":
+               return invokeDelegate(live, method, args);
+            default:
+               break;
+            }
+
+            return invokeDelegate(current, method, args);
+         }
+      });
+   }
+
+   private static Object invokeDelegate(final ResultSet delegate, final Method method, final Object[] args) throws Throwable
+   {
+      try {
+         return method.invoke(delegate, args);
+      }
+      catch (InvocationTargetException e) {
+         throw e.getCause();
+      }
+   }
+
+   /**
+    * Roughly estimate the heap retained by a cached value.
+    */
+   private static long estimateBytes(final Object value)
+   {
+      if (value instanceof String) {
+         return CELL_OVERHEAD + ((String) value).length() * 2;
+      }
+      else if (value instanceof byte[]) {
+         return CELL_OVERHEAD + ((byte[]) value).length;
+      }
+      return CELL_OVERHEAD;
+   }
+
+   /**
+    * Get the key of a bound parameter value.  Values of immutable types are their own key, and
+    * mutable temporal and binary values are keyed by a copy of their value.  Values of any other
+    * type are {@link #UNKEYABLE}.
+    */
+   static Object keyOf(final Object value)
+   {
+      if (value == null || value instanceof String || value instanceof Boolean || value instanceof Character
+         || value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte
+         || value instanceof Double || value instanceof Float || value instanceof BigDecimal || value instanceof BigInteger
+         || value instanceof UUID) {
+         return value;
+      }
+      else if (value instanceof byte[]) {
+         return ((byte[]) value).clone();
+      }
+      else if (value instanceof Date) {
+         final int nanos = (value instanceof Timestamp ? ((Timestamp) value).getNanos() : 0);
+         return new Object[] { value.getClass(), ((Date) value).getTime(), nanos };
+      }
+      else if (value instanceof URL) {
+         return new Object[] { URL.class, ((URL) value).toExternalForm() };
+      }
+      else if (value instanceof RowId) {
+         return new Object[] { RowId.class, ((RowId) value).getBytes().clone() };
+      }
+      return UNKEYABLE;
+   }
+
+   /**
+    * Get the key of a bound parameter value qualified by an argument of its setter that affects
+    * how it is bound, such as a Calendar, target SQL type or scale.
+    */
+   static Object keyOf(final Object value, final Object qualifier)
+   {
+      final Object valueKey = keyOf(value);
+      if (valueKey == UNKEYABLE) {
+         return UNKEYABLE;
+      }
+      return new Object[] { valueKey, (qualifier instanceof Calendar ? ((Calendar) qualifier).getTimeZone().getID() : qualifier) };
+   }
+
+   /**
+    * Cache key of SQL text, catalog, schema and the row and field size limits plus bound parameter keys.
+    */
+   static final class Key
+   {
+      private final String sql;
+      private final String catalog;
+      private final String schema;
+      private final long maxRows;
+      private final int maxFieldSize;
+      private final Object[] parameters;
+      private final int hashCode;
+
+      Key(final String sql, final String catalog, final String schema, final long maxRows, final int maxFieldSize, final Object[] parameters)
+      {
+         this.sql = sql;
+         this.catalog = catalog;
+         this.schema = schema;
+         this.maxRows = maxRows;
+         this.maxFieldSize = maxFieldSize;
+         this.parameters = parameters;
+         final int settingsHash = 31 * Long.hashCode(maxRows) + maxFieldSize;
+         this.hashCode = 31 * (31 * (31 * (31 * sql.hashCode() + Objects.hashCode(catalog)) + Objects.hashCode(schema)) + settingsHash) + Arrays.deepHashCode(parameters);
+      }
+
+      /** {@inheritDoc} */
+      @Override
+      public int hashCode()
+      {
+         return hashCode;
+      }
+
+      /** {@inheritDoc} */
+      @Override
+      public boolean equals(final Object other)
+      {
+         if (this == other) {
+            return true;
+         }
+         if (!(other instanceof Key)) {
+            return false;
+         }
+
+         final Key key = (Key) other;
+         return hashCode == key.hashCode && sql.equals(key.sql) && Objects.equals(catalog, key.catalog) && Objects.equals(schema, key.schema)
+            && maxRows == key.maxRows && maxFieldSize == key.maxFieldSize && Arrays.deepEquals(parameters, key.parameters);
+      }
+   }
+
+   private static final class Entry
+   {
+      private final CachedRowSet rowSet;
+      private final long bytes;
+      private final long createTime;
+
+      Entry(final CachedRowSet rowSet, final long bytes)
+      {
+         this.rowSet = rowSet;
+         this.bytes = bytes;
+         this.createTime = clockSource.currentTime();
+      }
+   }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari.pool;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.zaxxer.hikari.RowMapper;
+import com.zaxxer.hikari.RowSubscriber;
+import com.zaxxer.hikari.RowSubscription;
+
+/**
+ * Publishes the rows of one query to a single subscriber, reading them from the driver only as
+ * the subscriber requests them.  The connection is borrowed on the first request, the fetch size
+ * follows the outstanding demand, and the connection is returned to the pool on completion,
+ * error or cancellation.  Rows are read and signalled on the asynchronous executor of the pool,
+ * never on the thread calling {@link RowSubscription#request(long)}.
+ *
+ * @param <T> the type of the mapped rows
+ * @author Brett Wooldridge
+ */
+public final class RowPublisher<T>
+{
+   private static final Logger LOGGER = LoggerFactory.getLogger(RowPublisher.class);
+
+   static final int MIN_FETCH_SIZE = 16;
+   static final int MAX_FETCH_SIZE = 1000;
+
+   private final HikariPool hikariPool;
+   private final String sql;
+   private final Object[] parameters;
+   private final RowMapper<T> rowMapper;
+   private final AtomicBoolean isSubscribed;
+
+   RowPublisher(final HikariPool hikariPool, final String sql, final Object[] parameters, final RowMapper<T> rowMapper)
+   {
+      if (sql == null) {
+         throw new IllegalArgumentException("sql cannot be null");
+      }
+      if (rowMapper == null) {
+         throw new IllegalArgumentException("rowMapper cannot be null");
+      }
+
+      this.hikariPool = hikariPool;
+      this.sql = sql;
+      this.parameters = (parameters != null ? parameters.clone() : null);
+      this.rowMapper = rowMapper;
+      this.isSubscribed = new AtomicBoolean();
+   }
+
+   /**
+    * Subscribe to the rows of the query.  A publisher executes its query once, so only the first
+    * subscriber receives rows; later subscribers receive an <code>IllegalStateException</code>.
+    *
+    * @param subscriber the subscriber
+    */
+   public void subscribe(final RowSubscriber<? super T> subscriber)
+   {
+      if (subscriber == null) {
+         throw new NullPointerException("subscriber cannot be null");
+      }
+
+      if (!isSubscribed.compareAndSet(false, true)) {
+         subscriber.onSubscribe(new RowSubscription() {
+            @Override
+            public void request(long n)
+            {
+            }
+
+            @Override
+            public void cancel()
+            {
+            }
+         });
+         subscriber.onError(new IllegalStateException("query rows can only be published to one subscriber"));
+         return;
+      }
+
+      subscriber.onSubscribe(new Subscription(subscriber));
+   }
+
+   /**
+    * The subscription of the single subscriber.  The JDBC resources are only touched by the
+    * drain loop, which the work-in-progress counter confines to one executor thread at a time.
+    */
+   private final class Subscription implements RowSubscription, Runnable
+   {
+      private final RowSubscriber<? super T> subscriber;
+      private final AtomicLong demand;
+      private final AtomicInteger workInProgress;
+
+      private volatile boolean isCancelled;
+      private volatile Throwable invalidRequest;
+      private volatile boolean isDone;
+
+      private Connection connection;
+      private PreparedStatement statement;
+      private ResultSet resultSet;
+      private int rowNum;
+      private int fetchSize;
+
+      Subscription(final RowSubscriber<? super T> subscriber)
+      {
+         this.subscriber = subscriber;
+         this.demand = new AtomicLong();
+         this.workInProgress = new AtomicInteger();
+      }
+
+      /** {@inheritDoc} */
+      @Override
+      public void request(final long n)
+      {
+         if (n <= 0) {
+            invalidRequest = new IllegalArgumentException("request must be greater than zero, was " + n);
+         }
+         else {
+            long current;
+            do {
+               current = demand.get();
+               if (current == Long.MAX_VALUE) {
+                  return;
+               }
+            } while (!demand.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+         }
+
+         schedule();
+      }
+
+      /** {@inheritDoc} */
+      @Override
+      public void cancel()
+      {
+         isCancelled = true;
+         schedule();
+      }
+
+      /** {@inheritDoc} */
+      @Override
+      public void run()
+      {
+         int missed = 1;
+         do {
+            drain();
+            missed = workInProgress.addAndGet(-missed);
+         } while (missed != 0);
+      }
+
+      private void schedule()
+      {
+         if (workInProgress.getAndIncrement() == 0) {
+            try {
+               hikariPool.submitAsync(this);
+            }
+            catch (SQLException e) {
+               // no drain is running, so the resources can be released on this thread
+               workInProgress.set(0);
+               if (!isDone) {
+                  terminate(e);
+               }
+            }
+         }
+      }
+
+      private void drain()
+      {
+         if (isDone) {
+            return;
+         }
+         if (isCancelled) {
+            release();
+            return;
+         }
+         if (invalidRequest != null) {
+            terminate(invalidRequest);
+            return;
+         }
+
+         try {
+            if (resultSet == null) {
+               open();
+            }
+
+            while (demand.get() > 0) {
+               if (isCancelled) {
+                  release();
+                  return;
+               }
+
+               adjustFetchSize();
+               if (!resultSet.next()) {
+                  release();
+                  isDone = true;
+                  subscriber.onComplete();
+                  return;
+               }
+
+               final T row = rowMapper.mapRow(resultSet, rowNum++);
+               demand.decrementAndGet();
+               subscriber.onNext(row);
+            }
+         }
+         catch (SQLException | RuntimeException e) {
+            terminate(e);
+         }
+      }
+
+      private void open() throws SQLException
+      {
+         connection = hikariPool.getConnection();
+         statement = connection.prepareStatement(sql);
+         if (parameters != null) {
+            for (int i = 0; i < parameters.length; i++) {
+               statement.setObject(i + 1, parameters[i]);
+            }
+         }
+
+         fetchSize = fetchSizeFor(demand.get());
+         statement.setFetchSize(fetchSize);
+         resultSet = statement.executeQuery();
+      }
+
+      /**
+       * Align the fetch size with the outstanding demand, so the driver does not read far ahead
+       * of a slow subscriber.  The demand falls with every row, so the fetch size is only changed
+       * once the demand has doubled or dropped to a quarter of it.
+       */
+      private void adjustFetchSize() throws SQLException
+      {
+         final int size = fetchSizeFor(demand.get());
+         if (size >= fetchSize * 2 || size * 4 <= fetchSize) {
+            resultSet.setFetchSize(size);
+            fetchSize = size;
+         }
+      }
+
+      private void terminate(final Throwable t)
+      {
+         release();
+         isDone = true;
+         subscriber.onError(t);
+      }
+
+      private void release()
+      {
+         isDone = true;
+         if (connection != null) {
+            if (resultSet != null) {
+               try {
+                  resultSet.close();
+               }
+               catch (SQLException e) {
+                  LOGGER.debug("{} - Exception closing published result set", hikariPool.poolName, e);
+               }
+            }
+            try {
+               connection.close();
+            }
+            catch (SQLException e) {
+               LOGGER.debug("{} - Exception closing publisher connection", hikariPool.poolName, e);
+            }
+            connection = null;
+            statement = null;
+            resultSet = null;
+         }
+      }
+   }
+
+   private static int fetchSizeFor(final long demand)
+   {
+      return (int) Math.max(MIN_FETCH_SIZE, Math.min(MAX_FETCH_SIZE, demand));
+   }
+}
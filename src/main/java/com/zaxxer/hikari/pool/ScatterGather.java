@@ -0,0 +1,343 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari.pool;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.zaxxer.hikari.RowMapper;
+import com.zaxxer.hikari.util.ClockSource;
+
+/**
+ * The merged rows of one query template executed concurrently for a list of partition
+ * parameters.  At most <code>parallelism</code> partitions run at once, each on its own pooled
+ * connection; as one completes the next is started.  Rows are streamed to the caller through a
+ * bounded buffer as they are read, either in partition order or in order of arrival, so a
+ * partition reads at most {@link #ROW_BUFFER_SIZE} rows ahead of the caller.  In partition order
+ * each partition has its own buffer, and one that fills it waits for the caller to reach it.  A
+ * partition that fails may have delivered some of its rows before the failure is thrown.  On the
+ * first failure of any partition, on timeout, or on close, outstanding partitions are cancelled at
+ * once, and the first failure is thrown to the caller in place of any rows still buffered.
+ *
+ * @param <T> the type of the mapped rows
+ * @author Brett Wooldridge
+ */
+public final class ScatterGather<T> implements AutoCloseable
+{
+   private static final ClockSource clockSource = ClockSource.INSTANCE;
+
+   static final int ROW_BUFFER_SIZE = 256;
+
+   // stands in for a null row, which the buffer cannot hold
+   private static final Object NULL_ROW = new Object();
+
+   private final HikariPool hikariPool;
+   private final String sql;
+   private final RowMapper<T> rowMapper;
+   private final boolean isOrdered;
+   private final long timeoutMs;
+   private final long startTime;
+   private final List<Partition> partitions;
+
+   private int nextPartition;
+   private int delivered;
+   private Object row;
+   private volatile boolean isClosed;
+   private volatile SQLException firstFailure;
+
+   ScatterGather(final HikariPool hikariPool, final String sql, final List<Object[]> partitionParameters, final RowMapper<T> rowMapper, final boolean isOrdered, final long timeoutMs)
+   {
+      this.hikariPool = hikariPool;
+      this.sql = sql;
+      this.rowMapper = rowMapper;
+      this.isOrdered = isOrdered;
+      this.timeoutMs = timeoutMs;
+      this.startTime = clockSource.currentTime();
+      this.partitions = new ArrayList<>(partitionParameters.size());
+
+      final RowBuffer sharedBuffer = (isOrdered ? null : new RowBuffer());
+      for (Object[] parameters : partitionParameters) {
+         partitions.add(new Partition(parameters, isOrdered ? new RowBuffer() : sharedBuffer));
+      }
+   }
+
+   /**
+    * Start the first partitions, called by the pool.
+    */
+   void start(final int parallelism)
+   {
+      for (int i = 0; i < parallelism; i++) {
+         startNextPartition();
+      }
+   }
+
+   /**
+    * Determine whether another row is available, waiting for partitions to deliver rows as needed.
+    *
+    * @return true if {@link #next()} will return a row
+    * @throws SQLException the failure of a partition, or SQLTimeoutException if the timeout elapsed
+    */
+   public boolean hasNext() throws SQLException
+   {
+      while (row == null) {
+         if (delivered == partitions.size()) {
+            return false;
+         }
+         if (isClosed) {
+            throw (firstFailure != null ? firstFailure : new SQLException("scatter-gather query has been closed"));
+         }
+
+         final RowBuffer buffer = partitions.get(isOrdered ? delivered : 0).buffer;
+         final Object element = awaitElement(buffer);
+         if (element instanceof PartitionEnd) {
+            // the end of a partition, which follows all of its rows
+            delivered++;
+            final SQLException failure = ((PartitionEnd) element).failure;
+            if (failure != null) {
+               close();
+               throw (firstFailure != null ? firstFailure : failure);
+            }
+         }
+         else {
+            buffer.space.release();
+            row = element;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Get the next row.
+    *
+    * @return the next row
+    * @throws SQLException the failure of a partition, or SQLTimeoutException if the timeout elapsed
+    */
+   @SuppressWarnings("unchecked")
+   public T next() throws SQLException
+   {
+      if (!hasNext()) {
+         throw new NoSuchElementException();
+      }
+
+      final Object next = row;
+      row = null;
+      return (next != NULL_ROW ? (T) next : null);
+   }
+
+   /**
+    * Cancel all outstanding partitions.  Partitions not yet started are never started, and
+    * running statements are cancelled.
+    */
+   @Override
+   public void close()
+   {
+      isClosed = true;
+      for (Partition partition : partitions) {
+         partition.cancel();
+         // wake a partition waiting for buffer space, so that it sees the close
+         partition.buffer.space.release();
+      }
+   }
+
+   private Object awaitElement(final RowBuffer buffer) throws SQLException
+   {
+      final long remaining = timeoutMs - clockSource.elapsedMillis(startTime);
+      try {
+         final Object element = (remaining > 0L ? buffer.queue.poll(remaining, TimeUnit.MILLISECONDS) : buffer.queue.poll());
+         if (element == null) {
+            close();
+            throw new SQLTimeoutException(hikariPool.poolName + " - Scatter-gather query timed out after " + timeoutMs + "ms");
+         }
+         return element;
+      }
+      catch (InterruptedException e) {
+         close();
+         throw new SQLException(hikariPool.poolName + " - Interrupted while waiting for scatter-gather partitions", e);
+      }
+   }
+
+   /**
+    * Record the first failure of a partition and cancel the others.  A failure after close is a
+    * consequence of the close, and is not recorded.
+    */
+   private void fail(final SQLException failure)
+   {
+      synchronized (this) {
+         if (isClosed || firstFailure != null) {
+            return;
+         }
+         firstFailure = failure;
+      }
+      close();
+   }
+
+   private void startNextPartition()
+   {
+      final Partition partition;
+      synchronized (this) {
+         if (isClosed || nextPartition == partitions.size()) {
+            return;
+         }
+         partition = partitions.get(nextPartition++);
+      }
+
+      try {
+         hikariPool.submitAsync(partition);
+      }
+      catch (SQLException e) {
+         partition.complete(e);
+      }
+   }
+
+   /**
+    * Rows read ahead of the caller, followed by the end marker of each partition writing to it.
+    * Only rows take space, so a partition can always complete without waiting.
+    */
+   private static final class RowBuffer
+   {
+      private final LinkedBlockingQueue<Object> queue;
+      private final Semaphore space;
+
+      RowBuffer()
+      {
+         this.queue = new LinkedBlockingQueue<>();
+         this.space = new Semaphore(ROW_BUFFER_SIZE);
+      }
+   }
+
+   /**
+    * The end marker of a partition, holding its failure, if any.
+    */
+   private static final class PartitionEnd
+   {
+      private final SQLException failure;
+
+      PartitionEnd(final SQLException failure)
+      {
+         this.failure = failure;
+      }
+   }
+
+   private final class Partition implements Runnable
+   {
+      private final Object[] parameters;
+      private final RowBuffer buffer;
+      private volatile PreparedStatement statement;
+
+      Partition(final Object[] parameters, final RowBuffer buffer)
+      {
+         this.parameters = parameters;
+         this.buffer = buffer;
+      }
+
+      @Override
+      public void run()
+      {
+         if (isClosed) {
+            complete(new SQLException("scatter-gather query has been closed"));
+            return;
+         }
+
+         SQLException exception = null;
+         final long remaining = timeoutMs - clockSource.elapsedMillis(startTime);
+         try (Connection connection = hikariPool.getConnectionWithDeadline(remaining);
+              PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            statement = preparedStatement;
+            if (isClosed) {
+               throw new SQLException("scatter-gather query has been closed");
+            }
+
+            if (parameters != null) {
+               for (int i = 0; i < parameters.length; i++) {
+                  preparedStatement.setObject(i + 1, parameters[i]);
+               }
+            }
+
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+               int rowNum = 0;
+               while (resultSet.next()) {
+                  final T mapped = rowMapper.mapRow(resultSet, rowNum++);
+                  offer(mapped != null ? mapped : NULL_ROW);
+               }
+            }
+         }
+         catch (SQLException e) {
+            exception = e;
+         }
+         catch (RuntimeException e) {
+            exception = new SQLException("scatter-gather row mapping failed", e);
+         }
+         finally {
+            statement = null;
+         }
+
+         complete(exception);
+         startNextPartition();
+      }
+
+      /**
+       * Add a row to the buffer, waiting for space until the timeout of the query elapses.
+       */
+      private void offer(final Object mapped) throws SQLException
+      {
+         final long remaining = timeoutMs - clockSource.elapsedMillis(startTime);
+         try {
+            if (!buffer.space.tryAcquire(Math.max(0L, remaining), TimeUnit.MILLISECONDS)) {
+               throw new SQLTimeoutException(hikariPool.poolName + " - Scatter-gather query timed out after " + timeoutMs + "ms");
+            }
+         }
+         catch (InterruptedException e) {
+            throw new SQLException(hikariPool.poolName + " - Interrupted while buffering scatter-gather rows", e);
+         }
+
+         if (isClosed) {
+            throw new SQLException("scatter-gather query has been closed");
+         }
+         buffer.queue.add(mapped);
+      }
+
+      void complete(final SQLException exception)
+      {
+         if (exception != null) {
+            fail(exception);
+         }
+         buffer.queue.add(new PartitionEnd(exception));
+      }
+
+      void cancel()
+      {
+         final PreparedStatement running = statement;
+         if (running != null) {
+            try {
+               running.cancel();
+            }
+            catch (SQLException | RuntimeException e) {
+               // statement completed or driver does not support cancellation
+            }
+         }
+      }
+   }
+}
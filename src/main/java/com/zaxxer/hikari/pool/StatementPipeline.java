@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari.pool;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import com.zaxxer.hikari.RowMapper;
+
+/**
+ * A sequence of independent statements executed back to back on a single connection borrowed
+ * from the pool.  Each statement added yields a future of its result, which is completed when
+ * the pipeline executes.  Consecutive updates with the same SQL are sent as one JDBC batch if the
+ * driver supports batch updates; everything else executes sequentially.  The failure of one
+ * statement fails only its own future.
+ *
+ * @author Brett Wooldridge
+ */
+public final class StatementPipeline
+{
+   private static final Runnable NO_OP = new Runnable() {
+      @Override
+      public void run()
+      {
+      }
+   };
+
+   private final HikariPool hikariPool;
+   private final List<Step<?>> steps;
+   private boolean isExecuted;
+
+   StatementPipeline(final HikariPool hikariPool)
+   {
+      this.hikariPool = hikariPool;
+      this.steps = new ArrayList<>();
+   }
+
+   /**
+    * Add a query to the pipeline.
+    *
+    * @param sql the SQL of the query
+    * @param parameters the parameters to bind via <code>setObject()</code>, or null
+    * @param rowMapper the mapper of each row of the result
+    * @param <T> the type of the mapped rows
+    * @return a future of the list of mapped rows
+    */
+   public <T> Future<List<T>> addQuery(final String sql, final Object[] parameters, final RowMapper<T> rowMapper)
+   {
+      if (rowMapper == null) {
+         throw new IllegalArgumentException("rowMapper cannot be null");
+      }
+      return addStep(new Step<List<T>>(sql, parameters, rowMapper));
+   }
+
+   /**
+    * Add an update to the pipeline.
+    *
+    * @param sql the SQL of the update
+    * @param parameters the parameters to bind via <code>setObject()</code>, or null
+    * @return a future of the update count
+    */
+   public Future<Integer> addUpdate(final String sql, final Object[] parameters)
+   {
+      return addStep(new Step<Integer>(sql, parameters, null));
+   }
+
+   /**
+    * Execute the pipeline on the calling thread.  When this method returns, the futures of all
+    * statements are complete.
+    *
+    * @throws SQLException thrown if a connection cannot be obtained, in which case all futures fail
+    */
+   public void execute() throws SQLException
+   {
+      synchronized (this) {
+         if (isExecuted) {
+            throw new IllegalStateException("pipeline has already been executed");
+         }
+         isExecuted = true;
+      }
+
+      try (Connection connection = hikariPool.getConnection()) {
+         executeSteps(connection);
+      }
+      catch (SQLException e) {
+         for (Step<?> step : steps) {
+            step.fail(e);
+         }
+         throw e;
+      }
+   }
+
+   /**
+    * Execute the pipeline on the pool's asynchronous executor.
+    *
+    * @throws SQLException thrown if too many asynchronous executions are already queued
+    */
+   public void executeAsync() throws SQLException
+   {
+      hikariPool.submitAsync(new Runnable() {
+         @Override
+         public void run()
+         {
+            try {
+               execute();
+            }
+            catch (SQLException e) {
+               // the futures of all steps carry the exception
+            }
+         }
+      });
+   }
+
+   private <V> Step<V> addStep(final Step<V> step)
+   {
+      synchronized (this) {
+         if (isExecuted) {
+            throw new IllegalStateException("pipeline has already been executed");
+         }
+         steps.add(step);
+      }
+      return step;
+   }
+
+   private void executeSteps(final Connection connection)
+   {
+      final boolean isBatchSupported = isBatchSupported(connection);
+
+      final int size = steps.size();
+      int start = 0;
+      while (start < size) {
+         final Step<?> step = steps.get(start);
+         int end = start + 1;
+         if (step.rowMapper == null && isBatchSupported) {
+            while (end < size && steps.get(end).rowMapper == null && steps.get(end).sql.equals(step.sql)) {
+               end++;
+            }
+         }
+
+         if (end - start > 1) {
+            executeBatch(connection, steps.subList(start, end));
+         }
+         else {
+            executeStep(connection, step);
+         }
+         start = end;
+      }
+   }
+
+   private static boolean isBatchSupported(final Connection connection)
+   {
+      try {
+         final DatabaseMetaData metaData = connection.getMetaData();
+         return metaData != null && metaData.supportsBatchUpdates();
+      }
+      catch (SQLException e) {
+         return false;
+      }
+   }
+
+   private static void executeStep(final Connection connection, final Step<?> step)
+   {
+      try (PreparedStatement statement = connection.prepareStatement(step.sql)) {
+         bind(statement, step.parameters);
+         if (step.rowMapper == null) {
+            step.complete(statement.executeUpdate());
+            return;
+         }
+
+         final List<Object> rows = new ArrayList<>();
+         try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+               rows.add(step.rowMapper.mapRow(resultSet, rows.size()));
+            }
+         }
+         step.complete(rows);
+      }
+      catch (SQLException | RuntimeException e) {
+         step.fail(e);
+      }
+   }
+
+   private static void executeBatch(final Connection connection, final List<Step<?>> batch)
+   {
+      try (PreparedStatement statement = connection.prepareStatement(batch.get(0).sql)) {
+         for (Step<?> step : batch) {
+            bind(statement, step.parameters);
+            statement.addBatch();
+         }
+
+         completeBatch(batch, statement.executeBatch(), null);
+      }
+      catch (BatchUpdateException e) {
+         completeBatch(batch, e.getUpdateCounts(), e);
+      }
+      catch (SQLException | RuntimeException e) {
+         for (Step<?> step : batch) {
+            step.fail(e);
+         }
+      }
+   }
+
+   private static void completeBatch(final List<Step<?>> batch, final int[] updateCounts, final SQLException failure)
+   {
+      for (int i = 0; i < batch.size(); i++) {
+         final Step<?> step = batch.get(i);
+         if (updateCounts != null && i < updateCounts.length && updateCounts[i] != Statement.EXECUTE_FAILED) {
+            step.complete(updateCounts[i]);
+         }
+         else if (failure != null) {
+            step.fail(failure);
+         }
+         else {
+            step.complete(Statement.SUCCESS_NO_INFO);
+         }
+      }
+   }
+
+   private static void bind(final PreparedStatement statement, final Object[] parameters) throws SQLException
+   {
+      if (parameters != null) {
+         for (int i = 0; i < parameters.length; i++) {
+            statement.setObject(i + 1, parameters[i]);
+         }
+      }
+   }
+
+   /**
+    * The future of one statement of the pipeline, completed by the pipeline rather than run.
+    */
+   private static final class Step<V> extends FutureTask<V>
+   {
+      private final String sql;
+      private final Object[] parameters;
+      private final RowMapper<?> rowMapper;
+
+      Step(final String sql, final Object[] parameters, final RowMapper<?> rowMapper)
+      {
+         super(NO_OP, null);
+         if (sql == null) {
+            throw new IllegalArgumentException("sql cannot be null");
+         }
+         this.sql = sql;
+         this.parameters = (parameters != null ? parameters.clone() : null);
+         this.rowMapper = rowMapper;
+      }
+
+      @SuppressWarnings("unchecked")
+      void complete(final Object result)
+      {
+         set((V) result);
+      }
+
+      void fail(final Throwable t)
+      {
+         setException(t);
+      }
+   }
+}
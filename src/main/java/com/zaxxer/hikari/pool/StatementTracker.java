@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari.pool;
+
+import java.sql.Statement;
+import java.util.Arrays;
+
+/**
+ * The open statements of a connection, held in slots so that a statement is untracked in
+ * constant time through the slot handle kept by its proxy.  Slots freed by closed statements
+ * are reused, so the slot array only grows to the largest number of statements open at once.
+ * Like the connection itself, an instance is used by one thread at a time.
+ *
+ * @author Brett Wooldridge
+ */
+final class StatementTracker
+{
+   private Statement[] statements;
+   private int[] freeSlots;
+   private int freeCount;
+   private int size;
+
+   StatementTracker(final int capacity)
+   {
+      this.statements = new Statement[capacity];
+      this.freeSlots = new int[capacity];
+   }
+
+   /**
+    * Track a statement.
+    *
+    * @param statement the statement
+    * @return the slot handle to pass to {@link #untrack(int, Statement)}
+    */
+   int track(final Statement statement)
+   {
+      final int slot;
+      if (freeCount > 0) {
+         slot = freeSlots[--freeCount];
+      }
+      else {
+         if (size == statements.length) {
+            statements = Arrays.copyOf(statements, size << 1);
+            freeSlots = Arrays.copyOf(freeSlots, size << 1);
+         }
+         slot = size++;
+      }
+
+      statements[slot] = statement;
+      return slot;
+   }
+
+   /**
+    * Untrack a statement.  Nothing happens if the slot no longer holds the statement, as happens
+    * when the statement is closed after the connection was closed.
+    *
+    * @param slot the slot handle returned by {@link #track(Statement)}
+    * @param statement the statement
+    */
+   void untrack(final int slot, final Statement statement)
+   {
+      if (slot < size && statements[slot] == statement) {
+         statements[slot] = null;
+         freeSlots[freeCount++] = slot;
+      }
+   }
+
+   /**
+    * Get the number of slots in use or freed since the last clear; slots of untracked statements are null.
+    */
+   int size()
+   {
+      return size;
+   }
+
+   /**
+    * Get the statement in a slot.
+    *
+    * @return the statement, or null if the slot is free
+    */
+   Statement get(final int slot)
+   {
+      return statements[slot];
+   }
+
+   /**
+    * Untrack all statements.
+    */
+   void clear()
+   {
+      Arrays.fill(statements, 0, size, null);
+      size = 0;
+      freeCount = 0;
+   }
+}
@@ -156,6 +156,9 @@ public final class PropertyElf
          else if (paramClass == long.class) {
             writeMethod.invoke(target, Long.parseLong(propValue.toString()));
          }
+         else if (paramClass == double.class) {
+            writeMethod.invoke(target, Double.parseDouble(propValue.toString()));
+         }
          else if (paramClass == boolean.class || paramClass == Boolean.class) {
             writeMethod.invoke(target, Boolean.parseBoolean(propValue.toString()));
          }
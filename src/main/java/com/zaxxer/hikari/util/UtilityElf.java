@@ -92,13 +92,28 @@ public final class UtilityElf
     * @return a ThreadPoolExecutor
     */
    public static ThreadPoolExecutor createThreadPoolExecutor(final int queueSize, final String threadName, ThreadFactory threadFactory, final RejectedExecutionHandler policy)
+   {
+      return createThreadPoolExecutor(queueSize, 1, threadName, threadFactory, policy);
+   }
+
+   /**
+    * Create a ThreadPoolExecutor with the specified number of threads.
+    *
+    * @param queueSize the queue size
+    * @param threadCount the number of threads in the executor
+    * @param threadName the thread name
+    * @param threadFactory an optional ThreadFactory
+    * @param policy the RejectedExecutionHandler policy
+    * @return a ThreadPoolExecutor
+    */
+   public static ThreadPoolExecutor createThreadPoolExecutor(final int queueSize, final int threadCount, final String threadName, ThreadFactory threadFactory, final RejectedExecutionHandler policy)
    {
       if (threadFactory == null) {
          threadFactory = new DefaultThreadFactory(threadName, true);
       }
 
       LinkedBlockingQueue<Runnable> queue = new LinkedBlockingQueue<>(queueSize);
-      ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 5, TimeUnit.SECONDS, queue, threadFactory, policy);
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount, 5, TimeUnit.SECONDS, queue, threadFactory, policy);
       executor.allowCoreThreadTimeOut(true);
       return executor;
    }
@@ -37,6 +37,7 @@ import java.sql.SQLWarning;
 import java.sql.SQLXML;
 import java.sql.Time;
 import java.sql.Timestamp;
+import java.util.Arrays;
 import java.util.Calendar;
 
 /**
@@ -45,6 +46,12 @@ import java.util.Calendar;
  */
 public class StubPreparedStatement extends StubStatement implements PreparedStatement
 {
+    public int batchSize;
+    public int executeBatchCount;
+    public int executeUpdateCount;
+    public int executeQueryCount;
+    public int queryRows;
+
     public StubPreparedStatement(Connection connection)
     {
         super(connection);
@@ -96,19 +103,6 @@ public class StubPreparedStatement extends StubStatement implements PreparedStat
     {
     }
 
-    /** {@inheritDoc} */
-    @Override
-    public int getQueryTimeout() throws SQLException
-    {
-        return 0;
-    }
-
-    /** {@inheritDoc} */
-    @Override
-    public void setQueryTimeout(int seconds) throws SQLException
-    {
-    }
-
     /** {@inheritDoc} */
     @Override
     public void cancel() throws SQLException
@@ -179,19 +173,6 @@ public class StubPreparedStatement extends StubStatement implements PreparedStat
         return 0;
     }
 
-    /** {@inheritDoc} */
-    @Override
-    public void setFetchSize(int rows) throws SQLException
-    {
-    }
-
-    /** {@inheritDoc} */
-    @Override
-    public int getFetchSize() throws SQLException
-    {
-        return 0;
-    }
-
     /** {@inheritDoc} */
     @Override
     public int getResultSetConcurrency() throws SQLException
@@ -216,13 +197,18 @@ public class StubPreparedStatement extends StubStatement implements PreparedStat
     @Override
     public void clearBatch() throws SQLException
     {
+        batchSize = 0;
     }
 
     /** {@inheritDoc} */
     @Override
     public int[] executeBatch() throws SQLException
     {
-        return null;
+        final int[] updateCounts = new int[batchSize];
+        Arrays.fill(updateCounts, 1);
+        batchSize = 0;
+        executeBatchCount++;
+        return updateCounts;
     }
 
     /** {@inheritDoc} */
@@ -337,13 +323,41 @@ public class StubPreparedStatement extends StubStatement implements PreparedStat
     @Override
     public ResultSet executeQuery() throws SQLException
     {
-        return new StubResultSet();
+        executeQueryCount++;
+        if (queryRows == 0) {
+            return new StubResultSet();
+        }
+
+        // one INTEGER column numbering the rows from 1
+        final int rows = queryRows;
+        return new StubResultSet() {
+            private int row;
+
+            @Override
+            public boolean next() throws SQLException
+            {
+                return ++row <= rows;
+            }
+
+            @Override
+            public int getInt(int columnIndex) throws SQLException
+            {
+                return row;
+            }
+
+            @Override
+            public Object getObject(int columnIndex) throws SQLException
+            {
+                return row;
+            }
+        };
     }
 
     /** {@inheritDoc} */
     @Override
     public int executeUpdate() throws SQLException
     {
+        executeUpdateCount++;
         return 0;
     }
 
@@ -478,6 +492,7 @@ public class StubPreparedStatement extends StubStatement implements PreparedStat
     @Override
     public void addBatch() throws SQLException
     {
+        batchSize++;
     }
 
     /** {@inheritDoc} */
@@ -38,6 +38,8 @@ import java.sql.Timestamp;
 import java.util.Calendar;
 import java.util.Map;
 
+import javax.sql.rowset.RowSetMetaDataImpl;
+
 /**
  *
  * @author Brett Wooldridge
@@ -331,7 +333,10 @@ public class StubResultSet implements ResultSet
     @Override
     public ResultSetMetaData getMetaData() throws SQLException
     {
-        return null;
+        RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+        metaData.setColumnCount(1);
+        metaData.setColumnType(1, java.sql.Types.INTEGER);
+        return metaData;
     }
 
     /** {@inheritDoc} */
@@ -32,6 +32,8 @@ public class StubStatement implements Statement
    public static volatile boolean oldDriver;
    private boolean closed;
    private Connection connection;
+   private int fetchSize;
+   private int queryTimeout;
 
    public StubStatement(Connection connection) {
       this.connection = connection;
@@ -120,7 +122,7 @@ public class StubStatement implements Statement
    public int getQueryTimeout() throws SQLException
    {
       checkClosed();
-      return 0;
+      return queryTimeout;
    }
 
    /** {@inheritDoc} */
@@ -132,6 +134,7 @@ public class StubStatement implements Statement
       }
 
       checkClosed();
+      queryTimeout = seconds;
    }
 
    /** {@inheritDoc} */
@@ -215,6 +218,7 @@ public class StubStatement implements Statement
    public void setFetchSize(int rows) throws SQLException
    {
       checkClosed();
+      fetchSize = rows;
    }
 
    /** {@inheritDoc} */
@@ -222,7 +226,7 @@ public class StubStatement implements Statement
    public int getFetchSize() throws SQLException
    {
       checkClosed();
-      return 0;
+      return fetchSize;
    }
 
    /** {@inheritDoc} */
@@ -10,6 +10,7 @@ import org.junit.Test;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.mocks.StubConnection;
 import com.zaxxer.hikari.util.UtilityElf;
 
 public class ConnectionStateTest
@@ -122,6 +123,42 @@ public class ConnectionStateTest
       }
    }
 
+   @Test
+   public void testRedundantStateChangesSkipped() throws SQLException
+   {
+      HikariDataSource ds = new HikariDataSource();
+      ds.setTransactionIsolation("TRANSACTION_READ_COMMITTED");
+      ds.setCatalog("test");
+      ds.setMinimumIdle(1);
+      ds.setMaximumPoolSize(1);
+      ds.setConnectionTestQuery("VALUES 1");
+      ds.setDataSourceClassName("com.zaxxer.hikari.mocks.StubDataSource");
+
+      try {
+         Connection connection = ds.getConnection();
+         StubConnection unwrap = connection.unwrap(StubConnection.class);
+         connection.setSchema("public");
+
+         // Any call that reaches the driver will now throw
+         unwrap.throwException = true;
+         try {
+            connection.setAutoCommit(true);
+            connection.setReadOnly(false);
+            connection.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+            connection.setCatalog("test");
+            connection.setSchema("public");
+         }
+         finally {
+            unwrap.throwException = false;
+         }
+
+         connection.close();
+      }
+      finally {
+         ds.close();
+      }
+   }
+
    @Test
    public void testCommitTracking() throws SQLException
    {
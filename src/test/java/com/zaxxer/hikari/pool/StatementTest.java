@@ -1,8 +1,19 @@
 package com.zaxxer.hikari.pool;
 
+import java.io.ByteArrayInputStream;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
 import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import javax.sql.rowset.RowSetMetaDataImpl;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -11,6 +22,9 @@ import org.junit.Test;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.mocks.StubPreparedStatement;
+import com.zaxxer.hikari.mocks.StubResultSet;
+import com.zaxxer.hikari.mocks.StubStatement;
 
 public class StatementTest
 {
@@ -96,5 +110,521 @@ public class StatementTest
         statement2.close();
 
         connection.close();
-    }    
+    }
+
+    @Test
+    public void testStatementSlotReuse() throws SQLException
+    {
+        Connection connection = ds.getConnection();
+
+        Statement statement1 = connection.createStatement();
+        Statement statement2 = connection.createStatement();
+        Statement statement3 = connection.createStatement();
+
+        statement2.close();
+        statement1.close();
+        Statement statement4 = connection.createStatement();
+        Statement statement5 = connection.createStatement();
+
+        connection.close();
+
+        Assert.assertTrue(statement3.isClosed());
+        Assert.assertTrue(statement4.isClosed());
+        Assert.assertTrue(statement5.isClosed());
+    }
+
+    @Test
+    public void testStatementTrackingDisabled() throws SQLException
+    {
+        HikariConfig config = new HikariConfig();
+        config.setMinimumIdle(1);
+        config.setMaximumPoolSize(1);
+        config.setTrackStatements(false);
+        config.setConnectionTestQuery("VALUES 1");
+        config.setDataSourceClassName("com.zaxxer.hikari.mocks.StubDataSource");
+
+        try (HikariDataSource untrackedDs = new HikariDataSource(config)) {
+            Connection connection = untrackedDs.getConnection();
+            Statement statement1 = connection.createStatement();
+            Statement statement2 = connection.createStatement();
+            statement2.close();
+
+            connection.close();
+
+            Assert.assertFalse(statement1.isClosed());
+            Assert.assertTrue(statement2.isClosed());
+            statement1.close();
+        }
+    }
+
+    @Test
+    public void testBatchCoalescing() throws SQLException
+    {
+        HikariConfig config = new HikariConfig();
+        config.setMinimumIdle(1);
+        config.setMaximumPoolSize(1);
+        config.setAutoCommit(false);
+        config.setBatchCoalescingSize(3);
+        config.setConnectionTestQuery("VALUES 1");
+        config.setDataSourceClassName("com.zaxxer.hikari.mocks.StubDataSource");
+
+        try (HikariDataSource coalescingDs = new HikariDataSource(config)) {
+            Connection connection = coalescingDs.getConnection();
+            PreparedStatement statement = connection.prepareStatement("INSERT INTO test VALUES (?)");
+            StubPreparedStatement stubStatement = statement.unwrap(StubPreparedStatement.class);
+
+            for (int i = 0; i < 3; i++) {
+                Assert.assertEquals(Statement.SUCCESS_NO_INFO, statement.executeUpdate());
+            }
+            Assert.assertEquals(0, stubStatement.executeUpdateCount);
+            Assert.assertEquals("Batch not flushed at the size threshold", 1, stubStatement.executeBatchCount);
+            Assert.assertArrayEquals(new int[] { 1, 1, 1 }, ((ProxyPreparedStatement) statement).getCoalescedUpdateCounts());
+
+            statement.executeUpdate();
+            statement.executeUpdate();
+            connection.commit();
+            Assert.assertEquals("Batch not flushed on commit", 2, stubStatement.executeBatchCount);
+
+            // Counts are cleared on each flush and returned only once
+            int[] updateCounts = ((ProxyPreparedStatement) statement).getCoalescedUpdateCounts();
+            Assert.assertArrayEquals(new int[] { 1, 1 }, updateCounts);
+            Assert.assertArrayEquals(new int[0], ((ProxyPreparedStatement) statement).getCoalescedUpdateCounts());
+
+            // Execution of another statement flushes the pending batch first
+            statement.executeUpdate();
+            connection.createStatement().execute("SELECT 1");
+            Assert.assertEquals(3, stubStatement.executeBatchCount);
+
+            // The batch of the application is kept apart from coalesced updates
+            PreparedStatement batched = connection.prepareStatement("INSERT INTO test VALUES (?)");
+            StubPreparedStatement stubBatched = batched.unwrap(StubPreparedStatement.class);
+            batched.executeUpdate();
+            batched.addBatch();
+            Assert.assertEquals(1, stubBatched.executeBatchCount);
+            batched.executeUpdate();
+            Assert.assertEquals(1, stubBatched.executeUpdateCount);
+            Assert.assertArrayEquals(new int[] { 1 }, batched.executeBatch());
+            connection.commit();
+
+            // Nothing is coalesced in autocommit mode
+            connection.setAutoCommit(true);
+            statement.executeUpdate();
+            Assert.assertEquals(1, stubStatement.executeUpdateCount);
+
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testStrictBatchCoalescing() throws SQLException
+    {
+        HikariConfig config = new HikariConfig();
+        config.setMinimumIdle(1);
+        config.setMaximumPoolSize(1);
+        config.setAutoCommit(false);
+        config.setBatchCoalescingSize(10);
+        config.setBatchCoalescingStrict(true);
+        config.setConnectionTestQuery("VALUES 1");
+        config.setDataSourceClassName("com.zaxxer.hikari.mocks.StubDataSource");
+
+        try (HikariDataSource coalescingDs = new HikariDataSource(config)) {
+            Connection connection = coalescingDs.getConnection();
+            PreparedStatement statement = connection.prepareStatement("UPDATE test SET x = ?");
+            StubPreparedStatement stubStatement = statement.unwrap(StubPreparedStatement.class);
+
+            // Every update is executed and reports its real count
+            Assert.assertEquals(0, statement.executeUpdate());
+            Assert.assertEquals(0, statement.executeUpdate());
+            Assert.assertEquals(2, stubStatement.executeUpdateCount);
+            Assert.assertEquals(0, stubStatement.executeBatchCount);
+
+            connection.rollback();
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testResultCache() throws SQLException
+    {
+        HikariConfig config = new HikariConfig();
+        config.setMinimumIdle(1);
+        config.setMaximumPoolSize(1);
+        config.setResultCacheSize(2);
+        config.addCacheableQuery("SELECT name FROM country WHERE id = ?");
+        config.setConnectionTestQuery("VALUES 1");
+        config.setDataSourceClassName("com.zaxxer.hikari.mocks.StubDataSource");
+
+        try (HikariDataSource cachingDs = new HikariDataSource(config)) {
+            Connection connection = cachingDs.getConnection();
+            PreparedStatement statement = connection.prepareStatement("SELECT name FROM country WHERE id = ?");
+            StubPreparedStatement stubStatement = statement.unwrap(StubPreparedStatement.class);
+
+            statement.setInt(1, 1);
+            statement.executeQuery().close();
+            statement.executeQuery().close();
+            Assert.assertEquals("Second query not served from the cache", 1, stubStatement.executeQueryCount);
+
+            statement.setInt(1, 2);
+            statement.executeQuery().close();
+            Assert.assertEquals("Different parameters served from the cache", 2, stubStatement.executeQueryCount);
+
+            PreparedStatement hinted = connection.prepareStatement("SELECT /*hikari.cache*/ 1");
+            hinted.executeQuery().close();
+            hinted.executeQuery().close();
+            Assert.assertEquals(1, hinted.unwrap(StubPreparedStatement.class).executeQueryCount);
+
+            // Oldest result was evicted by the size bound
+            statement.setInt(1, 1);
+            statement.executeQuery().close();
+            Assert.assertEquals(3, stubStatement.executeQueryCount);
+
+            cachingDs.invalidateResultCache("SELECT name FROM country WHERE id = ?");
+            statement.executeQuery().close();
+            Assert.assertEquals(4, stubStatement.executeQueryCount);
+
+            // Write transactions bypass the cache
+            connection.setAutoCommit(false);
+            statement.executeQuery().close();
+            Assert.assertEquals(5, stubStatement.executeQueryCount);
+            connection.rollback();
+
+            PreparedStatement uncached = connection.prepareStatement("SELECT 1");
+            connection.setAutoCommit(true);
+            uncached.executeQuery().close();
+            uncached.executeQuery().close();
+            Assert.assertEquals(2, uncached.unwrap(StubPreparedStatement.class).executeQueryCount);
+
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testResultCacheKeys() throws SQLException
+    {
+        HikariConfig config = new HikariConfig();
+        config.setMinimumIdle(1);
+        config.setMaximumPoolSize(1);
+        config.setAutoCommit(false);
+        config.setReadOnly(true);
+        config.setBatchCoalescingSize(10);
+        config.setResultCacheSize(100);
+        config.setResultCacheMaxBytes(1000);
+        config.addCacheableQuery("SELECT * FROM event WHERE at > ?");
+        config.setConnectionTestQuery("VALUES 1");
+        config.setDataSourceClassName("com.zaxxer.hikari.mocks.StubDataSource");
+
+        try (HikariDataSource cachingDs = new HikariDataSource(config)) {
+            Connection connection = cachingDs.getConnection();
+            PreparedStatement statement = connection.prepareStatement("SELECT * FROM event WHERE at > ?");
+            StubPreparedStatement stubStatement = statement.unwrap(StubPreparedStatement.class);
+            stubStatement.queryRows = 3;
+
+            Timestamp at = new Timestamp(1000L);
+            statement.setTimestamp(1, at);
+            statement.executeQuery().close();
+            statement.setTimestamp(1, at, Calendar.getInstance(TimeZone.getTimeZone("UTC")));
+            statement.executeQuery().close();
+            statement.setTimestamp(1, at, Calendar.getInstance(TimeZone.getTimeZone("America/New_York")));
+            statement.executeQuery().close();
+            Assert.assertEquals("Calendar not part of the key", 3, stubStatement.executeQueryCount);
+
+            statement.setTimestamp(1, at);
+            at.setTime(2000L);
+            ResultSet resultSet = statement.executeQuery();
+            Assert.assertEquals("Key changed by mutating the bound Timestamp", 3, stubStatement.executeQueryCount);
+
+            int rows = 0;
+            while (resultSet.next()) {
+                Assert.assertEquals(++rows, resultSet.getInt(1));
+            }
+            Assert.assertEquals(3, rows);
+            resultSet.first();
+            try {
+                resultSet.updateInt(1, 42);
+                Assert.fail("Cached result set is updatable");
+            }
+            catch (SQLException e) {
+                // expected
+            }
+            resultSet.close();
+
+            statement.setObject(1, "x", Types.VARCHAR, 1);
+            statement.executeQuery().close();
+            statement.setObject(1, "x", Types.VARCHAR, 2);
+            statement.executeQuery().close();
+            Assert.assertEquals("Length not part of the key", 5, stubStatement.executeQueryCount);
+
+            statement.setBinaryStream(1, new ByteArrayInputStream(new byte[1]));
+            statement.executeQuery().close();
+            statement.executeQuery().close();
+            Assert.assertEquals("Stream parameter served from the cache", 7, stubStatement.executeQueryCount);
+
+            statement.setTimestamp(1, at);
+            connection.setCatalog("tenant2");
+            statement.executeQuery().close();
+            Assert.assertEquals("Catalog not part of the key", 8, stubStatement.executeQueryCount);
+
+            // Pending coalesced updates are flushed before the query instead of being bypassed by a hit
+            PreparedStatement update = connection.prepareStatement("UPDATE event SET at = ?");
+            update.executeUpdate();
+            statement.executeQuery().close();
+            Assert.assertEquals(1, update.unwrap(StubPreparedStatement.class).executeBatchCount);
+            Assert.assertEquals(9, stubStatement.executeQueryCount);
+
+            // A result exceeding resultCacheMaxBytes is returned in full but not cached
+            stubStatement.queryRows = 100;
+            statement.setInt(1, 1);
+            resultSet = statement.executeQuery();
+            rows = 0;
+            while (resultSet.next()) {
+                Assert.assertEquals(++rows, resultSet.getInt(1));
+            }
+            resultSet.close();
+            Assert.assertEquals(100, rows);
+            statement.executeQuery().close();
+            Assert.assertEquals("Oversized result cached", 11, stubStatement.executeQueryCount);
+
+            connection.rollback();
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testResultCacheStatementLimits() throws SQLException
+    {
+        HikariConfig config = new HikariConfig();
+        config.setMinimumIdle(1);
+        config.setMaximumPoolSize(1);
+        config.setResultCacheSize(10);
+        config.addCacheableQuery("SELECT name FROM country WHERE id > ?");
+        config.setConnectionTestQuery("VALUES 1");
+        config.setDataSourceClassName("com.zaxxer.hikari.mocks.StubDataSource");
+
+        try (HikariDataSource cachingDs = new HikariDataSource(config)) {
+            Connection connection = cachingDs.getConnection();
+
+            PreparedStatement limited = connection.prepareStatement("SELECT name FROM country WHERE id > ?");
+            limited.setMaxRows(1);
+            limited.setInt(1, 0);
+            limited.executeQuery().close();
+            Assert.assertEquals(1, limited.unwrap(StubPreparedStatement.class).executeQueryCount);
+
+            // A truncated result is not served to a statement without the limit
+            PreparedStatement unlimited = connection.prepareStatement("SELECT name FROM country WHERE id > ?");
+            StubPreparedStatement stubUnlimited = unlimited.unwrap(StubPreparedStatement.class);
+            unlimited.setInt(1, 0);
+            unlimited.executeQuery().close();
+            Assert.assertEquals("maxRows not part of the key", 1, stubUnlimited.executeQueryCount);
+
+            unlimited.setMaxFieldSize(16);
+            unlimited.executeQuery().close();
+            Assert.assertEquals("maxFieldSize not part of the key", 2, stubUnlimited.executeQueryCount);
+
+            unlimited.executeQuery().close();
+            Assert.assertEquals(2, stubUnlimited.executeQueryCount);
+
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testAdaptiveFetchSize() throws SQLException
+    {
+        Assert.assertEquals(FetchSizeAdvisor.fingerprint("SELECT * FROM t1 WHERE id = 42 AND name = 'it''s'"),
+                            FetchSizeAdvisor.fingerprint("select *  from t1\n where id = 7 and name = 'x'"));
+
+        FetchSizeAdvisor advisor = new FetchSizeAdvisor(10, 500);
+        FetchSizeAdvisor.Stats stats = advisor.getStats("SELECT * FROM orders WHERE customer = 1");
+        Assert.assertEquals("No fetch size before anything is learned", 0, advisor.getFetchSize(stats));
+        for (int i = 0; i < 10; i++) {
+            stats.recordRows(100);
+        }
+        Assert.assertEquals(101, advisor.getFetchSize(advisor.getStats("SELECT * FROM orders WHERE customer = 2")));
+        stats.recordRows(1000000);
+        Assert.assertEquals("Fetch size not bounded", 500, advisor.getFetchSize(stats));
+
+        Assert.assertSame("Repeated SQL not mapped to its statistics", stats, advisor.getStats("SELECT * FROM orders WHERE customer = 1"));
+        for (int i = 0; i < 2 * FetchSizeAdvisor.MAX_FINGERPRINTS; i++) {
+            Assert.assertNotNull(advisor.getStats("SELECT * FROM t" + i));
+        }
+        Assert.assertEquals("Statistics not bounded", FetchSizeAdvisor.MAX_FINGERPRINTS, advisor.size());
+
+        HikariConfig config = new HikariConfig();
+        config.setMinimumIdle(1);
+        config.setMaximumPoolSize(1);
+        config.setAdaptiveFetchSizeMin(25);
+        config.setAdaptiveFetchSizeMax(1000);
+        config.setConnectionTestQuery("VALUES 1");
+        config.setDataSourceClassName("com.zaxxer.hikari.mocks.StubDataSource");
+
+        try (HikariDataSource fetchDs = new HikariDataSource(config)) {
+            Connection connection = fetchDs.getConnection();
+            PreparedStatement statement = connection.prepareStatement("SELECT * FROM orders");
+            StubPreparedStatement stubStatement = statement.unwrap(StubPreparedStatement.class);
+
+            ResultSet resultSet = statement.executeQuery();
+            Assert.assertEquals("Driver default replaced before anything is learned", 0, stubStatement.getFetchSize());
+            while (resultSet.next()) {
+                // consume
+            }
+            resultSet.close();
+
+            statement.executeQuery().close();
+            Assert.assertEquals(25, stubStatement.getFetchSize());
+
+            PreparedStatement explicit = connection.prepareStatement("SELECT * FROM orders");
+            explicit.setFetchSize(5000);
+            explicit.executeQuery().close();
+            Assert.assertEquals(5000, explicit.getFetchSize());
+
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testQueryTimeoutDeadline() throws Exception
+    {
+        HikariConfig config = new HikariConfig();
+        config.setMinimumIdle(1);
+        config.setMaximumPoolSize(1);
+        config.setQueryTimeout(30000);
+        config.setConnectionTestQuery("VALUES 1");
+        config.setDataSourceClassName("com.zaxxer.hikari.mocks.StubDataSource");
+
+        try (HikariDataSource timeoutDs = new HikariDataSource(config)) {
+            try (Connection connection = timeoutDs.getConnection()) {
+                Statement statement = connection.createStatement();
+                Assert.assertEquals("Pool default not applied", 30, statement.getQueryTimeout());
+                Assert.assertEquals("Driver called before execution", 0, statement.unwrap(StubStatement.class).getQueryTimeout());
+
+                statement.setQueryTimeout(5);
+                statement.execute("SELECT 1");
+                Assert.assertEquals(5, statement.getQueryTimeout());
+            }
+
+            try (Connection connection = timeoutDs.getConnectionWithDeadline(3000)) {
+                PreparedStatement statement = connection.prepareStatement("SELECT 1");
+                statement.executeQuery().close();
+                Assert.assertEquals("Timeout not clamped to the deadline", 3, statement.getQueryTimeout());
+            }
+
+            try (Connection connection = timeoutDs.getConnectionWithDeadline(100)) {
+                Thread.sleep(200);
+                try {
+                    connection.createStatement().executeQuery("SELECT 1");
+                    Assert.fail("Statement executed after the deadline");
+                }
+                catch (SQLTimeoutException e) {
+                    // expected
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testColumnarExport() throws SQLException
+    {
+        final RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+        metaData.setColumnCount(4);
+        metaData.setColumnType(1, Types.INTEGER);
+        metaData.setColumnType(2, Types.VARCHAR);
+        metaData.setColumnType(3, Types.DOUBLE);
+        metaData.setColumnType(4, Types.TIMESTAMP);
+
+        // 2500 rows; the id is null on every tenth row
+        final ResultSet rows = new StubResultSet() {
+            private int row;
+            private boolean wasNull;
+
+            @Override
+            public boolean next() throws SQLException
+            {
+                return ++row <= 2500;
+            }
+
+            @Override
+            public int getInt(int columnIndex) throws SQLException
+            {
+                wasNull = row % 10 == 0;
+                return wasNull ? 0 : row;
+            }
+
+            @Override
+            public String getString(int columnIndex) throws SQLException
+            {
+                return row % 7 == 0 ? null : new String[] { "red", "green", "blue" }[row % 3];
+            }
+
+            @Override
+            public double getDouble(int columnIndex) throws SQLException
+            {
+                wasNull = false;
+                return row / 2.0;
+            }
+
+            @Override
+            public Object getObject(int columnIndex) throws SQLException
+            {
+                wasNull = false;
+                return "ts" + row;
+            }
+
+            @Override
+            public boolean wasNull() throws SQLException
+            {
+                return wasNull;
+            }
+
+            @Override
+            public ResultSetMetaData getMetaData() throws SQLException
+            {
+                return metaData;
+            }
+        };
+
+        try (Connection connection = ds.getConnection()) {
+            Statement statement = connection.createStatement();
+            ProxyResultSet resultSet = (ProxyResultSet) ProxyFactory.getProxyResultSet((ProxyConnection) connection, (ProxyStatement) statement, rows);
+
+            ColumnBatch batch = new ColumnBatch(resultSet.getMetaData(), 1000);
+            Assert.assertEquals(ColumnBatch.ColumnType.INT, batch.getColumnType(1));
+            Assert.assertEquals(ColumnBatch.ColumnType.STRING, batch.getColumnType(2));
+            Assert.assertEquals(ColumnBatch.ColumnType.DOUBLE, batch.getColumnType(3));
+            Assert.assertEquals(ColumnBatch.ColumnType.OBJECT, batch.getColumnType(4));
+
+            int[] ids = batch.getInts(1);
+            double[] values = batch.getDoubles(3);
+            int total = 0;
+            int chunks = 0;
+            for (int size = resultSet.fetchColumns(batch); size > 0; size = resultSet.fetchColumns(batch)) {
+                Assert.assertSame("Buffers not reused", ids, batch.getInts(1));
+                for (int i = 0; i < size; i++) {
+                    int row = total + i + 1;
+                    Assert.assertEquals(row % 10 == 0, batch.isNull(1, i));
+                    if (row % 10 != 0) {
+                        Assert.assertEquals(row, ids[i]);
+                    }
+                    Assert.assertEquals(row % 7 == 0, batch.isNull(2, i));
+                    Assert.assertEquals(row % 7 == 0 ? null : new String[] { "red", "green", "blue" }[row % 3], batch.getString(2, i));
+                    Assert.assertEquals(row / 2.0, values[i], 0.0);
+                    Assert.assertEquals("ts" + row, batch.getObjects(4)[i]);
+                }
+                Assert.assertEquals(3, batch.getDictionarySize(2));
+                total += size;
+                chunks++;
+            }
+
+            Assert.assertEquals(2500, total);
+            Assert.assertEquals(3, chunks);
+            Assert.assertEquals(0, batch.getSize());
+
+            try {
+                batch.getLongs(1);
+                Assert.fail("INT column read as LONG");
+            }
+            catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
 }
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari.pool;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.RowMapper;
+import com.zaxxer.hikari.mocks.StubConnection;
+import com.zaxxer.hikari.mocks.StubDataSource;
+import com.zaxxer.hikari.mocks.StubPreparedStatement;
+
+public class TestAsyncQueries
+{
+   @Test
+   public void testExecuteQueryAsync() throws Exception
+   {
+      StubDataSource stubDataSource = new StubDataSource() {
+         /** {@inheritDoc} */
+         @Override
+         public Connection getConnection() throws SQLException
+         {
+            return new StubConnection() {
+               /** {@inheritDoc} */
+               @Override
+               public PreparedStatement prepareStatement(String sql) throws SQLException
+               {
+                  // the bound id is the number of rows the query returns
+                  return new StubPreparedStatement(this) {
+                     /** {@inheritDoc} */
+                     @Override
+                     public void setObject(int parameterIndex, Object x) throws SQLException
+                     {
+                        queryRows = (Integer) x;
+                     }
+                  };
+               }
+            };
+         }
+      };
+
+      HikariConfig config = new HikariConfig();
+      config.setMinimumIdle(1);
+      config.setMaximumPoolSize(2);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSource(stubDataSource);
+
+      RowMapper<String> rowMapper = new RowMapper<String>() {
+         @Override
+         public String mapRow(ResultSet resultSet, int rowNum) throws SQLException
+         {
+            return rowNum + ":" + resultSet.getInt(1);
+         }
+      };
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         List<Future<List<String>>> futures = new ArrayList<>();
+         for (int i = 0; i < 20; i++) {
+            futures.add(ds.executeQueryAsync("SELECT name FROM t WHERE id = ?", new Object[] { i }, rowMapper));
+         }
+
+         for (int i = 0; i < 20; i++) {
+            List<String> expected = new ArrayList<>();
+            for (int row = 1; row <= i; row++) {
+               expected.add((row - 1) + ":" + row);
+            }
+            Assert.assertEquals(expected, futures.get(i).get(5, TimeUnit.SECONDS));
+         }
+
+         HikariPool pool = TestElf.getPool(ds);
+         Assert.assertTrue("Async execution exceeded the pool", pool.getTotalConnections() <= 2);
+         Assert.assertEquals(0, pool.getActiveConnections());
+      }
+
+      config.setMaximumPoolSize(1);
+      config.setConnectionTimeout(1000);
+
+      List<Future<List<String>>> pending = new ArrayList<>();
+      HikariDataSource ds = new HikariDataSource(config);
+      try {
+         // the only connection is held, so one query waits for it and the others stay queued
+         Connection connection = ds.getConnection();
+         for (int i = 0; i < 3; i++) {
+            pending.add(ds.executeQueryAsync("SELECT name FROM t WHERE id = ?", new Object[] { i }, rowMapper));
+         }
+         Assert.assertFalse(pending.get(0).isDone());
+      }
+      finally {
+         ds.close();
+      }
+
+      for (Future<List<String>> future : pending) {
+         Assert.assertTrue("Query still pending after shutdown", future.isDone());
+         try {
+            future.get();
+            Assert.fail("Query should have failed at shutdown");
+         }
+         catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof SQLException);
+         }
+      }
+   }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari.pool;
+
+import static com.zaxxer.hikari.util.UtilityElf.quietlySleep;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zaxxer.hikari.BorrowLane;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+public class TestBorrowLanes
+{
+   @Test
+   public void testPriorityHandoff() throws Exception
+   {
+      HikariConfig config = new HikariConfig();
+      config.setMinimumIdle(1);
+      config.setMaximumPoolSize(1);
+      config.setConnectionTimeout(5000);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSourceClassName("com.zaxxer.hikari.mocks.StubDataSource");
+      config.addBorrowLane(new BorrowLane("interactive", 10, 0, 0));
+
+      try (final HikariDataSource ds = new HikariDataSource(config)) {
+         final ConcurrentLinkedQueue<String> order = new ConcurrentLinkedQueue<>();
+         final CountDownLatch latch = new CountDownLatch(2);
+
+         Connection connection = ds.getConnection();
+
+         Thread background = new Thread() {
+            @Override
+            public void run()
+            {
+               try (Connection c = ds.getConnection()) {
+                  order.add("background");
+               }
+               catch (SQLException e) {
+                  order.add("failed");
+               }
+               latch.countDown();
+            }
+         };
+
+         Thread interactive = new Thread() {
+            @Override
+            public void run()
+            {
+               try (Connection c = ds.getConnection("interactive")) {
+                  order.add("interactive");
+                  quietlySleep(100);
+               }
+               catch (SQLException e) {
+                  order.add("failed");
+               }
+               latch.countDown();
+            }
+         };
+
+         background.start();
+         quietlySleep(200);
+         interactive.start();
+         quietlySleep(200);
+
+         connection.close();
+         latch.await();
+
+         Assert.assertEquals("interactive", order.poll());
+         Assert.assertEquals("background", order.poll());
+      }
+   }
+
+   @Test
+   public void testReservedCapacity() throws Exception
+   {
+      HikariConfig config = new HikariConfig();
+      config.setMinimumIdle(2);
+      config.setMaximumPoolSize(2);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setConnectionTimeout(1000);
+      config.setDataSourceClassName("com.zaxxer.hikari.mocks.StubDataSource");
+      config.addBorrowLane(new BorrowLane("admin", 0, 1, 500));
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         HikariPool pool = TestElf.getPool(ds);
+
+         try (Connection connection = ds.getConnection()) {
+            try {
+               pool.getConnection(500).close();
+               Assert.fail("Reserved capacity should not be available to the default lane");
+            }
+            catch (SQLException e) {
+               // expected
+            }
+
+            // Bulk and affinity borrows are admitted through the default lane as well
+            try {
+               pool.getConnections(1, 500).get(0).close();
+               Assert.fail("Reserved capacity should not be available to bulk borrows");
+            }
+            catch (SQLException e) {
+               // expected
+            }
+            try {
+               pool.getConnectionWithAffinity("tenant").close();
+               Assert.fail("Reserved capacity should not be available to affinity borrows");
+            }
+            catch (SQLException e) {
+               // expected
+            }
+
+            try (Connection adminConnection = ds.getConnection("admin")) {
+               Assert.assertNotNull(adminConnection);
+            }
+         }
+      }
+   }
+
+   @Test
+   public void testReservedCapacityWithOverflow() throws Exception
+   {
+      HikariConfig config = new HikariConfig();
+      config.setMinimumIdle(2);
+      config.setMaximumPoolSize(2);
+      config.setOverflowPoolSize(2);
+      config.setOverflowThreshold(100);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setConnectionTimeout(1000);
+      config.setDataSourceClassName("com.zaxxer.hikari.mocks.StubDataSource");
+      config.addBorrowLane(new BorrowLane("admin", 0, 1, 500));
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         HikariPool pool = TestElf.getPool(ds);
+
+         try (Connection connection = ds.getConnection()) {
+            // The overflow band does not make the reserved connection available to the default lane
+            try {
+               pool.getConnection(500).close();
+               Assert.fail("Reserved capacity should not be available to the default lane");
+            }
+            catch (SQLException e) {
+               // expected
+            }
+
+            try (Connection adminConnection = ds.getConnection("admin")) {
+               Assert.assertNotNull(adminConnection);
+            }
+         }
+      }
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void testUnknownLane() throws Exception
+   {
+      HikariConfig config = new HikariConfig();
+      config.setMinimumIdle(1);
+      config.setMaximumPoolSize(1);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSourceClassName("com.zaxxer.hikari.mocks.StubDataSource");
+      config.addBorrowLane(new BorrowLane("batch", -1, 0, 0));
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         ds.getConnection("interactive");
+      }
+   }
+
+   @Test
+   public void testCopyStateLanes()
+   {
+      HikariConfig config = new HikariConfig();
+      config.addBorrowLane(new BorrowLane("batch", -1, 0, 0));
+
+      HikariConfig copy = new HikariConfig();
+      config.copyState(copy);
+      copy.addBorrowLane(new BorrowLane("admin", 1, 0, 0));
+
+      Assert.assertEquals(1, config.getBorrowLanes().size());
+      Assert.assertEquals(2, copy.getBorrowLanes().size());
+   }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari.pool;
+
+import static com.zaxxer.hikari.util.UtilityElf.quietlySleep;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+public class TestBulkAcquisition
+{
+   @Test
+   public void testBulkAcquisition() throws Exception
+   {
+      HikariConfig config = new HikariConfig();
+      config.setMinimumIdle(4);
+      config.setMaximumPoolSize(4);
+      config.setConnectionTimeout(2000);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSourceClassName("com.zaxxer.hikari.mocks.StubDataSource");
+
+      try (final HikariDataSource ds = new HikariDataSource(config)) {
+         HikariPool pool = TestElf.getPool(ds);
+
+         Connection connection1 = ds.getConnection();
+         Connection connection2 = ds.getConnection();
+         try {
+            pool.getConnections(3, 500);
+            Assert.fail("Should have timed out");
+         }
+         catch (SQLException e) {
+            // None of the partially gathered connections are held
+            Assert.assertSame("Idle connections not as expected", 2, pool.getIdleConnections());
+         }
+         connection1.close();
+         connection2.close();
+
+         // Two fan-outs that would deadlock if each held a partial set
+         final AtomicInteger completed = new AtomicInteger();
+         Thread[] threads = new Thread[2];
+         for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+               @Override
+               public void run()
+               {
+                  try {
+                     List<Connection> connections = ds.getConnections(3);
+                     quietlySleep(100);
+                     for (Connection connection : connections) {
+                        connection.close();
+                     }
+                     completed.incrementAndGet();
+                  }
+                  catch (SQLException e) {
+                     // fall through
+                  }
+               }
+            };
+            threads[i].start();
+         }
+         for (Thread thread : threads) {
+            thread.join();
+         }
+
+         Assert.assertEquals(2, completed.get());
+         Assert.assertSame("Idle connections not as expected", 4, pool.getIdleConnections());
+      }
+   }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari.pool;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.mocks.StubConnection;
+import com.zaxxer.hikari.mocks.StubDataSource;
+import com.zaxxer.hikari.mocks.StubPreparedStatement;
+
+public class TestBulkLoader
+{
+   @Test
+   public void testBulkLoader() throws Exception
+   {
+      // Count committed rows; the first batch fails once with a serialization failure
+      final AtomicInteger rowsWritten = new AtomicInteger();
+      final AtomicInteger failures = new AtomicInteger(1);
+      final AtomicInteger commitFailures = new AtomicInteger();
+      class LoadConnection extends StubConnection {
+         /** {@inheritDoc} */
+         @Override
+         public void commit() throws SQLException
+         {
+            if (commitFailures.getAndDecrement() > 0) {
+               throw new SQLException("Connection reset", "08006");
+            }
+         }
+
+         /** {@inheritDoc} */
+         @Override
+         public PreparedStatement prepareStatement(String sql) throws SQLException
+         {
+            return new StubPreparedStatement(this) {
+               @Override
+               public int[] executeBatch() throws SQLException
+               {
+                  if (failures.getAndDecrement() > 0) {
+                     throw new SQLException("Serialization failure", "40001");
+                  }
+                  rowsWritten.addAndGet(batchSize);
+                  return super.executeBatch();
+               }
+            };
+         }
+      }
+
+      StubDataSource stubDataSource = new StubDataSource() {
+         /** {@inheritDoc} */
+         @Override
+         public Connection getConnection() throws SQLException
+         {
+            return new LoadConnection();
+         }
+      };
+
+      HikariConfig config = new HikariConfig();
+      config.setMinimumIdle(1);
+      config.setMaximumPoolSize(3);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSource(stubDataSource);
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         BulkLoader loader = ds.bulkLoader("INSERT INTO t (a, b) VALUES (?, ?)", 2, 4);
+         try {
+            loader.addRow(1);
+            Assert.fail("Wrong column count accepted");
+         }
+         catch (IllegalArgumentException e) {
+            // expected
+         }
+
+         Object[] row = new Object[2];
+         for (int i = 0; i < 10000; i++) {
+            row[0] = i;
+            row[1] = "row" + i;
+            loader.addRow(row);
+         }
+         loader.close();
+
+         Assert.assertEquals(10000, rowsWritten.get());
+         Assert.assertEquals(10000, loader.getRowsLoaded());
+         Assert.assertEquals(1, loader.getRetries());
+         Assert.assertTrue(loader.getBatchesLoaded() > 0);
+         Assert.assertTrue(loader.getBatchSize() > BulkLoader.MIN_BATCH_SIZE * 8);
+         Assert.assertTrue(loader.getRowsPerSecond() > 0);
+         Assert.assertEquals(0, TestElf.getPool(ds).getActiveConnections());
+
+         // A batch whose commit failed may have been applied, so it is not retried
+         commitFailures.set(1);
+         BulkLoader failing = ds.bulkLoader("INSERT INTO t (a, b) VALUES (?, ?)", 2, 1);
+         for (int i = 0; i < 10; i++) {
+            failing.addRow(i, "row" + i);
+         }
+         try {
+            failing.close();
+            Assert.fail("expected the commit failure");
+         }
+         catch (SQLException e) {
+            Assert.assertEquals("08006", e.getSQLState());
+         }
+         Assert.assertEquals(10010, rowsWritten.get());
+         Assert.assertEquals(0, failing.getRetries());
+      }
+   }
+}
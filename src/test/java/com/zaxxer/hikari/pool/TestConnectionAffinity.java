@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari.pool;
+
+import static com.zaxxer.hikari.util.UtilityElf.quietlySleep;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.mocks.StubConnection;
+import com.zaxxer.hikari.mocks.StubDataSource;
+
+public class TestConnectionAffinity
+{
+   @Test
+   public void testConnectionAffinity() throws Exception
+   {
+      final AtomicInteger catalogSwitches = new AtomicInteger();
+      StubDataSource stubDataSource = new StubDataSource() {
+         /** {@inheritDoc} */
+         @Override
+         public Connection getConnection() throws SQLException
+         {
+            return new StubConnection() {
+               /** {@inheritDoc} */
+               @Override
+               public void setCatalog(String catalog) throws SQLException
+               {
+                  catalogSwitches.incrementAndGet();
+                  super.setCatalog(catalog);
+               }
+            };
+         }
+      };
+
+      HikariConfig config = new HikariConfig();
+      config.setMinimumIdle(2);
+      config.setMaximumPoolSize(2);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSource(stubDataSource);
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         quietlySleep(200);
+         Assert.assertEquals(2, TestElf.getPool(ds).getIdleConnections());
+
+         StubConnection tenantA;
+         try (Connection connection = ds.getConnectionWithAffinity("tenantA")) {
+            connection.setCatalog("tenant_a");
+            tenantA = connection.unwrap(StubConnection.class);
+         }
+         Assert.assertEquals(1, catalogSwitches.get());
+         Assert.assertEquals("tenant_a", tenantA.getCatalog());
+
+         // The same tenant gets the same connection, its catalog already set
+         for (int i = 0; i < 3; i++) {
+            try (Connection connection = ds.getConnectionWithAffinity("tenantA")) {
+               Assert.assertSame(tenantA, connection.unwrap(StubConnection.class));
+               connection.setCatalog("tenant_a");
+            }
+         }
+         Assert.assertEquals(1, catalogSwitches.get());
+
+         // A borrower without the key never sees the tenant catalog
+         try (Connection first = ds.getConnection();
+              Connection second = ds.getConnection()) {
+            Assert.assertNull(first.unwrap(StubConnection.class).getCatalog());
+            Assert.assertNull(second.unwrap(StubConnection.class).getCatalog());
+         }
+         Assert.assertEquals(2, catalogSwitches.get());
+      }
+   }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari.pool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.mocks.StubConnection;
+
+public class TestConnectionScope
+{
+   @Test
+   public void testConnectionScope() throws Exception
+   {
+      HikariConfig config = new HikariConfig();
+      config.setMinimumIdle(1);
+      config.setMaximumPoolSize(1);
+      config.setConnectionTimeout(1000);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSourceClassName("com.zaxxer.hikari.mocks.StubDataSource");
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         HikariPool pool = TestElf.getPool(ds);
+
+         try (ConnectionScope scope = ds.openScope()) {
+            Assert.assertFalse(scope.isBound());
+            Assert.assertEquals(0, pool.getActiveConnections());
+
+            // Nested borrowers share the single connection instead of timing out
+            Connection outer = ds.getConnection();
+            Connection inner = ds.getConnection();
+            Assert.assertTrue(scope.isBound());
+            Assert.assertEquals(1, pool.getActiveConnections());
+            Assert.assertSame(outer.unwrap(StubConnection.class), inner.unwrap(StubConnection.class));
+
+            // A nested scope joins the outer one, and closing it does not release the connection
+            try (ConnectionScope nested = ds.openScope()) {
+               Assert.assertTrue(nested.isBound());
+               try (Connection joined = ds.getConnection()) {
+                  Assert.assertSame(outer.unwrap(StubConnection.class), joined.unwrap(StubConnection.class));
+               }
+            }
+            Assert.assertEquals(1, pool.getActiveConnections());
+
+            inner.close();
+            Assert.assertTrue(inner.isClosed());
+            Assert.assertFalse(outer.isClosed());
+            outer.setAutoCommit(false);
+            outer.close();
+            Assert.assertEquals(1, pool.getActiveConnections());
+         }
+
+         Assert.assertEquals(0, pool.getActiveConnections());
+
+         // A view left open keeps the connection, but not the scope bound to the thread
+         ConnectionScope scope = ds.openScope();
+         Connection leaked = ds.getConnection();
+         scope.close();
+         scope.close();
+         Assert.assertEquals(1, pool.getActiveConnections());
+         try {
+            ds.getConnection();
+            Assert.fail("expected connection timeout");
+         }
+         catch (SQLException e) {
+            // expected
+         }
+         leaked.close();
+         leaked.close();
+         Assert.assertEquals(0, pool.getActiveConnections());
+
+         // Outside a scope, connections are borrowed as usual
+         try (Connection connection = ds.getConnection()) {
+            Assert.assertTrue(connection.getAutoCommit());
+            try {
+               ds.getConnection();
+               Assert.fail("expected connection timeout");
+            }
+            catch (SQLException e) {
+               // expected
+            }
+         }
+      }
+   }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari.pool;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.SQLExceptionClassifier;
+import com.zaxxer.hikari.SQLExceptionClassifier.Classification;
+import com.zaxxer.hikari.SQLExceptionProfile;
+import com.zaxxer.hikari.mocks.StubConnection;
+import com.zaxxer.hikari.mocks.StubDataSource;
+import com.zaxxer.hikari.mocks.StubPreparedStatement;
+
+public class TestExceptionClassifier
+{
+   @Test
+   public void testExceptionClassifier() throws Exception
+   {
+      Assert.assertSame(SQLExceptionProfile.MYSQL, SQLExceptionProfile.detect("jdbc:mariadb://localhost/test", null));
+      Assert.assertSame(SQLExceptionProfile.ORACLE, SQLExceptionProfile.detect(null, "oracle.jdbc.pool.OracleDataSource"));
+      Assert.assertSame(SQLExceptionProfile.GENERIC, SQLExceptionProfile.detect(null, StubDataSource.class.getName()));
+      Assert.assertSame(SQLExceptionProfile.SQLSERVER, SQLExceptionProfile.forName("SQLServer"));
+
+      Assert.assertEquals(Classification.BROKEN, SQLExceptionProfile.GENERIC.classify(new SQLException("Link failure", "08S01")));
+      Assert.assertEquals(Classification.UNKNOWN, SQLExceptionProfile.GENERIC.classify(new SQLException("Syntax error", "42000")));
+      Assert.assertEquals("Vendor code without SQLState", Classification.BROKEN, SQLExceptionProfile.ORACLE.classify(new SQLException("ORA-03113", null, 3113)));
+      Assert.assertEquals("Lock timeout reported as class 08", Classification.HEALTHY, SQLExceptionProfile.MYSQL.classify(new SQLException("Lock wait timeout", "08S01", 1205)));
+
+      // Statements throw the exception set by the test
+      final AtomicReference<SQLException> failure = new AtomicReference<>();
+      class FailingConnection extends StubConnection {
+         /** {@inheritDoc} */
+         @Override
+         public PreparedStatement prepareStatement(String sql) throws SQLException
+         {
+            return new StubPreparedStatement(this) {
+               @Override
+               public int executeUpdate() throws SQLException
+               {
+                  throw failure.get();
+               }
+            };
+         }
+      }
+
+      StubDataSource stubDataSource = new StubDataSource() {
+         /** {@inheritDoc} */
+         @Override
+         public Connection getConnection() throws SQLException
+         {
+            return new FailingConnection();
+         }
+      };
+
+      HikariConfig config = new HikariConfig();
+      config.setMinimumIdle(1);
+      config.setMaximumPoolSize(1);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSource(stubDataSource);
+      config.setExceptionProfile("mysql");
+      config.setExceptionClassifier(new SQLExceptionClassifier() {
+         @Override
+         public Classification classify(SQLException e)
+         {
+            if ("XX998".equals(e.getSQLState())) {
+               throw new IllegalStateException("Classifier failure");
+            }
+            return "XX999".equals(e.getSQLState()) ? Classification.BROKEN : Classification.UNKNOWN;
+         }
+      });
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         SQLException lockTimeout = new SQLException("Lock wait timeout", "08S01", 1205);
+         SQLException goneAway = new SQLException("Server has gone away", "HY000", 2006);
+         SQLException custom = new SQLException("Custom", "HY000");
+         custom.setNextException(new SQLException("Custom", "XX999"));
+
+         Assert.assertFalse("Healthy connection evicted", isEvictedBy(ds, failure, lockTimeout));
+         Assert.assertTrue("Broken connection not evicted", isEvictedBy(ds, failure, goneAway));
+         Assert.assertTrue("Chained custom classification ignored", isEvictedBy(ds, failure, custom));
+         Assert.assertTrue("Profile not used when the classifier fails", isEvictedBy(ds, failure, new SQLException("Server has gone away", "XX998", 2006)));
+      }
+   }
+
+   private static boolean isEvictedBy(HikariDataSource ds, AtomicReference<SQLException> failure, SQLException e) throws SQLException
+   {
+      failure.set(e);
+      try (Connection connection = ds.getConnection()) {
+         try {
+            connection.prepareStatement("UPDATE t SET x = 1").executeUpdate();
+            Assert.fail("Exception not thrown");
+         }
+         catch (SQLException expected) {
+            Assert.assertSame(e, expected);
+         }
+         return connection.isClosed();
+      }
+   }
+}
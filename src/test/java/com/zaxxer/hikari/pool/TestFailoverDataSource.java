@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari.pool;
+
+import static com.zaxxer.hikari.util.UtilityElf.quietlySleep;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zaxxer.hikari.FailoverDataSource;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.mocks.StubDataSource;
+
+public class TestFailoverDataSource
+{
+   @Test
+   public void testFailoverDataSource() throws Exception
+   {
+      final AtomicBoolean isPrimaryDown = new AtomicBoolean();
+      StubDataSource primaryDataSource = new StubDataSource() {
+         /** {@inheritDoc} */
+         @Override
+         public Connection getConnection() throws SQLException
+         {
+            if (isPrimaryDown.get()) {
+               throw new SQLException("Connection refused", "08001");
+            }
+            return super.getConnection();
+         }
+      };
+
+      HikariConfig primaryConfig = new HikariConfig();
+      primaryConfig.setPoolName("failover-primary");
+      primaryConfig.setMinimumIdle(1);
+      primaryConfig.setMaximumPoolSize(2);
+      primaryConfig.setConnectionTimeout(1000);
+      primaryConfig.setValidationTimeout(1000);
+      primaryConfig.setConnectionTestQuery("VALUES 1");
+      primaryConfig.setDataSource(primaryDataSource);
+
+      HikariConfig standbyConfig = new HikariConfig();
+      standbyConfig.setPoolName("failover-standby");
+      standbyConfig.setMinimumIdle(2);
+      standbyConfig.setMaximumPoolSize(2);
+      standbyConfig.setConnectionTestQuery("VALUES 1");
+      standbyConfig.setDataSourceClassName("com.zaxxer.hikari.mocks.StubDataSource");
+
+      try (FailoverDataSource ds = new FailoverDataSource(primaryConfig, standbyConfig, 2, 3, 50)) {
+         HikariPool primary = ds.getPrimaryPool();
+         HikariPool standby = ds.getStandbyPool();
+         quietlySleep(200);
+         Assert.assertEquals(0, standby.getTotalConnections());
+
+         try (Connection connection = ds.getConnection()) {
+            Assert.assertEquals(1, primary.getActiveConnections());
+         }
+
+         // Timeouts of an exhausted primary are not failures
+         try (Connection first = ds.getConnection(); Connection second = ds.getConnection()) {
+            for (int i = 0; i < 2; i++) {
+               try {
+                  ds.getConnection();
+                  Assert.fail("expected the exhausted primary to time out");
+               }
+               catch (SQLException e) {
+                  // expected
+               }
+            }
+            quietlySleep(200);
+            Assert.assertFalse(ds.isFailedOver());
+         }
+
+         // Primary connection creation fails repeatedly, so borrows move to the warmed standby
+         isPrimaryDown.set(true);
+         primary.softEvictConnections();
+         try {
+            ds.getConnection();
+            Assert.fail("expected the primary to time out");
+         }
+         catch (SQLException e) {
+            // expected
+         }
+         for (int i = 0; i < 60 && !ds.isFailedOver(); i++) {
+            quietlySleep(50);
+         }
+         Assert.assertTrue(ds.isFailedOver());
+         Assert.assertEquals(1, ds.getFailoverCount());
+
+         quietlySleep(200);
+         Assert.assertEquals(2, standby.getIdleConnections());
+         try (Connection connection = ds.getConnection()) {
+            Assert.assertEquals(1, standby.getActiveConnections());
+         }
+
+         // Borrows return to the primary only after consecutive healthy probes
+         isPrimaryDown.set(false);
+         for (int i = 0; i < 60 && ds.isFailedOver(); i++) {
+            quietlySleep(50);
+         }
+         Assert.assertFalse(ds.isFailedOver());
+         try (Connection connection = ds.getConnection()) {
+            Assert.assertEquals(1, primary.getActiveConnections());
+            Assert.assertEquals(0, standby.getActiveConnections());
+         }
+      }
+   }
+
+   @Test
+   public void testFailoverDataSourcePrimaryDownAtStart() throws Exception
+   {
+      StubDataSource primaryDataSource = new StubDataSource() {
+         /** {@inheritDoc} */
+         @Override
+         public Connection getConnection() throws SQLException
+         {
+            throw new SQLException("Connection refused", "08001");
+         }
+      };
+
+      HikariConfig primaryConfig = new HikariConfig();
+      primaryConfig.setPoolName("failover-down-primary");
+      primaryConfig.setMinimumIdle(1);
+      primaryConfig.setMaximumPoolSize(2);
+      primaryConfig.setConnectionTimeout(1000);
+      primaryConfig.setConnectionTestQuery("VALUES 1");
+      primaryConfig.setDataSource(primaryDataSource);
+
+      HikariConfig standbyConfig = new HikariConfig();
+      standbyConfig.setPoolName("failover-down-standby");
+      standbyConfig.setMinimumIdle(1);
+      standbyConfig.setMaximumPoolSize(2);
+      standbyConfig.setConnectionTestQuery("VALUES 1");
+      standbyConfig.setDataSourceClassName("com.zaxxer.hikari.mocks.StubDataSource");
+
+      try (FailoverDataSource ds = new FailoverDataSource(primaryConfig, standbyConfig, 1, 3, 50)) {
+         // The primary pool copied the configuration instead of sharing it
+         Assert.assertTrue(primaryConfig.isInitializationFailFast());
+
+         try {
+            ds.getConnection();
+            Assert.fail("expected the primary to time out");
+         }
+         catch (SQLException e) {
+            // expected
+         }
+         for (int i = 0; i < 60 && !ds.isFailedOver(); i++) {
+            quietlySleep(50);
+         }
+         Assert.assertTrue(ds.isFailedOver());
+         try (Connection connection = ds.getConnection()) {
+            Assert.assertEquals(1, ds.getStandbyPool().getActiveConnections());
+         }
+      }
+   }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari.pool;
+
+import static com.zaxxer.hikari.util.UtilityElf.quietlySleep;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.mocks.StubConnection;
+import com.zaxxer.hikari.mocks.StubDataSource;
+
+public class TestHealthSweep
+{
+   @Test
+   public void testHealthSweep() throws Exception
+   {
+      // Connections created before the simulated database restart are dead
+      final AtomicInteger restarts = new AtomicInteger();
+      final AtomicInteger failedValidations = new AtomicInteger();
+      class RestartableConnection extends StubConnection {
+         private final int generation = restarts.get();
+
+         /** {@inheritDoc} */
+         @Override
+         public Statement createStatement() throws SQLException
+         {
+            if (generation < restarts.get()) {
+               failedValidations.incrementAndGet();
+               throw new SQLException("Connection reset", "08S01");
+            }
+            return super.createStatement();
+         }
+
+         /** {@inheritDoc} */
+         @Override
+         public PreparedStatement prepareStatement(String sql) throws SQLException
+         {
+            if (generation < restarts.get()) {
+               throw new SQLException("Connection reset", "08S01");
+            }
+            return super.prepareStatement(sql);
+         }
+      }
+
+      StubDataSource stubDataSource = new StubDataSource() {
+         /** {@inheritDoc} */
+         @Override
+         public Connection getConnection() throws SQLException
+         {
+            return new RestartableConnection();
+         }
+      };
+
+      HikariConfig config = new HikariConfig();
+      config.setMinimumIdle(4);
+      config.setMaximumPoolSize(4);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSource(stubDataSource);
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         HikariPool pool = TestElf.getPool(ds);
+         quietlySleep(200);
+         Assert.assertEquals(4, pool.getIdleConnections());
+
+         restarts.incrementAndGet();
+         try (Connection connection = ds.getConnection()) {
+            connection.prepareStatement("SELECT 1");
+            Assert.fail("Dead connection did not fail");
+         }
+         catch (SQLException e) {
+            Assert.assertEquals("08S01", e.getSQLState());
+         }
+
+         quietlySleep(500);
+         Assert.assertEquals("Idle connections not validated", 3, failedValidations.get());
+         Assert.assertEquals(4, pool.getTotalConnections());
+         Assert.assertEquals(4, pool.getIdleConnections());
+
+         // A second failure within the window does not sweep again
+         restarts.incrementAndGet();
+         try (Connection connection = ds.getConnection()) {
+            connection.prepareStatement("SELECT 1");
+            Assert.fail("Dead connection did not fail");
+         }
+         catch (SQLException e) {
+            // expected
+         }
+         quietlySleep(500);
+         Assert.assertEquals(3, failedValidations.get());
+      }
+   }
+}
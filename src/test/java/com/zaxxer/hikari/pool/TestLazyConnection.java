@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari.pool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.mocks.StubConnection;
+
+public class TestLazyConnection
+{
+   @Test
+   public void testLazyConnection() throws Exception
+   {
+      HikariConfig config = new HikariConfig();
+      config.setMinimumIdle(1);
+      config.setMaximumPoolSize(1);
+      config.setLazyConnection(true);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSourceClassName("com.zaxxer.hikari.mocks.StubDataSource");
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         HikariPool pool = TestElf.getPool(ds);
+
+         // Connections that are never used never borrow
+         Connection unused = ds.getConnection();
+         unused.setAutoCommit(false);
+         Assert.assertFalse(unused.getAutoCommit());
+         unused.commit();
+         ds.evictConnection(unused);
+         Assert.assertEquals(0, pool.getActiveConnections());
+         Assert.assertEquals(1, pool.getTotalConnections());
+         unused.close();
+         Assert.assertTrue(unused.isClosed());
+
+         // The single pool connection is not held by the unbound connection
+         Connection lazy = ds.getConnection();
+         lazy.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+         lazy.setAutoCommit(false);
+         try (Connection eager = pool.getConnection()) {
+            Assert.assertEquals(0, pool.getIdleConnections());
+         }
+         Assert.assertEquals(1, pool.getIdleConnections());
+
+         // The first statement borrows and replays the recorded state
+         Statement statement = lazy.createStatement();
+         Assert.assertEquals(1, pool.getActiveConnections());
+         StubConnection stubConnection = lazy.unwrap(StubConnection.class);
+         Assert.assertEquals(Connection.TRANSACTION_SERIALIZABLE, stubConnection.getTransactionIsolation());
+         Assert.assertFalse(stubConnection.getAutoCommit());
+
+         // Eviction reaches the pool connection the lazy connection has borrowed
+         ds.evictConnection(lazy);
+         lazy.close();
+         Assert.assertTrue(statement.isClosed());
+         Assert.assertEquals(0, pool.getActiveConnections());
+         try (Connection replacement = pool.getConnection()) {
+            Assert.assertNotSame(stubConnection, replacement.unwrap(StubConnection.class));
+         }
+
+         try {
+            lazy.createStatement();
+            Assert.fail("expected closed connection to fail");
+         }
+         catch (SQLException e) {
+            Assert.assertEquals("Connection is closed", e.getMessage());
+         }
+      }
+   }
+}
@@ -66,7 +66,7 @@ public class TestMetrics
             @Override
             public boolean matches(String name, Metric metric)
             {
-               return "test.pool.Wait".equals(MetricRegistry.name("test", "pool", "Wait"));
+               return MetricRegistry.name("test", "pool", "Wait").equals(name);
             }
          }).values().iterator().next();
 
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari.pool;
+
+import static com.zaxxer.hikari.util.UtilityElf.quietlySleep;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+public class TestOverflowConnections
+{
+   @Test
+   public void testOverflowConnections() throws Exception
+   {
+      HikariConfig config = new HikariConfig();
+      config.setMinimumIdle(1);
+      config.setMaximumPoolSize(2);
+      config.setOverflowPoolSize(1);
+      config.setOverflowThreshold(100);
+      config.setOverflowIdleTimeout(200);
+      config.setConnectionTimeout(2000);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSourceClassName("com.zaxxer.hikari.mocks.StubDataSource");
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         HikariPool pool = TestElf.getPool(ds);
+
+         Connection connection1 = ds.getConnection();
+         Connection connection2 = ds.getConnection();
+         Connection connection3 = ds.getConnection();
+         Assert.assertSame("Totals connections not as expected", 3, pool.getTotalConnections());
+
+         // The overflow band is exhausted, so the next borrower times out
+         try {
+            TestElf.getPool(ds).getConnection(500).close();
+            Assert.fail("Should have timed out");
+         }
+         catch (SQLException e) {
+            Assert.assertSame("Totals connections not as expected", 3, pool.getTotalConnections());
+         }
+
+         connection1.close();
+         connection2.close();
+         connection3.close();
+
+         quietlySleep(1000);
+
+         Assert.assertSame("Overflow connection not retired", 2, pool.getTotalConnections());
+      }
+   }
+}
@@ -241,7 +241,7 @@ public class TestProxies
          }
 
          try {
-            conn.setReadOnly(false);
+            conn.setReadOnly(true);
             Assert.fail();
          }
          catch (SQLException e) {
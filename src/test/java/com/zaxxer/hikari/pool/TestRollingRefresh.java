@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari.pool;
+
+import static com.zaxxer.hikari.util.UtilityElf.quietlySleep;
+
+import java.sql.Connection;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.mocks.StubConnection;
+
+public class TestRollingRefresh
+{
+   @Test
+   public void testRollingRefresh() throws Exception
+   {
+      HikariConfig config = new HikariConfig();
+      config.setMinimumIdle(4);
+      config.setMaximumPoolSize(4);
+      config.setRollingRefresh(true);
+      config.setMaxConcurrentRefreshes(2);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSourceClassName("com.zaxxer.hikari.mocks.StubDataSource");
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         HikariPool pool = TestElf.getPool(ds);
+         quietlySleep(500);
+         Assert.assertSame("Totals connections not as expected", 4, pool.getTotalConnections());
+
+         Connection connection = ds.getConnection();
+         final int before = StubConnection.count.get();
+
+         pool.softEvictConnections();
+         int maxTotal = 0;
+         for (long start = System.currentTimeMillis(); System.currentTimeMillis() - start < 500; ) {
+            maxTotal = Math.max(maxTotal, pool.getTotalConnections());
+         }
+         Assert.assertTrue("Pool exceeded maximumPoolSize + maxConcurrentRefreshes: " + maxTotal, maxTotal <= 4 + 2);
+
+         // The three idle connections have been replaced, the in-use connection is retired upon return
+         Assert.assertEquals("Replacement connections not created", before + 3, StubConnection.count.get());
+         Assert.assertSame("Totals connections not as expected", 4, pool.getTotalConnections());
+
+         connection.close();
+         quietlySleep(500);
+
+         Assert.assertEquals("Returned connection not replaced", before + 4, StubConnection.count.get());
+         Assert.assertSame("Totals connections not as expected", 4, pool.getTotalConnections());
+         Assert.assertSame("Idle connections not as expected", 4, pool.getIdleConnections());
+      }
+   }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari.pool;
+
+import static com.zaxxer.hikari.util.UtilityElf.quietlySleep;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.RowMapper;
+import com.zaxxer.hikari.RowSubscriber;
+import com.zaxxer.hikari.RowSubscription;
+import com.zaxxer.hikari.mocks.StubConnection;
+import com.zaxxer.hikari.mocks.StubDataSource;
+import com.zaxxer.hikari.mocks.StubPreparedStatement;
+import com.zaxxer.hikari.mocks.StubResultSet;
+
+public class TestRowPublisher
+{
+   @Test
+   public void testRowPublisher() throws Exception
+   {
+      // Ten rows, recording how far the cursor was moved and the fetch sizes requested
+      final AtomicInteger rowsRead = new AtomicInteger();
+      final List<Integer> fetchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+      class RowsConnection extends StubConnection {
+         /** {@inheritDoc} */
+         @Override
+         public PreparedStatement prepareStatement(String sql) throws SQLException
+         {
+            return new StubPreparedStatement(this) {
+               @Override
+               public ResultSet executeQuery() throws SQLException
+               {
+                  fetchSizes.add(getFetchSize());
+                  return new StubResultSet() {
+                     @Override
+                     public boolean next() throws SQLException
+                     {
+                        return rowsRead.incrementAndGet() <= 10;
+                     }
+
+                     @Override
+                     public int getInt(int columnIndex) throws SQLException
+                     {
+                        return rowsRead.get();
+                     }
+
+                     @Override
+                     public void setFetchSize(int rows) throws SQLException
+                     {
+                        fetchSizes.add(rows);
+                     }
+                  };
+               }
+            };
+         }
+      }
+
+      StubDataSource stubDataSource = new StubDataSource() {
+         /** {@inheritDoc} */
+         @Override
+         public Connection getConnection() throws SQLException
+         {
+            return new RowsConnection();
+         }
+      };
+
+      HikariConfig config = new HikariConfig();
+      config.setMinimumIdle(1);
+      config.setMaximumPoolSize(2);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSource(stubDataSource);
+
+      RowMapper<Integer> rowMapper = new RowMapper<Integer>() {
+         @Override
+         public Integer mapRow(ResultSet resultSet, int rowNum) throws SQLException
+         {
+            return resultSet.getInt(1);
+         }
+      };
+
+      class CollectingSubscriber implements RowSubscriber<Integer> {
+         final List<Integer> rows = Collections.synchronizedList(new ArrayList<Integer>());
+         final CountDownLatch done = new CountDownLatch(1);
+         volatile RowSubscription subscription;
+         volatile Throwable error;
+
+         @Override
+         public void onSubscribe(RowSubscription subscription)
+         {
+            this.subscription = subscription;
+         }
+
+         @Override
+         public void onNext(Integer row)
+         {
+            rows.add(row);
+         }
+
+         @Override
+         public void onError(Throwable t)
+         {
+            error = t;
+            done.countDown();
+         }
+
+         @Override
+         public void onComplete()
+         {
+            done.countDown();
+         }
+      }
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         CollectingSubscriber subscriber = new CollectingSubscriber();
+         ds.publish("SELECT x FROM t", null, rowMapper).subscribe(subscriber);
+         quietlySleep(100);
+         Assert.assertEquals("Query executed before demand", 0, rowsRead.get());
+
+         subscriber.subscription.request(3);
+         quietlySleep(200);
+         Assert.assertEquals(Arrays.asList(1, 2, 3), subscriber.rows);
+         Assert.assertEquals("Cursor read ahead of demand", 3, rowsRead.get());
+         Assert.assertEquals(1, TestElf.getPool(ds).getActiveConnections());
+         Assert.assertEquals("Fetch size changed while reading", Arrays.asList(RowPublisher.MIN_FETCH_SIZE), fetchSizes);
+
+         subscriber.subscription.request(Long.MAX_VALUE);
+         Assert.assertTrue(subscriber.done.await(5, TimeUnit.SECONDS));
+         Assert.assertNull(subscriber.error);
+         Assert.assertEquals(10, subscriber.rows.size());
+         Assert.assertEquals(Arrays.asList(RowPublisher.MIN_FETCH_SIZE, RowPublisher.MAX_FETCH_SIZE), fetchSizes);
+         quietlySleep(100);
+         Assert.assertEquals(0, TestElf.getPool(ds).getActiveConnections());
+
+         rowsRead.set(0);
+         RowPublisher<Integer> publisher = ds.publish("SELECT x FROM t", null, rowMapper);
+         CollectingSubscriber cancelled = new CollectingSubscriber();
+         publisher.subscribe(cancelled);
+         cancelled.subscription.request(2);
+         quietlySleep(200);
+         cancelled.subscription.cancel();
+         quietlySleep(200);
+         Assert.assertEquals(2, cancelled.rows.size());
+         Assert.assertEquals(1, cancelled.done.getCount());
+         Assert.assertEquals(0, TestElf.getPool(ds).getActiveConnections());
+
+         CollectingSubscriber second = new CollectingSubscriber();
+         publisher.subscribe(second);
+         Assert.assertTrue(second.error instanceof IllegalStateException);
+      }
+   }
+}
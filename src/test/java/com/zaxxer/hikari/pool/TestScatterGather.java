@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari.pool;
+
+import static com.zaxxer.hikari.util.UtilityElf.quietlySleep;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.RowMapper;
+import com.zaxxer.hikari.mocks.StubConnection;
+import com.zaxxer.hikari.mocks.StubDataSource;
+import com.zaxxer.hikari.mocks.StubPreparedStatement;
+import com.zaxxer.hikari.mocks.StubResultSet;
+
+public class TestScatterGather
+{
+   @Test
+   public void testScatterGather() throws Exception
+   {
+      // Partition n returns rows n * 10 + 0..n-1; partition -1 fails; partition 99 hangs
+      final AtomicInteger rowsRead = new AtomicInteger();
+      class PartitionConnection extends StubConnection {
+         /** {@inheritDoc} */
+         @Override
+         public PreparedStatement prepareStatement(String sql) throws SQLException
+         {
+            return new StubPreparedStatement(this) {
+               private int partition;
+
+               @Override
+               public void setObject(int parameterIndex, Object x) throws SQLException
+               {
+                  partition = (Integer) x;
+               }
+
+               @Override
+               public ResultSet executeQuery() throws SQLException
+               {
+                  if (partition < 0) {
+                     throw new SQLException("Partition failed", "XX000");
+                  }
+                  if (partition == 99) {
+                     quietlySleep(2000);
+                  }
+
+                  return new StubResultSet() {
+                     private int row = -1;
+
+                     @Override
+                     public boolean next() throws SQLException
+                     {
+                        rowsRead.incrementAndGet();
+                        return ++row < partition;
+                     }
+
+                     @Override
+                     public int getInt(int columnIndex) throws SQLException
+                     {
+                        return partition * 10 + row;
+                     }
+                  };
+               }
+            };
+         }
+      }
+
+      StubDataSource stubDataSource = new StubDataSource() {
+         /** {@inheritDoc} */
+         @Override
+         public Connection getConnection() throws SQLException
+         {
+            return new PartitionConnection();
+         }
+      };
+
+      HikariConfig config = new HikariConfig();
+      config.setMinimumIdle(1);
+      config.setMaximumPoolSize(3);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSource(stubDataSource);
+
+      RowMapper<Integer> rowMapper = new RowMapper<Integer>() {
+         @Override
+         public Integer mapRow(ResultSet resultSet, int rowNum) throws SQLException
+         {
+            return resultSet.getInt(1);
+         }
+      };
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         List<Object[]> partitions = new ArrayList<>();
+         for (int i = 4; i >= 1; i--) {
+            partitions.add(new Object[] { i });
+         }
+
+         List<Integer> rows = new ArrayList<>();
+         try (ScatterGather<Integer> result = ds.scatterGather("SELECT x FROM t WHERE p = ?", partitions, rowMapper, 2, true, 5000)) {
+            while (result.hasNext()) {
+               rows.add(result.next());
+            }
+         }
+         Assert.assertEquals(Arrays.asList(40, 41, 42, 43, 30, 31, 32, 20, 21, 10), rows);
+
+         int count = 0;
+         try (ScatterGather<Integer> result = ds.scatterGather("SELECT x FROM t WHERE p = ?", partitions, rowMapper, 8, false, 5000)) {
+            while (result.hasNext()) {
+               result.next();
+               count++;
+            }
+         }
+         Assert.assertEquals(10, count);
+
+         // Rows of a large partition are streamed, not loaded before the first is delivered
+         rowsRead.set(0);
+         count = 0;
+         try (ScatterGather<Integer> result = ds.scatterGather("SELECT x FROM t WHERE p = ?", Collections.singletonList(new Object[] { 5000 }), rowMapper, 1, false, 5000)) {
+            Assert.assertEquals(Integer.valueOf(50000), result.next());
+            quietlySleep(100);
+            Assert.assertTrue("Partition read ahead of the buffer", rowsRead.get() <= ScatterGather.ROW_BUFFER_SIZE + 2);
+            count++;
+            while (result.hasNext()) {
+               result.next();
+               count++;
+            }
+         }
+         Assert.assertEquals(5000, count);
+
+         try (ScatterGather<Integer> result = ds.scatterGather("SELECT x FROM t WHERE p = ?", Arrays.asList(new Object[] { 1 }, new Object[] { -1 }), rowMapper, 2, true, 5000)) {
+            while (result.hasNext()) {
+               result.next();
+            }
+            Assert.fail("Partition failure not propagated");
+         }
+         catch (SQLException e) {
+            Assert.assertEquals("XX000", e.getSQLState());
+         }
+
+         // In partition order, a later failing partition cancels the others before the caller reaches it
+         HikariPool pool = TestElf.getPool(ds);
+         try (ScatterGather<Integer> result = ds.scatterGather("SELECT x FROM t WHERE p = ?", Arrays.asList(new Object[] { 5000 }, new Object[] { -1 }, new Object[] { 2 }), rowMapper, 2, true, 5000)) {
+            quietlySleep(300);
+            Assert.assertEquals("Partition kept its connection after another failed", 0, pool.getActiveConnections());
+            result.hasNext();
+            Assert.fail("Partition failure not propagated");
+         }
+         catch (SQLException e) {
+            Assert.assertEquals("XX000", e.getSQLState());
+         }
+
+         try (ScatterGather<Integer> result = ds.scatterGather("SELECT x FROM t WHERE p = ?", Collections.singletonList(new Object[] { 99 }), rowMapper, 1, false, 300)) {
+            result.hasNext();
+            Assert.fail("Scatter-gather did not time out");
+         }
+         catch (SQLTimeoutException e) {
+            // expected
+         }
+      }
+   }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari.pool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.ShardConfigurer;
+import com.zaxxer.hikari.ShardRouter;
+import com.zaxxer.hikari.mocks.StubDataSource;
+import com.zaxxer.hikari.pool.HikariPool.PoolInitializationException;
+
+public class TestShardRouter
+{
+   @Test
+   public void testShardRouter() throws Exception
+   {
+      HikariConfig template = new HikariConfig();
+      template.setMinimumIdle(2);
+      template.setMaximumPoolSize(2);
+      template.setConnectionTestQuery("VALUES 1");
+      template.setDataSourceClassName("com.zaxxer.hikari.mocks.StubDataSource");
+
+      final List<String> shardIds = new ArrayList<>();
+      for (int i = 0; i < 16; i++) {
+         shardIds.add("shard" + i);
+      }
+
+      final List<String> configured = Collections.synchronizedList(new ArrayList<String>());
+      ShardConfigurer configurer = new ShardConfigurer() {
+         @Override
+         public void configure(String shardId, HikariConfig config)
+         {
+            configured.add(shardId);
+         }
+      };
+
+      try (ShardRouter router = new ShardRouter(template, shardIds, configurer)) {
+         Assert.assertEquals(16, router.getShardCount());
+         Assert.assertEquals(0, router.getOpenShardCount());
+
+         // Routing is stable, and only the shards used get a pool
+         final String shardId = router.getShardId("customer-42");
+         Assert.assertEquals(shardId, router.getShardId("customer-42"));
+         try (Connection connection = router.getConnection("customer-42")) {
+            Assert.assertEquals(1, router.getOpenShardCount());
+            Assert.assertEquals(Arrays.asList(shardId), configured);
+            Assert.assertEquals(1, router.getActiveConnections());
+            Assert.assertEquals(Integer.valueOf(1), router.getActiveConnectionsByShard().get(shardId));
+         }
+         Assert.assertEquals(0, router.getActiveConnections());
+
+         // Keys spread over all shards, and adding a shard moves only a fraction of them
+         final Set<String> used = new HashSet<>();
+         final List<String> grown = new ArrayList<>(shardIds);
+         grown.add("shard16");
+         final ShardRouter grownRouter = new ShardRouter(template, grown, configurer);
+         int moved = 0;
+         for (int key = 0; key < 10000; key++) {
+            final String shard = router.getShardId(key);
+            used.add(shard);
+            if (!shard.equals(grownRouter.getShardId(key))) {
+               Assert.assertEquals("shard16", grownRouter.getShardId(key));
+               moved++;
+            }
+         }
+         Assert.assertEquals(16, used.size());
+         Assert.assertTrue("moved " + moved + " keys", moved > 0 && moved < 1500);
+         Assert.assertEquals(0, grownRouter.getOpenShardCount());
+         grownRouter.close();
+      }
+
+      // A shard whose pool cannot be created fails at once for a while, without holding up other shards
+      final AtomicInteger attempts = new AtomicInteger();
+      final StubDataSource downDataSource = new StubDataSource() {
+         /** {@inheritDoc} */
+         @Override
+         public Connection getConnection() throws SQLException
+         {
+            throw new SQLException("Connection refused", "08001");
+         }
+      };
+      ShardConfigurer downConfigurer = new ShardConfigurer() {
+         @Override
+         public void configure(String shardId, HikariConfig config)
+         {
+            if (shardId.equals("shard0")) {
+               attempts.incrementAndGet();
+               config.setDataSourceClassName(null);
+               config.setDataSource(downDataSource);
+            }
+         }
+      };
+
+      try (ShardRouter router = new ShardRouter(template, shardIds, downConfigurer)) {
+         for (int i = 0; i < 2; i++) {
+            try {
+               router.getShardConnection("shard0");
+               Assert.fail("expected the pool creation to fail");
+            }
+            catch (PoolInitializationException e) {
+               // expected
+            }
+         }
+         Assert.assertEquals(1, attempts.get());
+
+         try (Connection connection = router.getShardConnection("shard1")) {
+            Assert.assertEquals(1, router.getOpenShardCount());
+         }
+      }
+   }
+}
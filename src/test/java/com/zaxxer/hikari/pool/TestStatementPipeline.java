@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari.pool;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.RowMapper;
+import com.zaxxer.hikari.mocks.StubConnection;
+import com.zaxxer.hikari.mocks.StubDataSource;
+import com.zaxxer.hikari.mocks.StubPreparedStatement;
+
+public class TestStatementPipeline
+{
+   @Test
+   public void testStatementPipeline() throws Exception
+   {
+      final List<StubPreparedStatement> prepared = new ArrayList<>();
+
+      class PipelineConnection extends StubConnection {
+         /** {@inheritDoc} */
+         @Override
+         public PreparedStatement prepareStatement(String sql) throws SQLException
+         {
+            if (sql.startsWith("BAD")) {
+               throw new SQLException("Syntax error", "42601");
+            }
+            StubPreparedStatement statement = new StubPreparedStatement(this);
+            prepared.add(statement);
+            return statement;
+         }
+
+         /** {@inheritDoc} */
+         @Override
+         public DatabaseMetaData getMetaData() throws SQLException
+         {
+            return (DatabaseMetaData) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { DatabaseMetaData.class }, new InvocationHandler() {
+               @Override
+               public Object invoke(Object proxy, Method method, Object[] args)
+               {
+                  return "supportsBatchUpdates".equals(method.getName());
+               }
+            });
+         }
+      }
+
+      StubDataSource stubDataSource = new StubDataSource() {
+         /** {@inheritDoc} */
+         @Override
+         public Connection getConnection() throws SQLException
+         {
+            return new PipelineConnection();
+         }
+      };
+
+      HikariConfig config = new HikariConfig();
+      config.setMinimumIdle(1);
+      config.setMaximumPoolSize(1);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSource(stubDataSource);
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         RowMapper<String> rowMapper = new RowMapper<String>() {
+            @Override
+            public String mapRow(ResultSet resultSet, int rowNum) throws SQLException
+            {
+               return resultSet.getString(1);
+            }
+         };
+
+         StatementPipeline pipeline = ds.pipeline();
+         Future<List<String>> query = pipeline.addQuery("SELECT name FROM t WHERE id = ?", new Object[] { 1 }, rowMapper);
+         Future<Integer> update1 = pipeline.addUpdate("UPDATE t SET x = ? WHERE id = ?", new Object[] { 1, 1 });
+         Future<Integer> update2 = pipeline.addUpdate("UPDATE t SET x = ? WHERE id = ?", new Object[] { 2, 2 });
+         Future<Integer> update3 = pipeline.addUpdate("UPDATE t SET x = ? WHERE id = ?", new Object[] { 3, 3 });
+         Future<Integer> bad = pipeline.addUpdate("BAD SQL", null);
+         Future<Integer> single = pipeline.addUpdate("DELETE FROM t", null);
+
+         Assert.assertFalse(query.isDone());
+         pipeline.execute();
+
+         Assert.assertTrue(query.get().isEmpty());
+         Assert.assertEquals(1, update1.get().intValue());
+         Assert.assertEquals(1, update3.get().intValue());
+         Assert.assertEquals(0, single.get().intValue());
+         try {
+            bad.get();
+            Assert.fail("Failed statement should fail its future");
+         }
+         catch (ExecutionException e) {
+            Assert.assertEquals("42601", ((SQLException) e.getCause()).getSQLState());
+         }
+
+         Assert.assertEquals("Consecutive updates not batched", 3, prepared.size());
+         Assert.assertEquals(1, prepared.get(1).executeBatchCount);
+         Assert.assertTrue(update2.isDone());
+
+         StatementPipeline asyncPipeline = ds.pipeline();
+         Future<Integer> asyncUpdate = asyncPipeline.addUpdate("DELETE FROM t", null);
+         asyncPipeline.executeAsync();
+         Assert.assertEquals(0, asyncUpdate.get(5, TimeUnit.SECONDS).intValue());
+      }
+   }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari.pool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.RetryPolicy;
+import com.zaxxer.hikari.SQLExceptionClassifier;
+import com.zaxxer.hikari.SQLExceptionClassifier.Classification;
+import com.zaxxer.hikari.TransactionCallback;
+import com.zaxxer.hikari.mocks.StubConnection;
+import com.zaxxer.hikari.mocks.StubDataSource;
+
+public class TestTransactions
+{
+   @Test
+   public void testInTransactionRetry() throws Exception
+   {
+      final AtomicInteger commitFailures = new AtomicInteger();
+      StubDataSource stubDataSource = new StubDataSource() {
+         /** {@inheritDoc} */
+         @Override
+         public Connection getConnection() throws SQLException
+         {
+            return new StubConnection() {
+               /** {@inheritDoc} */
+               @Override
+               public void commit() throws SQLException
+               {
+                  if (commitFailures.getAndDecrement() > 0) {
+                     throw new SQLException("Connection reset", "08006");
+                  }
+               }
+            };
+         }
+      };
+
+      HikariConfig config = new HikariConfig();
+      config.setMinimumIdle(1);
+      config.setMaximumPoolSize(1);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSource(stubDataSource);
+      config.setExceptionClassifier(new SQLExceptionClassifier() {
+         @Override
+         public Classification classify(SQLException e)
+         {
+            return "XX001".equals(e.getSQLState()) ? Classification.BROKEN : Classification.UNKNOWN;
+         }
+      });
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         final AtomicInteger attempts = new AtomicInteger();
+         String result = ds.inTransaction(new TransactionCallback<String>() {
+            @Override
+            public String doInTransaction(Connection connection) throws SQLException
+            {
+               Assert.assertFalse(connection.getAutoCommit());
+               if (attempts.incrementAndGet() < 3) {
+                  throw new SQLException("deadlock detected", "40P01");
+               }
+               return "done";
+            }
+         }, new RetryPolicy(5, 10, 50, 5000));
+
+         Assert.assertEquals("done", result);
+         Assert.assertEquals(3, attempts.get());
+
+         attempts.set(0);
+         try {
+            ds.inTransaction(new TransactionCallback<String>() {
+               @Override
+               public String doInTransaction(Connection connection) throws SQLException
+               {
+                  attempts.incrementAndGet();
+                  throw new SQLException("syntax error", "42601");
+               }
+            }, RetryPolicy.DEFAULT);
+            Assert.fail("Should have thrown");
+         }
+         catch (SQLException e) {
+            Assert.assertEquals("42601", e.getSQLState());
+            Assert.assertEquals(1, attempts.get());
+         }
+
+         // Connections classified as broken by the pool are retried
+         final TransactionCallback<String> callback = new TransactionCallback<String>() {
+            @Override
+            public String doInTransaction(Connection connection) throws SQLException
+            {
+               if (attempts.incrementAndGet() == 1) {
+                  throw new SQLException("Data corrupted", "XX001");
+               }
+               return "done";
+            }
+         };
+         attempts.set(0);
+         Assert.assertEquals("done", ds.inTransaction(callback, RetryPolicy.DEFAULT));
+         Assert.assertEquals(2, attempts.get());
+
+         // A failed commit may have been applied, so it is retried only for idempotent work
+         final TransactionCallback<String> committing = new TransactionCallback<String>() {
+            @Override
+            public String doInTransaction(Connection connection) throws SQLException
+            {
+               attempts.incrementAndGet();
+               return "done";
+            }
+         };
+         attempts.set(0);
+         commitFailures.set(1);
+         try {
+            ds.inTransaction(committing, new RetryPolicy(5, 10, 50, 5000));
+            Assert.fail("Should have thrown");
+         }
+         catch (SQLException e) {
+            Assert.assertEquals("08006", e.getSQLState());
+            Assert.assertEquals(1, attempts.get());
+         }
+
+         attempts.set(0);
+         commitFailures.set(1);
+         Assert.assertEquals("done", ds.inTransaction(committing, new RetryPolicy(5, 10, 50, 5000, true)));
+         Assert.assertEquals(2, attempts.get());
+
+         try (Connection connection = ds.getConnection()) {
+            Assert.assertTrue("autoCommit not reset", connection.getAutoCommit());
+         }
+      }
+   }
+
+   @Test
+   public void testInTransactionInScope() throws Exception
+   {
+      HikariConfig config = new HikariConfig();
+      config.setMinimumIdle(1);
+      config.setMaximumPoolSize(3);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSourceClassName("com.zaxxer.hikari.mocks.StubDataSource");
+      config.setExceptionClassifier(new SQLExceptionClassifier() {
+         @Override
+         public Classification classify(SQLException e)
+         {
+            return "XX001".equals(e.getSQLState()) ? Classification.BROKEN : Classification.UNKNOWN;
+         }
+      });
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         try (ConnectionScope scope = ds.openScope();
+              Connection shared = ds.getConnection()) {
+            final StubConnection sharedStub = shared.unwrap(StubConnection.class);
+            final List<StubConnection> attempts = new ArrayList<>();
+            String result = ds.inTransaction(new TransactionCallback<String>() {
+               @Override
+               public String doInTransaction(Connection connection) throws SQLException
+               {
+                  attempts.add(connection.unwrap(StubConnection.class));
+                  if (attempts.size() == 1) {
+                     throw new SQLException("Data corrupted", "XX001");
+                  }
+                  return "done";
+               }
+            }, RetryPolicy.DEFAULT);
+
+            // Neither attempt ran on the scope connection, and the retry did not reuse the evicted one
+            Assert.assertEquals("done", result);
+            Assert.assertEquals(2, attempts.size());
+            Assert.assertNotSame(sharedStub, attempts.get(0));
+            Assert.assertNotSame(sharedStub, attempts.get(1));
+            Assert.assertNotSame(attempts.get(0), attempts.get(1));
+            Assert.assertFalse(shared.isClosed());
+            Assert.assertTrue(shared.getAutoCommit());
+         }
+      }
+   }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2015 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.hikari.pool;
+
+import static com.zaxxer.hikari.util.UtilityElf.quietlySleep;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.mocks.StubDataSource;
+
+public class TestWarmup
+{
+   @Test
+   public void testParallelWarmup() throws Exception
+   {
+      StubDataSource stubDataSource = new StubDataSource() {
+         /** {@inheritDoc} */
+         @Override
+         public Connection getConnection() throws SQLException
+         {
+            quietlySleep(500);
+            return super.getConnection();
+         }
+      };
+
+      HikariConfig config = new HikariConfig();
+      config.setMinimumIdle(8);
+      config.setMaximumPoolSize(8);
+      config.setWarmupParallelism(8);
+      config.setWarmupFraction(1.0);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSource(stubDataSource);
+
+      final long start = System.currentTimeMillis();
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         final long elapsed = System.currentTimeMillis() - start;
+         Assert.assertSame("Totals connections not as expected", 8, TestElf.getPool(ds).getTotalConnections());
+         Assert.assertTrue("Warmup was not parallel, took " + elapsed + "ms", elapsed < 3000);
+      }
+
+      // The pool is not filled while the warm-up is still adding connections
+      config.setMaximumPoolSize(16);
+      config.setWarmupFraction(0.5);
+      config.setInitializationFailFast(false);
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         quietlySleep(2000);
+         Assert.assertEquals(8, TestElf.getPool(ds).getTotalConnections());
+         Assert.assertEquals(8, TestElf.getPool(ds).getIdleConnections());
+      }
+   }
+}